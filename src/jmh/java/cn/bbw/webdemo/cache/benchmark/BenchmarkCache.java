@@ -0,0 +1,64 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import cn.bbw.webdemo.cache.BaseCache;
+import cn.bbw.webdemo.cache.CacheEngine;
+import cn.bbw.webdemo.cache.CacheFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基准测试用的缓存, 值为按 {@link Workload} 确定大小的字节数组, 加载不访问外部资源, 只计算缓存本身的开销.
+ * CacheFactory 按缓存名保存引擎, 每个实例使用不同的名字, 避免拿到上一次测试创建的引擎
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 8:30 下午
+ * @since 1.0
+ */
+public class BenchmarkCache extends BaseCache<Integer, byte[]> {
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private final Workload workload;
+
+    /**
+     * @param prefix   缓存名前缀
+     * @param parent   父缓存, 可以为空
+     * @param engine   缓存引擎
+     * @param workload 数据形态
+     * @param capacity 容量, 按元素个数计; WEIGHTED 时换算为 maxWeight
+     */
+    public BenchmarkCache(String prefix, BaseCache<Integer, ?> parent, CacheEngine engine, Workload workload, int capacity) {
+        super(prefix + "-" + SEQ.incrementAndGet(), parent, capacity, 3600);
+        this.workload = workload;
+        setEngine(engine);
+        setExpireAfterAccess(false);
+        if (workload == Workload.WEIGHTED) {
+            setMaxWeight((long) capacity * Workload.AVERAGE_WEIGHTED_SIZE);
+        }
+    }
+
+    /**
+     * key 对应的值, 每次调用新建, 与从数据源加载一样产生分配
+     */
+    public byte[] value(int key) {
+        return new byte[workload.size(key)];
+    }
+
+    @Override
+    public byte[] without(Integer key) {
+        return value(key);
+    }
+
+    @Override
+    public int weigh(Integer key, byte[] value) {
+        return value.length;
+    }
+
+    /**
+     * 测试结束后清空数据
+     */
+    public void close() {
+        CacheFactory.getInstance().clear(getName());
+    }
+}
@@ -0,0 +1,53 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * 按 1/4/16/64 线程依次运行缓存基准测试, 每个线程数一个 JSON 结果文件 target/jmh/cache-t{线程数}.json,
+ * 可以用 JMH Visualizer 等工具比较不同引擎和配置的结果.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=CacheReadBenchmark.hit -Dbenchmark.threads=1,16
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 9:40 下午
+ * @since 1.0
+ */
+public final class CacheBenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,16,64";
+
+    private CacheBenchmarkRunner() {
+    }
+
+    /**
+     * @param args args[0] 为 JMH 过滤正则, 默认全部
+     */
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : ".*";
+        int[] threads = Arrays.stream(System.getProperty("benchmark.threads", DEFAULT_THREADS).split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        Path dir = Files.createDirectories(Paths.get("target", "jmh"));
+        for (int thread : threads) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(thread)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(dir.resolve("cache-t" + thread + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
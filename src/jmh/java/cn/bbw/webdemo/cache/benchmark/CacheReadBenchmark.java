@@ -0,0 +1,88 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import cn.bbw.webdemo.cache.CacheEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读基准: 命中、未命中加载、values() 遍历.
+ * <pre>
+ * hit    Zipfian 分布读取已全部加载的 key
+ * miss   每次读取新 key, 包含加载、放入和容量淘汰
+ * values 遍历全部元素, 单位微秒
+ * </pre>
+ * 线程数由 {@link CacheBenchmarkRunner} 设置
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 9:00 下午
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheReadBenchmark {
+
+    @Param({"GUAVA", "CAFFEINE"})
+    private CacheEngine engine;
+
+    @Param({"FIXED", "WEIGHTED"})
+    private Workload workload;
+
+    /**
+     * 容量足够放下全部 key
+     */
+    private BenchmarkCache full;
+
+    /**
+     * 容量为 key 空间的 1/10, 新 key 持续触发淘汰
+     */
+    private BenchmarkCache bounded;
+
+    @Setup
+    public void setup() {
+        full = new BenchmarkCache("BenchRead", null, engine, workload, ZipfianKeys.KEYS);
+        for (int key = 0; key < ZipfianKeys.KEYS; key++) {
+            full.get(key);
+        }
+        bounded = new BenchmarkCache("BenchMiss", null, engine, workload, ZipfianKeys.KEYS / 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        full.close();
+        bounded.close();
+    }
+
+    @Benchmark
+    public byte[] hit(ZipfianKeys keys) {
+        return full.get(keys.next());
+    }
+
+    @Benchmark
+    public byte[] miss(ZipfianKeys keys) {
+        return bounded.get(keys.nextNew());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Collection<byte[]> values() {
+        return full.values();
+    }
+}
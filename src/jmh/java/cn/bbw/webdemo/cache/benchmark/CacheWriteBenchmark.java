@@ -0,0 +1,100 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import cn.bbw.webdemo.cache.CacheEngine;
+import cn.bbw.webdemo.cache.CacheFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写基准: reload、put、replace, 父缓存带 {@link #CHILDREN} 个子缓存, 每次写入都会提交级联失效.
+ * 级联失效在 InvalidationPipeline 中异步执行, 每轮测量结束后等待执行完, 不计入下一轮
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 9:20 下午
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheWriteBenchmark {
+
+    private static final int CHILDREN = 2;
+
+    @Param({"GUAVA", "CAFFEINE"})
+    private CacheEngine engine;
+
+    @Param({"FIXED", "WEIGHTED"})
+    private Workload workload;
+
+    private BenchmarkCache parent;
+
+    private final List<BenchmarkCache> children = new ArrayList<>();
+
+    /**
+     * put/replace 写入的值, 预先创建, 不计入分配
+     */
+    private byte[][] values;
+
+    @Setup
+    public void setup() {
+        parent = new BenchmarkCache("BenchWrite", null, engine, workload, ZipfianKeys.KEYS);
+        for (int i = 0; i < CHILDREN; i++) {
+            children.add(new BenchmarkCache("BenchChild", parent, engine, workload, ZipfianKeys.KEYS));
+        }
+        values = new byte[ZipfianKeys.KEYS][];
+        for (int key = 0; key < ZipfianKeys.KEYS; key++) {
+            values[key] = parent.value(key);
+            parent.get(key);
+            for (BenchmarkCache child : children) {
+                child.get(key);
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        CacheFactory.getInstance().awaitInvalidations(1, TimeUnit.MINUTES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parent.close();
+        children.forEach(BenchmarkCache::close);
+    }
+
+    @Benchmark
+    public byte[] reload(ZipfianKeys keys) {
+        return parent.reload(keys.next());
+    }
+
+    @Benchmark
+    public boolean put(ZipfianKeys keys) {
+        int key = keys.next();
+        return parent.put(key, values[key]);
+    }
+
+    @Benchmark
+    public boolean replace(ZipfianKeys keys) {
+        int key = keys.next();
+        return parent.replace(key, values[key]);
+    }
+}
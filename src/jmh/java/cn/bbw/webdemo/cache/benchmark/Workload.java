@@ -0,0 +1,38 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+/**
+ * 基准测试的数据形态
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 8:10 下午
+ * @since 1.0
+ */
+public enum Workload {
+    /**
+     * 值固定 64 字节, 按 maxSize 限制容量
+     */
+    FIXED,
+    /**
+     * 值 16 字节到 4KB 不等, 按 maxWeight(字节)限制容量, 权重由 {@link BenchmarkCache#weigh} 计算
+     */
+    WEIGHTED;
+
+    private static final int FIXED_SIZE = 64;
+
+    /**
+     * WEIGHTED 的平均值大小, 用于按元素个数换算 maxWeight
+     */
+    static final int AVERAGE_WEIGHTED_SIZE = 908;
+
+    /**
+     * key 对应的值大小, 同一个 key 始终相同
+     */
+    int size(int key) {
+        if (this == FIXED) {
+            return FIXED_SIZE;
+        }
+        int h = key * 0x9E3779B9;
+        return 16 << ((h >>> 16) % 9);
+    }
+}
@@ -0,0 +1,70 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import java.util.Random;
+
+/**
+ * Zipfian 分布的 key 生成器, 少数热点 key 占大部分访问, 与线上缓存的访问分布接近.
+ * 算法见 Gray 等 "Quickly Generating Billion-Record Synthetic Databases", 与 YCSB 相同
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 8:20 下午
+ * @since 1.0
+ */
+final class ZipfianGenerator {
+
+    /**
+     * YCSB 默认的偏斜系数
+     */
+    static final double DEFAULT_THETA = 0.99;
+
+    private final int items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    ZipfianGenerator(int items, double theta) {
+        this.items = items;
+        this.theta = theta;
+        double zeta2 = zeta(2, theta);
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * 下一个 key, 取值 [0, items), 越小越热
+     */
+    int next(Random random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (int) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * 预先生成一组 key, 测量时按顺序循环读取, 不在测量中计算随机数
+     */
+    int[] samples(int count, long seed) {
+        Random random = new Random(seed);
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = next(random);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,56 @@
+package cn.bbw.webdemo.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个测试线程一份的 key 序列: Zipfian 分布的已有 key, 以及每次都不同的新 key
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/15 8:40 下午
+ * @since 1.0
+ */
+@State(Scope.Thread)
+public class ZipfianKeys {
+
+    /**
+     * key 空间大小, 即预先放入缓存的元素个数
+     */
+    public static final int KEYS = 100_000;
+
+    private static final int SAMPLES = 1 << 16;
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private int[] samples;
+
+    private int index;
+
+    private int nextNewKey;
+
+    @Setup
+    public void setup() {
+        int thread = THREADS.incrementAndGet();
+        samples = new ZipfianGenerator(KEYS, ZipfianGenerator.DEFAULT_THETA).samples(SAMPLES, thread);
+        // 新 key 从 KEYS 之后按线程分段, 不会与已有 key 和其他线程重复
+        nextNewKey = KEYS + thread * (1 << 24);
+    }
+
+    /**
+     * 下一个 Zipfian 分布的已有 key
+     */
+    public int next() {
+        return samples[index++ & (SAMPLES - 1)];
+    }
+
+    /**
+     * 下一个从未访问过的 key
+     */
+    public int nextNew() {
+        return nextNewKey++;
+    }
+}
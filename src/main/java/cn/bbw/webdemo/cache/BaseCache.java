@@ -1,13 +1,34 @@
 package cn.bbw.webdemo.cache;
 
+import com.google.common.collect.Iterables;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author buliangliang
@@ -27,18 +48,185 @@ public abstract class BaseCache<K, T> {
     /**
      * 内存可存放最大元素个数
      */
-    private final int maxSize;
+    @Setter
+    private int maxSize;
 
     /**
      * 缓存更新周期, 单位秒
      */
-    private final int duration;
+    @Setter
+    private int duration;
 
-    private final List<ICache<K, ?>> children = new ArrayList<>();
+    /**
+     * 内存可存放元素的最大总权重(一般为字节数), 大于 0 时按 {@link #weigh} 计算的权重淘汰, 替代 maxSize
+     */
+    @Setter
+    private long maxWeight;
+
+    /**
+     * 单个值的最大字节数, 只对 OFF_HEAP 引擎生效, slab 不小于这个大小; 0 表示 slab 按容量的 1/16 切分
+     */
+    @Setter
+    private int maxValueBytes;
+
+    private final List<BaseCache<K, ?>> children = new CopyOnWriteArrayList<>();
+
+    private final CacheMetrics metrics = new CacheMetrics();
 
     @Setter
     private boolean expireAfterAccess = true;
 
+    /**
+     * 缓存引擎, 默认 Guava
+     */
+    @Setter
+    private CacheEngine engine = CacheEngine.GUAVA;
+
+    /**
+     * 写入后多少秒触发后台刷新, 单位秒, 0 表示不刷新;
+     * 开启后到期的数据和 {@link #isExpired} 为 true 的数据都在后台重新加载, 加载完成前继续返回旧值
+     */
+    @Setter
+    private int refreshSeconds;
+
+    /**
+     * 是否开启磁盘二级缓存, 开启后内存淘汰的数据写入磁盘, 重启后仍可命中, 见 {@link DiskStore}
+     */
+    @Setter
+    private boolean persistent;
+
+    @Setter
+    private CacheSerializer<K> keySerializer = JdkSerializer.getInstance();
+
+    @Setter
+    private CacheSerializer<T> valueSerializer = JdkSerializer.getInstance();
+
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private DiskStore<K, T> diskStore;
+
+    /**
+     * 异步加载线程池, 为空时使用 {@link CacheFactory#getLoadExecutor()}
+     */
+    @Setter
+    private Executor loadExecutor;
+
+    /**
+     * 写入数据源的方式, 见 {@link #setWriteMode(WriteMode, CacheWriter)}
+     */
+    private volatile WriteMode writeMode = WriteMode.NONE;
+
+    @Getter(AccessLevel.PACKAGE)
+    private volatile CacheWriter<K, T> writer;
+
+    /**
+     * 异步写刷新间隔, 单位毫秒, 在第一次异步写之前设置
+     */
+    @Setter
+    private long writeBehindMillis = 1000;
+
+    /**
+     * 异步写每批最多写入的个数, 积压达到该数量时提前刷新
+     */
+    @Setter
+    private int writeBehindBatchSize = 500;
+
+    @Getter(AccessLevel.NONE)
+    private volatile WriteBehindQueue<K, T> writeBehindQueue;
+
+    /**
+     * 值压缩编码, 为空表示不压缩; 只对 OFF_HEAP 引擎的字节数据生效, 见 {@link DeflateCodec}
+     */
+    @Setter
+    private CacheCodec codec;
+
+    /**
+     * 超过多少字节的值才压缩
+     */
+    @Setter
+    private int compressThreshold = 4096;
+
+    /**
+     * 统计访问频率并维护的热点 key 个数, 0 表示不统计, 见 {@link HotKeyDetector}
+     */
+    private int hotKeyTopN;
+
+    /**
+     * 是否在 {@link #get} 前加一层每个线程独立的近缓存, 只存放热点 key, 需要 hotKeyTopN 大于 0;
+     * 近缓存直接返回引擎中的对象, OFF_HEAP 引擎每次读取都是新的副本, 不使用近缓存
+     */
+    private boolean nearCache;
+
+    @Getter(AccessLevel.PACKAGE)
+    private volatile HotKeyDetector<K> hotKeyDetector;
+
+    @Getter(AccessLevel.NONE)
+    private volatile NearCache<K, T> near;
+
+    /**
+     * 查不到数据({@link #without} 返回 null)的 key 在负缓存中保留多少秒, 期间直接返回 null, 0 表示不缓存
+     */
+    private int negativeSeconds = 60;
+
+    /**
+     * 负缓存最多记录的 key 个数, 与 maxSize 分开计算
+     */
+    private int negativeMaxSize = 10000;
+
+    /**
+     * 加载异常后多少毫秒内不再调用数据源, 直接返回 null, 0 表示异常不缓存, 下次访问立即重试
+     */
+    private long failureBackoffMillis;
+
+    @Getter(AccessLevel.NONE)
+    private volatile NegativeCache<K> negativeCache;
+
+    /**
+     * 同步加载的隔板线程数, 0 表示在调用线程中加载, 见 {@link LoaderBulkhead}
+     */
+    private int loaderThreads;
+
+    /**
+     * 隔板排队上限, 线程和队列都满时直接拒绝
+     */
+    private int loaderQueueSize = 100;
+
+    /**
+     * 调用线程等待加载的最长时间, 单位毫秒, 0 表示不限; 需要 loaderThreads 大于 0.
+     * 拒绝或超时时 {@link #isExpired} 为 true 的旧值继续返回, 刷新模式下保留旧值, 其余情况返回 null
+     */
+    private long loadTimeoutMillis;
+
+    @Getter(AccessLevel.NONE)
+    private volatile LoaderBulkhead bulkhead;
+
+    /**
+     * 绑定的缓存引擎, 首次访问时从 {@link CacheFactory} 取得, 之后不再查找; 重新配置时由 CacheFactory 替换
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile ICache<K, T> cache;
+
+    /**
+     * 重新配置迁移数据期间写入、删除过的 key, 迁移完成后在新引擎中失效, 非迁移期间为 null
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Set<K> migrationWrites;
+
+    @Getter(AccessLevel.NONE)
+    private final boolean variableExpiry;
+
+    /**
+     * {@link #isExpired} 触发的重新加载, 同一个 key 只有一个在途
+     */
+    @Getter(AccessLevel.NONE)
+    private final SingleFlight<K, T> expiryFlight = new SingleFlight<>(metrics);
+
+    /**
+     * 写入、删除和加载的次数, 不受 {@link CacheMetrics#isEnabled()} 影响, 供 {@link CacheMaintenance} 判断写入频率
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongAdder modifications = new LongAdder();
+
 
     public BaseCache() {
         this(null, null);
@@ -64,6 +252,7 @@ public abstract class BaseCache<K, T> {
         this.parent = parent;
         this.maxSize = maxSize;
         this.duration = duration;
+        this.variableExpiry = overrides("expireAt", Object.class, Object.class);
     }
 
 
@@ -76,20 +265,678 @@ public abstract class BaseCache<K, T> {
     public abstract T without(K key);
 
     /**
-     * 增加校验缓存合法性, 例如跨天的处理
+     * 批量加载, {@link #getAll(Collection)} 未命中时调用, 默认逐个调用 {@link #without(Object)};
+     * 子类可覆盖为一次批量查询(如 where id in (...)), 把 N 次数据库访问合并为一次
+     *
+     * @param keys 未命中的key
+     * @return 加载到的 key 与值, 查不到的 key 可以不放入
+     */
+    public Map<K, T> withoutAll(Collection<K> keys) {
+        Map<K, T> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            T t = without(key);
+            if (t != null) {
+                result.put(key, t);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 启动预热时需要预加载的 key, 在 ApplicationReadyEvent 时通过 {@link #getAll(Collection)} 分批并行加载
+     *
+     * @return 预加载的 key
+     */
+    public Collection<K> preloadKeys() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 启动预热时的预加载查询, 返回的数据直接放入缓存, 适合一条查询就能取出全部热数据的场景
+     *
+     * @return 预加载的数据
+     */
+    public Map<K, T> preload() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 异步加载, {@link #getAsync(Object)} 未命中时调用, 默认在 executor 中执行 {@link #without(Object)};
+     * 有原生异步接口(如异步数据库客户端)的子类可以覆盖此方法, 避免占用加载线程
+     *
+     * @param key      缓存的key
+     * @param executor 加载线程池
+     * @return 加载结果
+     */
+    public CompletableFuture<T> withoutAsync(K key, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> without(key), executor);
+    }
+
+    /**
+     * 计算缓存项的权重, 仅在 {@link #getMaxWeight()} 大于 0 时生效, 一般返回值占用的字节数
+     *
+     * @param key   缓存的key
+     * @param value 缓存中的数据
+     * @return 非负权重
+     */
+    public int weigh(K key, T value) {
+        return 1;
+    }
+
+    /**
+     * 增加校验缓存合法性, 例如跨天的处理; 每次读取都会调用, 为 true 时同步重新加载
      *
      * @param t 缓存中的数据
      * @return 过期返回 true
+     * @deprecated 过期时间在加载时就能确定的, 使用 {@link #expireAt(Object, Object)}
      */
+    @Deprecated
     public boolean isExpired(T t) {
         return false;
     }
 
+    /**
+     * 按 key 和值计算单个缓存项的过期时间, 在加载、写入时调用, 按访问过期时读取也会调用, 到期后由引擎淘汰, 读取时不再判断;
+     * 例如跨天的数据返回次日零点. 与 duration 同时生效, 取较早的一个.
+     * Caffeine 引擎由时间轮到期淘汰, Guava 引擎读取时比较记录的过期时间, 堆外引擎过期时间记录在索引中
+     *
+     * @param key   缓存的key
+     * @param value 缓存中的数据
+     * @return 过期时间戳(毫秒), 0 表示只按 duration 过期
+     */
+    public long expireAt(K key, T value) {
+        return 0;
+    }
+
+    /**
+     * 子类是否覆盖了 {@link #expireAt(Object, Object)}, 未覆盖时引擎仍使用固定过期
+     */
+    boolean hasVariableExpiry() {
+        return variableExpiry;
+    }
+
+    /**
+     * 缓存项的剩余有效期, 单位纳秒, 取 duration 和 {@link #expireAt(Object, Object)} 中较早的一个
+     */
+    long expireNanos(K key, T value) {
+        long nanos = TimeUnit.SECONDS.toNanos(duration);
+        if (variableExpiry && value != null) {
+            long expireAt = expireAt(key, value);
+            if (expireAt > 0) {
+                nanos = Math.min(nanos, TimeUnit.MILLISECONDS.toNanos(Math.max(0, expireAt - System.currentTimeMillis())));
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * 两个过期时间中较早的一个, 0 表示不限制
+     */
+    static long earliest(long expireAt, long other) {
+        if (expireAt <= 0) {
+            return other;
+        }
+        return other > 0 ? Math.min(expireAt, other) : expireAt;
+    }
+
+    private boolean overrides(String method, Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(method, parameterTypes).getDeclaringClass() != BaseCache.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 设置写入数据源的方式和写入实现
+     *
+     * @param writeMode 写入方式
+     * @param writer    写入数据源的实现, 不能为空
+     */
+    public void setWriteMode(WriteMode writeMode, CacheWriter<K, T> writer) {
+        this.writer = Objects.requireNonNull(writer, "writer");
+        this.writeMode = writeMode;
+    }
+
+    /**
+     * 只切换写入方式, 沿用已设置的 {@link CacheWriter}, 用于配置覆盖;
+     * 未设置过 writer 时只能为 NONE, 否则直到第一次写入才发现
+     */
+    public void setWriteMode(WriteMode writeMode) {
+        if (writeMode != WriteMode.NONE && writer == null) {
+            throw new IllegalArgumentException("writer not set, cache name:" + name + ", writeMode:" + writeMode);
+        }
+        this.writeMode = writeMode;
+    }
+
+    public void setNegativeSeconds(int negativeSeconds) {
+        this.negativeSeconds = negativeSeconds;
+        this.negativeCache = null;
+    }
+
+    public void setNegativeMaxSize(int negativeMaxSize) {
+        this.negativeMaxSize = negativeMaxSize;
+        this.negativeCache = null;
+    }
+
+    public void setFailureBackoffMillis(long failureBackoffMillis) {
+        this.failureBackoffMillis = failureBackoffMillis;
+        this.negativeCache = null;
+    }
+
+    public void setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+        resetBulkhead();
+    }
+
+    public void setLoaderQueueSize(int loaderQueueSize) {
+        this.loaderQueueSize = loaderQueueSize;
+        resetBulkhead();
+    }
+
+    public void setLoadTimeoutMillis(long loadTimeoutMillis) {
+        this.loadTimeoutMillis = loadTimeoutMillis;
+        resetBulkhead();
+    }
+
+    /**
+     * 参数修改后下次加载时重建隔板, 旧隔板中执行中的加载继续执行
+     */
+    private synchronized void resetBulkhead() {
+        LoaderBulkhead old = bulkhead;
+        bulkhead = null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * 加载隔板, loaderThreads 为 0 时返回 null
+     */
+    private LoaderBulkhead bulkhead() {
+        LoaderBulkhead loader = bulkhead;
+        if (loader == null && loaderThreads > 0) {
+            synchronized (this) {
+                loader = bulkhead;
+                if (loader == null && loaderThreads > 0) {
+                    loader = new LoaderBulkhead(name, loaderThreads, loaderQueueSize, loadTimeoutMillis, metrics);
+                    bulkhead = loader;
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * 隔板中排队的加载个数
+     */
+    int queuedLoads() {
+        LoaderBulkhead loader = bulkhead;
+        return loader != null ? loader.queued() : 0;
+    }
+
+    public void setHotKeyTopN(int hotKeyTopN) {
+        this.hotKeyTopN = hotKeyTopN;
+        this.hotKeyDetector = hotKeyTopN > 0 ? new HotKeyDetector<>(hotKeyTopN, this::onHotKeys) : null;
+    }
+
+    public void setNearCache(boolean nearCache) {
+        this.nearCache = nearCache;
+        this.near = nearCache ? new NearCache<>() : null;
+    }
+
+    /**
+     * 最近统计出的热点 key, 按访问频率从高到低, 未开启统计时为空
+     */
+    public List<K> getHotKeys() {
+        HotKeyDetector<K> detector = hotKeyDetector;
+        return detector != null ? detector.hotKeys() : Collections.emptyList();
+    }
+
+    /**
+     * 估计的访问次数, 未开启统计时为 0
+     */
+    public long hotKeyFrequency(K key) {
+        HotKeyDetector<K> detector = hotKeyDetector;
+        return detector != null ? detector.frequency(key) : 0;
+    }
+
+    private void onHotKeys(List<K> keys) {
+        NearCache<K, T> nearCache = near;
+        if (nearCache != null) {
+            nearCache.setHotKeys(keys);
+        }
+    }
+
+    private void recordAccess(K key) {
+        HotKeyDetector<K> detector = hotKeyDetector;
+        if (detector != null) {
+            detector.record(key);
+        }
+    }
+
+    NearCache<K, T> nearCache() {
+        return engine != CacheEngine.OFF_HEAP ? near : null;
+    }
+
+    /**
+     * 写入、删除后使近缓存失效, 需要在更新引擎之后调用
+     */
+    private void invalidateNear(K key) {
+        NearCache<K, T> nearCache = near;
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 负缓存, 两个有效期都为 0 时返回 null; 参数修改后下次访问时重建
+     */
+    private NegativeCache<K> negativeCache() {
+        NegativeCache<K> negatives = negativeCache;
+        if (negatives == null && (negativeSeconds > 0 || failureBackoffMillis > 0)) {
+            synchronized (this) {
+                negatives = negativeCache;
+                if (negatives == null) {
+                    long maxTtl = Math.max(TimeUnit.SECONDS.toMillis(negativeSeconds), failureBackoffMillis);
+                    negatives = new NegativeCache<>(negativeMaxSize, maxTtl);
+                    negativeCache = negatives;
+                }
+            }
+        }
+        return negatives;
+    }
+
+    /**
+     * key 是否在负缓存有效期内
+     */
+    boolean isNegative(K key) {
+        NegativeCache<K> negatives = negativeCache;
+        if (negatives != null && negatives.contains(key)) {
+            metrics.recordNegativeHit();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录查不到数据的 key
+     */
+    void markNotFound(K key) {
+        if (negativeSeconds > 0) {
+            NegativeCache<K> negatives = negativeCache();
+            if (negatives != null) {
+                negatives.put(key, TimeUnit.SECONDS.toMillis(negativeSeconds));
+            }
+        }
+    }
+
+    /**
+     * 记录加载异常的 key, 退避期内不再重试
+     */
+    void markFailure(K key) {
+        if (failureBackoffMillis > 0) {
+            NegativeCache<K> negatives = negativeCache();
+            if (negatives != null) {
+                negatives.put(key, failureBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * 写入、删除时清除负缓存
+     */
+    void evictNegative(K key) {
+        NegativeCache<K> negatives = negativeCache;
+        if (negatives != null) {
+            negatives.remove(key);
+        }
+    }
+
+    void clearNegatives() {
+        NegativeCache<K> negatives = negativeCache;
+        if (negatives != null) {
+            negatives.clear();
+        }
+    }
+
+    /**
+     * 缓存未命中时的加载, 先查负缓存和磁盘二级缓存, 再调用 {@link #without(Object)};
+     * 查不到时记入负缓存, 异常时按 {@link #failureBackoffMillis} 退避, 两者都不会放入主缓存;
+     * 隔板拒绝或超时不是数据源失败, 不退避, 下次访问立即重试
+     */
+    T loadThrough(K key) {
+        T pending = pendingWrite(key);
+        if (pending != null) {
+            return pending;
+        }
+        if (isNegative(key)) {
+            return null;
+        }
+        DiskStore<K, T> store = diskStore;
+        if (store != null) {
+            T t = store.get(key);
+            if (t != null) {
+                return t;
+            }
+        }
+        T t;
+        try {
+            t = loadSource(key);
+        } catch (LoadRejectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            markFailure(key);
+            throw e;
+        }
+        if (t == null) {
+            markNotFound(key);
+        }
+        return t;
+    }
+
+    /**
+     * 后台刷新, 异步写队列中有还未写入数据源的值时直接使用, 避免用数据源中的旧值覆盖刚写入的值;
+     * 数据源中已经删除时记入负缓存并删除磁盘中的旧值, 由各引擎删除缓存项
+     */
+    T refreshThrough(K key) {
+        T pending = pendingWrite(key);
+        if (pending != null) {
+            return pending;
+        }
+        T t = loadSource(key);
+        if (t == null) {
+            markNotFound(key);
+            evictStore(key);
+        }
+        return t;
+    }
+
+    /**
+     * 调用 {@link #without(Object)} 并记录加载耗时和结果
+     */
+    T loadSource(K key) {
+        LoaderBulkhead loader = bulkhead();
+        long start = System.nanoTime();
+        try {
+            T t = loader != null ? loader.call(() -> without(key)) : without(key);
+            metrics.recordLoadSuccess(System.nanoTime() - start);
+            modifications.increment();
+            return t;
+        } catch (LoadRejectedException e) {
+            // 已经按拒绝或超时记录, 不算数据源失败
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 调用 {@link #withoutAll(Collection)} 并记录加载耗时和结果
+     */
+    Map<K, T> loadAllSource(Collection<K> keys) {
+        LoaderBulkhead loader = bulkhead();
+        long start = System.nanoTime();
+        try {
+            Map<K, T> result = loader != null ? loader.call(() -> withoutAll(keys)) : withoutAll(keys);
+            metrics.recordLoadSuccess(System.nanoTime() - start);
+            modifications.add(keys.size());
+            return result;
+        } catch (LoadRejectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量加载, 先查磁盘二级缓存, 剩余的 key 调用 {@link #withoutAll(Collection)}
+     */
+    Map<K, T> loadAllThrough(Collection<K> keys) {
+        DiskStore<K, T> store = diskStore;
+        Map<K, T> result = new LinkedHashMap<>();
+        List<K> misses = new ArrayList<>();
+        for (K key : keys) {
+            T pending = pendingWrite(key);
+            if (pending != null) {
+                result.put(key, pending);
+                continue;
+            }
+            if (isNegative(key)) {
+                continue;
+            }
+            T t = store != null ? store.get(key) : null;
+            if (t != null) {
+                result.put(key, t);
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        Map<K, T> loaded;
+        try {
+            loaded = loadAllSource(misses);
+        } catch (LoadRejectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            misses.forEach(this::markFailure);
+            throw e;
+        }
+        for (K key : misses) {
+            T t = loaded.get(key);
+            if (t != null) {
+                result.put(key, t);
+            } else {
+                markNotFound(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 异步加载, 先查磁盘二级缓存, 再调用 {@link #withoutAsync(Object, Executor)}
+     */
+    CompletableFuture<T> loadAsyncThrough(K key) {
+        T pending = pendingWrite(key);
+        if (pending != null) {
+            return CompletableFuture.completedFuture(pending);
+        }
+        if (isNegative(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DiskStore<K, T> store = diskStore;
+        if (store != null) {
+            T t = store.get(key);
+            if (t != null) {
+                return CompletableFuture.completedFuture(t);
+            }
+        }
+        long start = System.nanoTime();
+        return withoutAsync(key, getLoadExecutor()).whenComplete((t, e) -> {
+            if (e == null) {
+                metrics.recordLoadSuccess(System.nanoTime() - start);
+                modifications.increment();
+                if (t == null) {
+                    markNotFound(key);
+                }
+            } else if (!(unwrap(e) instanceof LoadRejectedException)) {
+                metrics.recordLoadFailure(System.nanoTime() - start);
+                markFailure(key);
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 记录引擎中的加载异常; 被舱壁拒绝或超时是过载时的预期结果, 已经计入指标,
+     * 即使包在 ExecutionException、CompletionException 中也只记 debug, 不打印堆栈
+     *
+     * @param log     引擎的日志
+     * @param message 错误日志内容
+     * @param e       加载异常
+     */
+    static void logLoadError(Logger log, String message, Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof LoadRejectedException) {
+                log.debug("{}, rejected:{}", message, t.getMessage());
+                return;
+            }
+        }
+        log.error(message, e);
+    }
+
+    /**
+     * 删除、淘汰后让子缓存中相同 key 的数据失效, 提交到 {@link InvalidationPipeline} 异步执行
+     */
+    void cascade(K key) {
+        if (children.isEmpty()) {
+            return;
+        }
+        InvalidationPipeline pipeline = CacheFactory.getInstance().getInvalidationPipeline();
+        for (BaseCache<K, ?> child : children) {
+            metrics.recordCascade();
+            pipeline.submit(child, key);
+        }
+    }
+
+    /**
+     * 内存淘汰时写入磁盘二级缓存
+     */
+    void spill(K key, T value) {
+        DiskStore<K, T> store = diskStore;
+        if (store != null && value != null && !store.contains(key)) {
+            long expireAt = System.currentTimeMillis() + duration * 1000L;
+            if (variableExpiry) {
+                long at = expireAt(key, value);
+                expireAt = at > 0 ? Math.min(at, expireAt) : expireAt;
+            }
+            store.put(key, value, expireAt);
+        }
+    }
+
+    /**
+     * 删除、覆盖、过期时同步删除磁盘二级缓存, 避免读到旧数据
+     */
+    void evictStore(K key) {
+        DiskStore<K, T> store = diskStore;
+        if (store != null) {
+            store.remove(key);
+        }
+    }
+
+    /**
+     * 停机时把内存中的数据全部写入磁盘二级缓存, 下次启动直接命中
+     */
+    void persist() {
+        DiskStore<K, T> store = diskStore;
+        ICache<K, T> cache = getCache();
+        if (store == null || cache == null) {
+            return;
+        }
+        for (K key : cache.keys()) {
+            spill(key, cache.getCacheOnly(key));
+        }
+        store.close();
+    }
+
+    /**
+     * 导入快照时直接放入缓存引擎, 不写数据源, 不通知其他节点, 已经缓存的 key 不覆盖, 见 {@link CacheSnapshot}
+     *
+     * @param expireAt 快照中记录的过期时间戳(毫秒), 0 表示按缓存配置过期
+     */
+    boolean restore(K k, T val, long expireAt) {
+        ICache<K, T> cache = writeCache(k);
+        if (cache != null && val != null && cache.getCacheOnly(k) == null && cache.put(k, val, expireAt)) {
+            invalidateNear(k);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 执行预加载查询, 返回需要分批加载的 key
+     */
+    Collection<K> warmUp() {
+        Map<K, T> data = preload();
+        if (data != null && !data.isEmpty()) {
+            ICache<K, T> cache = getCache();
+            if (cache != null) {
+                data.forEach(cache::put);
+            }
+        }
+        Collection<K> keys = preloadKeys();
+        return keys != null ? keys : Collections.emptyList();
+    }
+
+    /**
+     * 分批预加载
+     */
+    List<Callable<Integer>> warmUpTasks(Collection<K> keys, int batchSize) {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (List<K> batch : Iterables.partition(keys, batchSize)) {
+            tasks.add(() -> getAll(batch).size());
+        }
+        return tasks;
+    }
+
+    public Executor getLoadExecutor() {
+        return loadExecutor != null ? loadExecutor : CacheFactory.getInstance().getLoadExecutor();
+    }
+
     protected ICache<K, T> getCache() {
-        return CacheFactory.getInstance().getCache(this);
+        ICache<K, T> c = cache;
+        return c != null ? c : CacheFactory.getInstance().getCache(this);
+    }
+
+    /**
+     * 绑定缓存引擎, 由 {@link CacheFactory} 在创建或重建引擎时调用
+     */
+    void bind(ICache<K, T> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 写操作使用的缓存引擎, 迁移期间先记录 key
+     */
+    private ICache<K, T> writeCache(K k) {
+        modifications.increment();
+        Set<K> writes = migrationWrites;
+        if (writes != null) {
+            writes.add(k);
+        }
+        return getCache();
+    }
+
+    void beginMigration() {
+        migrationWrites = ConcurrentHashMap.newKeySet();
+    }
+
+    Set<K> endMigration() {
+        Set<K> writes = migrationWrites;
+        migrationWrites = null;
+        return writes != null ? writes : Collections.emptySet();
     }
 
     public T get(K k) {
+        recordAccess(k);
+        NearCache<K, T> nearCache = nearCache();
+        long version = 0;
+        if (nearCache != null) {
+            version = nearCache.version();
+            T t = nearCache.get(k, version);
+            if (t != null && !isExpired(t)) {
+                metrics.recordHit();
+                metrics.recordNearHit();
+                return t;
+            }
+        }
         ICache<K, T> cache = getCache();
         if (cache != null) {
             T t = null;
@@ -99,13 +946,119 @@ public abstract class BaseCache<K, T> {
                 log.error("[BaseCache] load error, key:" + k, e);
             }
             if (t != null && isExpired(t)) {
-                return reload(k);
+                return expired(cache, k, t);
+            }
+            if (nearCache != null) {
+                nearCache.put(k, t, version);
             }
             return t;
         }
         return null;
     }
 
+    public Map<K, T> getAll(Collection<K> keys) {
+        if (hotKeyDetector != null) {
+            keys.forEach(this::recordAccess);
+        }
+        ICache<K, T> cache = getCache();
+        if (cache != null) {
+            Map<K, T> result = cache.getAll(keys);
+            result.replaceAll((k, t) -> isExpired(t) ? expired(cache, k, t) : t);
+            result.values().removeIf(Objects::isNull);
+            return result;
+        }
+        return Collections.emptyMap();
+    }
+
+    public CompletableFuture<T> getAsync(K k) {
+        recordAccess(k);
+        ICache<K, T> cache = getCache();
+        if (cache != null) {
+            return cache.getAsync(k).thenCompose(t -> {
+                if (t != null && isExpired(t)) {
+                    if (refreshSeconds > 0) {
+                        cache.refresh(k);
+                        return CompletableFuture.completedFuture(t);
+                    }
+                    if (expiryFlight.isInFlight(k)) {
+                        metrics.recordLoadCoalesced();
+                        return CompletableFuture.completedFuture(t);
+                    }
+                    return expiryFlight.execute(k, key -> {
+                        cache.remove(key);
+                        return cache.getAsync(key);
+                    });
+                }
+                return CompletableFuture.completedFuture(t);
+            });
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 处理 {@link #isExpired} 为 true 的数据: 刷新模式下后台刷新并返回旧值, 否则同步重新加载;
+     * 同一个 key 已有重新加载在途时直接返回旧值, 避免热点 key 过期时大量线程同时调用数据源
+     */
+    private T expired(ICache<K, T> cache, K k, T t) {
+        if (refreshSeconds > 0) {
+            cache.refresh(k);
+            return t;
+        }
+        if (expiryFlight.isInFlight(k)) {
+            metrics.recordLoadCoalesced();
+            return t;
+        }
+        // 过期是本节点的判断, 重新加载不通知其他节点
+        return expiryFlight.execute(k, key -> CompletableFuture.completedFuture(reloadExpired(key, t))).join();
+    }
+
+    /**
+     * 重新加载 {@link #isExpired} 为 true 的数据; 开启加载隔板时先加载再替换,
+     * 加载被拒绝或超时时返回旧值并保留在缓存中, 下次访问再重试
+     */
+    private T reloadExpired(K key, T stale) {
+        ICache<K, T> cache = writeCache(key);
+        if (bulkhead() == null) {
+            return cache.reload(key);
+        }
+        T t = null;
+        try {
+            t = loadThrough(key);
+        } catch (LoadRejectedException e) {
+            log.warn("[BaseCache] reload rejected, serve stale value, key:{}, reason:{}", key, e.getMessage());
+            return stale;
+        } catch (RuntimeException e) {
+            log.error("[BaseCache] reload error, key:" + key, e);
+        }
+        if (t != null) {
+            cache.replace(key, t);
+        } else {
+            cache.remove(key);
+        }
+        return t;
+    }
+
+    /**
+     * 读取缓存中按原样存放的数据, 适用于值为 {@link ByteBuffer} 的缓存; 压缩存放的数据不解压直接返回,
+     * 调用方可以直接发送(如 HTTP Content-Encoding: deflate), 不接受压缩数据时使用 {@link #get(Object)}
+     *
+     * @param k 缓存的key
+     * @return 查不到或值不是 ByteBuffer 时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public EncodedValue getEncoded(K k) {
+        ICache<K, T> cache = getCache();
+        if (cache instanceof OffHeapCache) {
+            return ((OffHeapCache<K>) cache).getEncoded(k);
+        }
+        T t = get(k);
+        if (t instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) t).asReadOnlyBuffer();
+            return new EncodedValue(buffer, null, buffer.remaining());
+        }
+        return null;
+    }
+
     public T getCacheOnly(K k) {
         ICache<K, T> cache = getCache();
         if (cache != null) {
@@ -115,33 +1068,145 @@ public abstract class BaseCache<K, T> {
     }
 
     public boolean put(K k, T val) {
-        ICache<K, T> cache = getCache();
+        ICache<K, T> cache = writeCache(k);
         if (cache != null) {
-            return cache.put(k, val);
+            if (!writeSource(k, val)) {
+                return false;
+            }
+            boolean result = cache.put(k, val);
+            invalidateNear(k);
+            publish(k);
+            return result;
         }
         return false;
     }
 
     public T reload(K k) {
-        ICache<K, T> cache = getCache();
+        ICache<K, T> cache = writeCache(k);
         if (cache != null) {
-            return cache.reload(k);
+            T t = cache.reload(k);
+            invalidateNear(k);
+            publish(k);
+            return t;
         }
         return null;
     }
 
     public boolean replace(K k, T val) {
-        ICache<K, T> cache = getCache();
+        ICache<K, T> cache = writeCache(k);
         if (cache != null) {
-            return cache.replace(k, val);
+            if (!writeSource(k, val)) {
+                return false;
+            }
+            boolean result = cache.replace(k, val);
+            invalidateNear(k);
+            publish(k);
+            return result;
         }
         return false;
     }
 
     public void remove(K k) {
-        ICache<K, T> cache = getCache();
+        removeLocal(k);
+        publish(k);
+    }
+
+    /**
+     * 按 {@link #writeMode} 写入数据源, 同步写失败时返回 false, 不更新缓存
+     */
+    private boolean writeSource(K k, T val) {
+        switch (writeMode) {
+            case THROUGH:
+                try {
+                    writer.write(k, val);
+                    metrics.recordWrites(1);
+                } catch (Exception e) {
+                    metrics.recordWriteFailures(1);
+                    log.error("[BaseCache] write error, key:" + k, e);
+                    return false;
+                }
+                return true;
+            case BEHIND:
+                if (val != null) {
+                    writeBehindQueue().add(k, val);
+                }
+                return true;
+            case NONE:
+            default:
+                return true;
+        }
+    }
+
+    private WriteBehindQueue<K, T> writeBehindQueue() {
+        WriteBehindQueue<K, T> queue = writeBehindQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = writeBehindQueue;
+                if (queue == null) {
+                    queue = new WriteBehindQueue<>(this, CacheFactory.getInstance().getWriteBehindScheduler());
+                    writeBehindQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * 异步写队列中还未写入数据源的值
+     */
+    private T pendingWrite(K key) {
+        WriteBehindQueue<K, T> queue = writeBehindQueue;
+        return queue != null ? queue.get(key) : null;
+    }
+
+    /**
+     * 异步写未写入数据源的个数
+     */
+    int pendingWrites() {
+        WriteBehindQueue<K, T> queue = writeBehindQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * 立即把异步写积压的数据写入数据源
+     */
+    public void flushWrites() {
+        WriteBehindQueue<K, T> queue = writeBehindQueue;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * 停止异步写定时刷新并写入积压的数据, 停机时由 {@link CacheFactory#shutdown()} 调用
+     */
+    void closeWrites() {
+        WriteBehindQueue<K, T> queue = writeBehindQueue;
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    /**
+     * 只删除本节点的数据, 不通知其他节点, 用于级联失效和处理其他节点发来的失效
+     */
+    void removeLocal(K k) {
+        ICache<K, T> cache = writeCache(k);
         if (cache != null) {
             cache.remove(k);
+            invalidateNear(k);
+        }
+        // 已淘汰到磁盘的 key 不在内存中, 引擎不会触发移除通知
+        evictStore(k);
+    }
+
+    /**
+     * 通知其他节点删除 key, 未启用 {@link InvalidationBus} 时不处理
+     */
+    private void publish(K k) {
+        InvalidationBus bus = CacheFactory.getInstance().getInvalidationBus();
+        if (bus != null) {
+            bus.publish(this, k);
         }
     }
 
@@ -166,6 +1231,64 @@ public abstract class BaseCache<K, T> {
         return null != cache ? cache.values() : null;
     }
 
+    /**
+     * 遍历缓存项, 弱一致, 不复制缓存; 适合定时任务扫描整个缓存
+     *
+     * @param action 处理函数
+     */
+    public void forEach(BiConsumer<? super K, ? super T> action) {
+        ICache<K, T> cache = getCache();
+        if (cache != null) {
+            cache.forEach(action);
+        }
+    }
+
+    /**
+     * 遍历满足条件的缓存项
+     *
+     * @param filter 过滤条件
+     * @param action 处理函数
+     */
+    public void scan(BiPredicate<? super K, ? super T> filter, BiConsumer<? super K, ? super T> action) {
+        forEach((k, t) -> {
+            if (filter.test(k, t)) {
+                action.accept(k, t);
+            }
+        });
+    }
+
+    /**
+     * 缓存项的流, 弱一致, 不复制缓存
+     *
+     * @param parallel 是否并行, 并行时按引擎内部结构拆分
+     * @return 缓存项流
+     */
+    public Stream<Map.Entry<K, T>> stream(boolean parallel) {
+        return stream(null, parallel);
+    }
+
+    /**
+     * 缓存项的流, filter 在引擎内部执行, 被过滤的缓存项不创建 Entry
+     *
+     * @param filter   过滤条件, 为空时不过滤
+     * @param parallel 是否并行
+     * @return 缓存项流
+     */
+    public Stream<Map.Entry<K, T>> stream(BiPredicate<? super K, ? super T> filter, boolean parallel) {
+        ICache<K, T> cache = getCache();
+        if (cache == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(cache.spliterator(filter), parallel);
+    }
+
+    /**
+     * 写入、删除和加载的累计次数
+     */
+    long modCount() {
+        return modifications.sum();
+    }
+
     public void evictExpiredElements() {
         ICache<K, T> cache = getCache();
         if (cache != null) {
@@ -174,10 +1297,22 @@ public abstract class BaseCache<K, T> {
     }
 
     public void clear() {
+        clearLocal();
+        InvalidationBus bus = CacheFactory.getInstance().getInvalidationBus();
+        if (bus != null) {
+            bus.publishClear(this);
+        }
+    }
+
+    void clearLocal() {
         ICache<K, T> cache = getCache();
         if (cache != null) {
             cache.clear();
         }
+        NearCache<K, T> nearCache = near;
+        if (nearCache != null) {
+            nearCache.invalidateAll();
+        }
     }
 
     public int size() {
@@ -0,0 +1,35 @@
+package cn.bbw.webdemo.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 字节数据的序列化, 直接复制 ByteBuffer 剩余的字节, 用于值为 ByteBuffer 的缓存
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/14 8:10 下午
+ * @since 1.0
+ */
+public final class ByteBufferSerializer implements CacheSerializer<ByteBuffer> {
+
+    private static final ByteBufferSerializer INSTANCE = new ByteBufferSerializer();
+
+    public static ByteBufferSerializer getInstance() {
+        return INSTANCE;
+    }
+
+    private ByteBufferSerializer() {
+    }
+
+    @Override
+    public byte[] serialize(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public ByteBuffer deserialize(byte[] bytes) {
+        return ByteBuffer.wrap(bytes);
+    }
+}
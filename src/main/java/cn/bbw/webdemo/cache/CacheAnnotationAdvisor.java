@@ -0,0 +1,46 @@
+package cn.bbw.webdemo.cache;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Role;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * 为带有 {@link Cached}、{@link CacheEvict} 的方法创建代理.
+ * 声明为基础设施角色, 由 Spring Boot 在没有 AspectJ 时注册的 InfrastructureAdvisorAutoProxyCreator 识别, 不需要引入 AspectJ
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 9:20 下午
+ * @since 1.0
+ */
+@Component
+@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+public class CacheAnnotationAdvisor extends AbstractPointcutAdvisor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CacheInterceptor interceptor = new CacheInterceptor();
+
+    private final Pointcut pointcut = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return interceptor.operation(method, targetClass) != null;
+        }
+    };
+
+    @Override
+    public Pointcut getPointcut() {
+        return pointcut;
+    }
+
+    @Override
+    public Advice getAdvice() {
+        return interceptor;
+    }
+}
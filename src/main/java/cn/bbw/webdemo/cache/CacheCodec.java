@@ -0,0 +1,40 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * 缓存值压缩编码, 由 {@link BaseCache#setCodec(CacheCodec)} 指定
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/13 8:10 下午
+ * @since 1.0
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码名称, 与 HTTP Content-Encoding 一致, 调用方可据此直接返回压缩数据
+     *
+     * @return 编码名称
+     */
+    String name();
+
+    /**
+     * 压缩
+     *
+     * @param src    原始数据
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 压缩后的数据
+     */
+    byte[] encode(byte[] src, int offset, int length);
+
+    /**
+     * 解压
+     *
+     * @param src            压缩数据
+     * @param offset         起始位置
+     * @param length         长度
+     * @param originalLength 原始数据长度
+     * @return 原始数据
+     */
+    byte[] decode(byte[] src, int offset, int length, int originalLength);
+}
@@ -0,0 +1,28 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * 缓存引擎, 由 {@link BaseCache#setEngine(CacheEngine)} 指定, {@link CacheFactory} 据此创建对应的 {@link ICache} 实现
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/3 8:12 下午
+ * @since 1.0
+ */
+public enum CacheEngine {
+    /**
+     * Guava LoadingCache, 分段 LRU 淘汰, 见 {@link MemCache}
+     */
+    GUAVA,
+    /**
+     * Caffeine LoadingCache, W-TinyLFU 淘汰, 读操作走无锁缓冲区, 适合读多写少的热点缓存, 见 {@link CaffeineCache}
+     */
+    CAFFEINE,
+    /**
+     * 堆外字节缓存, 值类型必须为 {@link java.nio.ByteBuffer}, 容量由 maxWeight(字节)指定, 见 {@link OffHeapCache}
+     */
+    OFF_HEAP,
+    /**
+     * long 键缓存, 原始类型数组开放寻址表, CLOCK 淘汰, 命中时不装箱不分配对象, 只能用于 {@link LongBaseCache}, 见 {@link LongKeyCache}
+     */
+    LONG_KEY
+}
@@ -0,0 +1,46 @@
+package cn.bbw.webdemo.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行后删除缓存, 通过 {@link BaseCache#remove} 删除, 子缓存级联失效并通知其他节点:
+ * <pre>
+ * &#64;CacheEvict(cache = "UserCache", key = 0)
+ * public void updateUser(long id, User user)
+ * </pre>
+ * 缓存可以是 {@link Cached} 创建的, 也可以是手写的 {@link BaseCache} 子类; 缓存还没登记时不处理
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:10 下午
+ * @since 1.0
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheEvict {
+
+    /**
+     * 缓存名
+     */
+    String cache();
+
+    /**
+     * 组成 key 的参数下标, 规则与 {@link Cached#key()} 相同
+     */
+    int[] key() default {};
+
+    /**
+     * 是否清空整个缓存, 为 true 时忽略 key
+     */
+    boolean allEntries() default false;
+
+    /**
+     * 是否在方法执行前删除; 默认执行成功后删除, 方法抛出异常时不删除
+     */
+    boolean beforeInvocation() default false;
+}
@@ -1,8 +1,33 @@
 package cn.bbw.webdemo.cache;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -29,11 +54,83 @@ public class CacheFactory {
      * 缓存最大元素个数
      */
     public static final int MAX_SIZE = 50000;
+    /**
+     * 默认异步加载线程数
+     */
+    public static final int LOAD_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * 级联失效线程数
+     */
+    public static final int INVALIDATION_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * 停机时等待级联失效执行完的时间, 单位秒
+     */
+    private static final int SHUTDOWN_FLUSH_SECONDS = 5;
 
     private final ReentrantLock lock = new ReentrantLock();
 
     private final ConcurrentHashMap<String, ICache<?, ?>> cacheMap = new ConcurrentHashMap<>();
 
+    private final ConcurrentHashMap<String, BaseCache<?, ?>> baseCacheMap = new ConcurrentHashMap<>();
+
+    private final List<Consumer<BaseCache<?, ?>>> registerListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 按缓存名声明的配置, 创建引擎前设置到缓存上
+     */
+    private final ConcurrentHashMap<String, CacheSpec> specs = new ConcurrentHashMap<>();
+
+    /**
+     * 磁盘二级缓存根目录, 每个缓存一个子目录
+     */
+    @Getter
+    @Setter
+    private String persistDir = System.getProperty("cache.persist.dir", "cache-data");
+
+    /**
+     * 默认异步加载线程池, 未单独指定 {@link BaseCache#setLoadExecutor} 的缓存共用
+     */
+    @Getter
+    private final ExecutorService loadExecutor = new ThreadPoolExecutor(LOAD_THREADS, LOAD_THREADS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("cache-loader-%d").setDaemon(true).build());
+
+    /**
+     * 异步写定时刷新线程, 各 {@link WriteMode#BEHIND} 的缓存共用
+     */
+    @Getter
+    private final ScheduledExecutorService writeBehindScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("cache-write-behind").setDaemon(true).build());
+
+    /**
+     * 父子缓存级联失效管道
+     */
+    @Getter
+    private final InvalidationPipeline invalidationPipeline = new InvalidationPipeline(INVALIDATION_THREADS);
+
+    /**
+     * 跨节点失效总线, 未启用时为空
+     */
+    @Getter
+    private volatile InvalidationBus invalidationBus;
+
+    /**
+     * 后台维护, 未启动时为空, 过期数据只在访问时顺带清理
+     */
+    @Getter
+    private volatile CacheMaintenance maintenance;
+
+    /**
+     * 已导入快照的目录, 之后登记的缓存登记时补导入, 未导入时为空
+     */
+    private volatile Path snapshotDir;
+
+    private volatile int snapshotParallelism;
+
+    /**
+     * 启动预热的每批 key 数, 大于 0 表示已预热, 之后登记的缓存登记时补预热
+     */
+    private volatile int warmUpBatchSize;
+
     @SuppressWarnings("unchecked")
     public <K, V> ICache<K, V> getCache(BaseCache<K, V> gameCache) {
         String name = gameCache.getName();
@@ -43,15 +140,23 @@ public class CacheFactory {
             try {
                 cache = (ICache<K, V>) cacheMap.get(name);
                 if (cache == null) {
-                    cache = new MemCache<>(gameCache);
+                    CacheSpec spec = specs.get(name);
+                    if (spec != null) {
+                        spec.applyTo(gameCache);
+                    }
+                    if (gameCache.isPersistent()) {
+                        openStore(gameCache);
+                    }
+                    cache = createCache(gameCache);
                     BaseCache<K, ?> parent = gameCache.getParent();
-                    if (parent != null) {
-                        parent.getChildren().add(cache);
+                    if (parent != null && !parent.getChildren().contains(gameCache)) {
+                        parent.getChildren().add(gameCache);
                     }
                     cacheMap.putIfAbsent(name, cache);
                     cache = (ICache<K, V>) cacheMap.get(name);
                 }
-
+                gameCache.bind(cache);
+                register(gameCache);
             } catch (Exception e) {
                 log.error("getCache error, cache name:" + name, e);
             } finally {
@@ -61,6 +166,387 @@ public class CacheFactory {
         return cache;
     }
 
+    @SuppressWarnings("unchecked")
+    private <K, V> ICache<K, V> createCache(BaseCache<K, V> gameCache) {
+        switch (gameCache.getEngine()) {
+            case CAFFEINE:
+                return new CaffeineCache<>(gameCache);
+            case OFF_HEAP:
+                return (ICache<K, V>) new OffHeapCache<>((BaseCache<K, ByteBuffer>) gameCache);
+            case LONG_KEY:
+                if (!(gameCache instanceof LongBaseCache)) {
+                    throw new IllegalArgumentException("LONG_KEY engine requires LongBaseCache, cache name:" + gameCache.getName());
+                }
+                return (ICache<K, V>) new LongKeyCache<>((LongBaseCache<V>) gameCache);
+            case GUAVA:
+            default:
+                return new MemCache<>(gameCache);
+        }
+    }
+
+    /**
+     * 配置缓存, 与之前的配置合并; 引擎未创建时在创建前生效, 已创建时按新配置重建引擎并迁移数据
+     *
+     * @param name 缓存名
+     * @param spec 配置, 为空的项不修改
+     */
+    public void configure(String name, CacheSpec spec) {
+        lock.lock();
+        try {
+            CacheSpec configured = specs.get(name);
+            CacheSpec merged = configured != null ? configured.merge(spec) : spec;
+            BaseCache<?, ?> baseCache = baseCacheMap.get(name);
+            if (baseCache != null && cacheMap.containsKey(name)) {
+                rebuild(baseCache, merged);
+            }
+            specs.put(name, merged);
+            log.info("cache configured, name:{}, spec:{}", name, merged);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 各缓存当前生效的配置
+     */
+    public Map<String, CacheSpec> getSpecs() {
+        Map<String, CacheSpec> result = new TreeMap<>();
+        baseCacheMap.forEach((name, baseCache) -> result.put(name, getSpec(name)));
+        return result;
+    }
+
+    public CacheSpec getSpec(String name) {
+        BaseCache<?, ?> baseCache = baseCacheMap.get(name);
+        if (baseCache == null) {
+            return null;
+        }
+        CacheSpec spec = CacheSpec.of(baseCache);
+        CacheSpec configured = specs.get(name);
+        return configured != null ? spec.merge(configured) : spec;
+    }
+
+    /**
+     * 按新配置重建引擎, 需持有 lock.
+     * 旧引擎先执行一次维护, 清除过期数据并处理积压的移除通知; 数据连同剩余有效期复制到新引擎后切换,
+     * 复制期间被写入、删除的 key 在切换后失效, 下次访问重新加载; 切换后关闭旧引擎释放堆外内存.
+     * 磁盘二级缓存属于 {@link BaseCache}, 由新引擎继续使用
+     */
+    private <K, V> void rebuild(BaseCache<K, V> baseCache, CacheSpec spec) {
+        String name = baseCache.getName();
+        if (spec.getEngine() == CacheEngine.OFF_HEAP && baseCache.getEngine() != CacheEngine.OFF_HEAP) {
+            throw new IllegalArgumentException("heap cache can not switch to OFF_HEAP, cache name:" + name);
+        }
+        if (spec.getEngine() == CacheEngine.LONG_KEY && !(baseCache instanceof LongBaseCache)) {
+            throw new IllegalArgumentException("LONG_KEY engine requires LongBaseCache, cache name:" + name);
+        }
+        ICache<K, V> old = getCache(name);
+        old.cleanUp();
+        spec.applyTo(baseCache);
+        baseCache.beginMigration();
+        ICache<K, V> cache = createCache(baseCache);
+        int migrated = 0;
+        for (K key : old.keys()) {
+            V value = old.getCacheOnly(key);
+            if (value != null && cache.put(key, value, old.expiresAt(key))) {
+                migrated++;
+            }
+        }
+        cacheMap.put(name, cache);
+        baseCache.bind(cache);
+        Set<K> writes = baseCache.endMigration();
+        writes.forEach(cache::remove);
+        old.close();
+        log.info("cache rebuilt, name:{}, migrated:{}, invalidated:{}", name, migrated, writes.size());
+    }
+
+    /**
+     * 登记缓存, 用于启动预热和停机处理; 第一次创建引擎时在 {@link #getCache(BaseCache)} 中调用, 此时缓存已构造完成.
+     * 启动预热之后才登记的缓存在加载线程池中补导入快照和补预热
+     */
+    void register(BaseCache<?, ?> baseCache) {
+        lock.lock();
+        try {
+            if (baseCacheMap.putIfAbsent(baseCache.getName(), baseCache) != null) {
+                return;
+            }
+            registerListeners.forEach(listener -> listener.accept(baseCache));
+            Path dir = snapshotDir;
+            int batchSize = warmUpBatchSize;
+            if (dir != null || batchSize > 0) {
+                loadExecutor.execute(() -> lateWarmUp(baseCache, dir, batchSize));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void lateWarmUp(BaseCache<?, ?> baseCache, Path dir, int batchSize) {
+        String name = baseCache.getName();
+        try {
+            if (dir != null) {
+                CacheSnapshot.load(baseCache, dir.resolve(name + CacheSnapshot.SUFFIX), snapshotParallelism);
+            }
+            if (batchSize > 0) {
+                int loaded = 0;
+                for (Callable<Integer> task : warmUpTasks(baseCache, batchSize)) {
+                    loaded += task.call();
+                }
+                log.info("late cache warm up finished, cache name:{}, loaded:{}", name, loaded);
+            }
+        } catch (Exception e) {
+            log.error("late cache warm up error, cache name:" + name, e);
+        }
+    }
+
+    BaseCache<?, ?> getBaseCache(String name) {
+        return baseCacheMap.get(name);
+    }
+
+    Collection<BaseCache<?, ?>> getBaseCaches() {
+        return baseCacheMap.values();
+    }
+
+    /**
+     * 启用跨节点失效总线, 之后通过 {@link BaseCache} 的写入、删除会通知其他节点
+     *
+     * @param bus 失效总线
+     */
+    public void startInvalidationBus(InvalidationBus bus) throws IOException {
+        lock.lock();
+        try {
+            if (invalidationBus != null) {
+                throw new IllegalStateException("invalidation bus already started");
+            }
+            bus.start();
+            invalidationBus = bus;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 启动后台维护, 之后 Guava 引擎的淘汰通知积压到维护时批量处理
+     *
+     * @param maintenance 后台维护
+     */
+    public void startMaintenance(CacheMaintenance maintenance) {
+        lock.lock();
+        try {
+            if (this.maintenance != null) {
+                throw new IllegalStateException("cache maintenance already started");
+            }
+            maintenance.start();
+            this.maintenance = maintenance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台维护并对所有缓存执行最后一次维护, 之后淘汰通知不再积压
+     */
+    public void stopMaintenance() {
+        CacheMaintenance cacheMaintenance;
+        lock.lock();
+        try {
+            cacheMaintenance = maintenance;
+            maintenance = null;
+        } finally {
+            lock.unlock();
+        }
+        if (cacheMaintenance != null) {
+            cacheMaintenance.close();
+        }
+    }
+
+    /**
+     * 监听缓存登记, 已经登记的缓存会立即回调一次
+     *
+     * @param listener 回调
+     */
+    public void addRegisterListener(Consumer<BaseCache<?, ?>> listener) {
+        registerListeners.add(listener);
+        baseCacheMap.values().forEach(listener);
+    }
+
+    /**
+     * 启动预热: 并行执行各缓存的预加载查询, 再把预加载的 key 分批并行加载, 超时后放弃未完成的部分;
+     * 之后才第一次使用的缓存登记时补预热
+     *
+     * @param parallelism 并行数
+     * @param batchSize   每批 key 数
+     * @param timeout     超时时间
+     * @param unit        时间单位
+     */
+    public void warmUp(int parallelism, int batchSize, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<BaseCache<?, ?>> caches = snapshotCaches(() -> warmUpBatchSize = Math.max(1, batchSize));
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("cache-warmup-%d").setDaemon(true).build());
+        try {
+            List<Callable<List<Callable<Integer>>>> queries = new ArrayList<>(caches.size());
+            caches.forEach(baseCache -> queries.add(() -> warmUpTasks(baseCache, batchSize)));
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (Future<List<Callable<Integer>>> future : pool.invokeAll(queries, remaining(deadline), TimeUnit.NANOSECONDS)) {
+                tasks.addAll(done(future, Collections.emptyList()));
+            }
+            int loaded = 0;
+            for (Future<Integer> future : pool.invokeAll(tasks, remaining(deadline), TimeUnit.NANOSECONDS)) {
+                loaded += done(future, 0);
+            }
+            log.info("cache warm up finished, caches:{}, batches:{}, loaded:{}, timeout:{}", caches.size(), tasks.size(), loaded, remaining(deadline) == 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <K> List<Callable<Integer>> warmUpTasks(BaseCache<K, ?> baseCache, int batchSize) {
+        return baseCache.warmUpTasks(baseCache.warmUp(), batchSize);
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static <T> T done(Future<T> future, T defaultValue) {
+        if (future.isCancelled()) {
+            return defaultValue;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("cache warm up error", e.getCause());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 导出所有已创建引擎的缓存, 每个缓存一个文件 缓存名 + {@link CacheSnapshot#SUFFIX}
+     *
+     * @param dir 快照目录
+     * @return 导出的记录数
+     */
+    public int exportSnapshot(Path dir) {
+        int count = 0;
+        for (BaseCache<?, ?> baseCache : baseCacheMap.values()) {
+            String name = baseCache.getName();
+            if (!cacheMap.containsKey(name)) {
+                continue;
+            }
+            try {
+                count += CacheSnapshot.export(baseCache, dir.resolve(name + CacheSnapshot.SUFFIX));
+            } catch (Exception e) {
+                log.error("export cache snapshot error, cache name:" + name, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 导入快照目录中已登记缓存的快照, 没有快照文件的缓存跳过;
+     * 之后才第一次使用的缓存登记时补导入, 已经缓存的 key 不覆盖
+     *
+     * @param dir         快照目录
+     * @param parallelism 每个缓存导入的线程数
+     * @return 导入的记录数
+     */
+    public int loadSnapshot(Path dir, int parallelism) {
+        List<BaseCache<?, ?>> caches = snapshotCaches(() -> {
+            snapshotParallelism = parallelism;
+            snapshotDir = dir;
+        });
+        int count = 0;
+        for (BaseCache<?, ?> baseCache : caches) {
+            try {
+                count += CacheSnapshot.load(baseCache, dir.resolve(baseCache.getName() + CacheSnapshot.SUFFIX), parallelism);
+            } catch (Exception e) {
+                log.error("load cache snapshot error, cache name:" + baseCache.getName(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 在登记锁内记录设置并复制已登记的缓存, 之后登记的缓存由 {@link #register} 按设置补处理, 不会遗漏也不会重复
+     */
+    private List<BaseCache<?, ?>> snapshotCaches(Runnable settings) {
+        lock.lock();
+        try {
+            settings.run();
+            return new ArrayList<>(baseCacheMap.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 打开磁盘二级缓存; 堆外缓存的值是 ByteBuffer, 不能使用默认的 JDK 序列化, 未配置值序列化器时不开启
+     */
+    private <K, V> void openStore(BaseCache<K, V> gameCache) {
+        if (gameCache.getEngine() == CacheEngine.OFF_HEAP && gameCache.getValueSerializer() instanceof JdkSerializer) {
+            log.error("open disk store error, OFF_HEAP cache requires a ByteBuffer value serializer, cache name:{}", gameCache.getName());
+            return;
+        }
+        try {
+            gameCache.setDiskStore(new DiskStore<>(Paths.get(persistDir, gameCache.getName()),
+                    gameCache.getKeySerializer(), gameCache.getValueSerializer()));
+        } catch (IOException e) {
+            log.error("open disk store error, cache name:" + gameCache.getName(), e);
+        }
+    }
+
+    /**
+     * 等待已提交的级联失效执行完, 供测试和管理接口在删除后读取子缓存前调用
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 全部执行完返回 true, 超时返回 false
+     */
+    public boolean awaitInvalidations(long timeout, TimeUnit unit) {
+        try {
+            return invalidationPipeline.flush(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * 停机处理, 停止后台维护并处理剩余的淘汰通知, 异步写积压的数据写入数据源, 等待级联失效执行完, 发送剩余的跨节点失效, 内存中的数据写入磁盘二级缓存
+     */
+    public void shutdown() {
+        stopMaintenance();
+        baseCacheMap.values().forEach(baseCache -> {
+            try {
+                baseCache.closeWrites();
+                if (baseCache.pendingWrites() > 0) {
+                    log.warn("cache writes not flushed, cache name:{}, pending:{}", baseCache.getName(), baseCache.pendingWrites());
+                }
+            } catch (Exception e) {
+                log.error("flush cache writes error, cache name:" + baseCache.getName(), e);
+            }
+        });
+        if (!awaitInvalidations(SHUTDOWN_FLUSH_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("cache invalidation flush timeout, pending:{}", invalidationPipeline.pending());
+        }
+        InvalidationBus bus = invalidationBus;
+        if (bus != null) {
+            invalidationBus = null;
+            bus.close();
+        }
+        baseCacheMap.values().forEach(baseCache -> {
+            try {
+                baseCache.persist();
+            } catch (Exception e) {
+                log.error("persist cache error, cache name:" + baseCache.getName(), e);
+            }
+        });
+    }
+
     public void clear() {
         lock.lock();
         try {
@@ -0,0 +1,200 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 处理 {@link Cached} 和 {@link CacheEvict}.
+ * 注解在每个方法第一次匹配时解析一次, 缓存和 key 的参数下标都保存下来, 调用时只按下标取参数, 不再反射
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:50 下午
+ * @since 1.0
+ */
+@Slf4j
+public class CacheInterceptor implements MethodInterceptor {
+
+    /**
+     * 方法 -> 解析结果, 没有注解的方法也记录, 避免重复解析
+     */
+    private final ConcurrentHashMap<MethodClassKey, Optional<Operation>> operations = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object target = invocation.getThis();
+        Operation operation = operation(invocation.getMethod(), target != null ? AopUtils.getTargetClass(target) : null);
+        if (operation == null) {
+            return invocation.proceed();
+        }
+        Object[] args = invocation.getArguments();
+        if (operation.evict != null && operation.evict.beforeInvocation) {
+            evict(operation.evict, args);
+        }
+        Object result;
+        Object key = operation.cached != null ? operation.cached.key.of(args) : null;
+        if (key != null) {
+            result = operation.cached.cache.get(key, invocation);
+        } else {
+            result = invocation.proceed();
+        }
+        if (operation.evict != null && !operation.evict.beforeInvocation) {
+            evict(operation.evict, args);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evict(Evict evict, Object[] args) {
+        BaseCache<Object, ?> baseCache = (BaseCache<Object, ?>) CacheFactory.getInstance().getBaseCache(evict.cache);
+        if (baseCache == null) {
+            return;
+        }
+        if (evict.allEntries) {
+            baseCache.clear();
+            return;
+        }
+        Object key = evict.key.of(args);
+        if (key != null) {
+            baseCache.remove(key);
+        }
+    }
+
+    /**
+     * 解析方法上的注解, 没有注解时返回 null; {@link Cached} 的缓存在这里创建, 代理创建时就已登记
+     */
+    Operation operation(Method method, Class<?> targetClass) {
+        return operations.computeIfAbsent(new MethodClassKey(method, targetClass), k -> Optional.ofNullable(parse(method, targetClass))).orElse(null);
+    }
+
+    private Operation parse(Method method, Class<?> targetClass) {
+        Method specific = AopUtils.getMostSpecificMethod(method, targetClass);
+        Cached cached = AnnotatedElementUtils.findMergedAnnotation(specific, Cached.class);
+        CacheEvict cacheEvict = AnnotatedElementUtils.findMergedAnnotation(specific, CacheEvict.class);
+        if (cached == null && cacheEvict == null) {
+            return null;
+        }
+        int parameterCount = specific.getParameterCount();
+        Cache cache = null;
+        if (cached != null) {
+            cache = new Cache(methodCache(cached), KeyGenerator.of(cached.key(), parameterCount, specific));
+        }
+        Evict evict = null;
+        if (cacheEvict != null) {
+            evict = new Evict(cacheEvict.cache(), KeyGenerator.of(cacheEvict.key(), parameterCount, specific),
+                    cacheEvict.allEntries(), cacheEvict.beforeInvocation());
+        }
+        log.info("[CacheInterceptor] cached method, method:{}, cached:{}, evict:{}", specific, cached, cacheEvict);
+        return new Operation(cache, evict);
+    }
+
+    /**
+     * 按缓存名创建或复用 {@link MethodCache}, 同名的手写缓存不能用于 {@link Cached}
+     */
+    private static MethodCache methodCache(Cached cached) {
+        synchronized (CacheInterceptor.class) {
+            BaseCache<?, ?> baseCache = CacheFactory.getInstance().getBaseCache(cached.cache());
+            if (baseCache == null) {
+                MethodCache cache = new MethodCache(cached.cache(), cached.parent(), cached.maxSize(), cached.duration());
+                // 构造完成后登记, 占用缓存名, 同名的其他方法复用
+                CacheFactory.getInstance().register(cache);
+                return cache;
+            }
+            if (!(baseCache instanceof MethodCache)) {
+                throw new IllegalStateException("cache name already used by " + baseCache.getClass().getName() + ", cache name:" + cached.cache());
+            }
+            return (MethodCache) baseCache;
+        }
+    }
+
+    static final class Operation {
+        private final Cache cached;
+        private final Evict evict;
+
+        private Operation(Cache cached, Evict evict) {
+            this.cached = cached;
+            this.evict = evict;
+        }
+    }
+
+    private static final class Cache {
+        private final MethodCache cache;
+        private final KeyGenerator key;
+
+        private Cache(MethodCache cache, KeyGenerator key) {
+            this.cache = cache;
+            this.key = key;
+        }
+    }
+
+    private static final class Evict {
+        private final String cache;
+        private final KeyGenerator key;
+        private final boolean allEntries;
+        private final boolean beforeInvocation;
+
+        private Evict(String cache, KeyGenerator key, boolean allEntries, boolean beforeInvocation) {
+            this.cache = cache;
+            this.key = key;
+            this.allEntries = allEntries;
+            this.beforeInvocation = beforeInvocation;
+        }
+    }
+
+    /**
+     * 按参数下标组成 key
+     */
+    private static final class KeyGenerator {
+        private final int[] indexes;
+
+        private KeyGenerator(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        private static KeyGenerator of(int[] key, int parameterCount, Method method) {
+            if (key.length == 0) {
+                int[] all = new int[parameterCount];
+                Arrays.setAll(all, i -> i);
+                return new KeyGenerator(all);
+            }
+            for (int index : key) {
+                if (index < 0 || index >= parameterCount) {
+                    throw new IllegalArgumentException("cache key index out of range, index:" + index + ", method:" + method);
+                }
+            }
+            return new KeyGenerator(key.clone());
+        }
+
+        /**
+         * @return 任一参数为 null 时返回 null
+         */
+        private Object of(Object[] args) {
+            switch (indexes.length) {
+                case 0:
+                    return Collections.emptyList();
+                case 1:
+                    return args[indexes[0]];
+                default:
+                    Object[] values = new Object[indexes.length];
+                    for (int i = 0; i < indexes.length; i++) {
+                        Object value = args[indexes[i]];
+                        if (value == null) {
+                            return null;
+                        }
+                        values[i] = value;
+                    }
+                    return Arrays.asList(values);
+            }
+        }
+    }
+}
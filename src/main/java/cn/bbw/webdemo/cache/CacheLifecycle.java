@@ -0,0 +1,88 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存生命周期, 应用启动完成时导入快照、预热并启动后台维护, 应用关闭时调用 {@link CacheFactory#shutdown()} 并导出快照
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/6 10:20 下午
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class CacheLifecycle {
+
+    @Value("${cache.warmup.parallelism:4}")
+    private int warmUpParallelism;
+
+    @Value("${cache.warmup.batch-size:500}")
+    private int warmUpBatchSize;
+
+    @Value("${cache.warmup.timeout-seconds:60}")
+    private long warmUpTimeoutSeconds;
+
+    /**
+     * 快照目录, 为空表示不使用快照; 启动时先导入快照再预热, 关闭时导出快照
+     */
+    @Value("${cache.snapshot.dir:}")
+    private String snapshotDir;
+
+    @Value("${cache.snapshot.parallelism:4}")
+    private int snapshotParallelism;
+
+    /**
+     * 是否启动后台维护, 见 {@link CacheMaintenance}
+     */
+    @Value("${cache.maintenance.enabled:true}")
+    private boolean maintenanceEnabled;
+
+    @Value("${cache.maintenance.tick-millis:200}")
+    private long maintenanceTickMillis;
+
+    @Value("${cache.maintenance.budget-millis:20}")
+    private long maintenanceBudgetMillis;
+
+    @Value("${cache.maintenance.min-interval-millis:1000}")
+    private long maintenanceMinIntervalMillis;
+
+    @Value("${cache.maintenance.max-interval-millis:60000}")
+    private long maintenanceMaxIntervalMillis;
+
+    /**
+     * 同步执行预热, 预热完成或超时后 Spring Boot 才会发布 ReadinessState.ACCEPTING_TRAFFIC
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!snapshotDir.isEmpty()) {
+            int loaded = CacheFactory.getInstance().loadSnapshot(Paths.get(snapshotDir), snapshotParallelism);
+            log.info("[CacheLifecycle] snapshot loaded, dir:{}, count:{}", snapshotDir, loaded);
+        }
+        log.info("[CacheLifecycle] warm up caches");
+        CacheFactory.getInstance().warmUp(warmUpParallelism, warmUpBatchSize, warmUpTimeoutSeconds, TimeUnit.SECONDS);
+        if (maintenanceEnabled) {
+            CacheFactory.getInstance().startMaintenance(new CacheMaintenance(CacheFactory.getInstance(), maintenanceTickMillis,
+                    maintenanceBudgetMillis, maintenanceMinIntervalMillis, maintenanceMaxIntervalMillis));
+            log.info("[CacheLifecycle] maintenance started, tick:{}ms, budget:{}ms", maintenanceTickMillis, maintenanceBudgetMillis);
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void onContextClosed() {
+        log.info("[CacheLifecycle] shutdown caches");
+        CacheFactory.getInstance().shutdown();
+        if (!snapshotDir.isEmpty()) {
+            int exported = CacheFactory.getInstance().exportSnapshot(Paths.get(snapshotDir));
+            log.info("[CacheLifecycle] snapshot exported, dir:{}, count:{}", snapshotDir, exported);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package cn.bbw.webdemo.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台维护, 定时对已创建引擎的缓存执行 {@link ICache#cleanUp()}, 清除过期数据并批量处理积压的移除通知,
+ * 避免只能由请求线程顺带清理, 空闲的缓存也能及时释放内存.
+ * <pre>
+ * 1.每 tickMillis 执行一轮, 每轮最多执行 budgetMillis, 超出后剩余的缓存留到下一轮, 从上次停下的位置继续
+ * 2.每个缓存有自己的维护间隔, 在 [minIntervalMillis, maxIntervalMillis] 之间自适应:
+ *   上次维护后有写入、加载时间隔减半, 没有时间隔加倍
+ * 3.预算在缓存之间检查, 单个缓存的 cleanUp 不会被打断
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:20 下午
+ * @since 1.0
+ */
+@Slf4j
+public class CacheMaintenance implements Runnable {
+
+    private final CacheFactory factory;
+    private final long tickMillis;
+    private final long budgetNanos;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("cache-maintenance").setDaemon(true).build());
+
+    /**
+     * 缓存名 -> 维护状态, 只由维护线程更新
+     */
+    private final ConcurrentHashMap<String, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * 下一轮开始的位置
+     */
+    private int cursor;
+
+    /**
+     * @param factory           缓存工厂
+     * @param tickMillis        每轮间隔, 单位毫秒
+     * @param budgetMillis      每轮最多执行的时间, 单位毫秒
+     * @param minIntervalMillis 单个缓存最短维护间隔, 单位毫秒
+     * @param maxIntervalMillis 单个缓存最长维护间隔, 单位毫秒
+     */
+    public CacheMaintenance(CacheFactory factory, long tickMillis, long budgetMillis, long minIntervalMillis, long maxIntervalMillis) {
+        if (tickMillis <= 0 || budgetMillis <= 0 || minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("invalid maintenance intervals, tick:" + tickMillis + ", budget:" + budgetMillis
+                    + ", min:" + minIntervalMillis + ", max:" + maxIntervalMillis);
+        }
+        this.factory = factory;
+        this.tickMillis = tickMillis;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    void start() {
+        scheduler.scheduleWithFixedDelay(this, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时维护, 等待执行中的一轮结束后对所有缓存执行一次完整维护, 处理剩余的移除通知
+     */
+    void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.warn("[CacheMaintenance] maintenance not finished in 1s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (BaseCache<?, ?> baseCache : factory.getBaseCaches()) {
+            maintain(baseCache);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            tick();
+        } catch (Exception e) {
+            // 异常不能抛出, 否则定时任务会停止
+            log.error("[CacheMaintenance] maintenance error", e);
+        }
+    }
+
+    private void tick() {
+        List<BaseCache<?, ?>> caches = new ArrayList<>(factory.getBaseCaches());
+        int size = caches.size();
+        if (size == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        long now = System.currentTimeMillis();
+        int start = cursor % size;
+        int visited = 0;
+        while (visited < size && System.nanoTime() < deadline) {
+            BaseCache<?, ?> baseCache = caches.get((start + visited) % size);
+            visited++;
+            State state = states.computeIfAbsent(baseCache.getName(), k -> new State(minIntervalMillis));
+            if (state.nextRunAt > now) {
+                continue;
+            }
+            long modCount = baseCache.modCount();
+            if (modCount != state.modCount) {
+                state.intervalMillis = Math.max(minIntervalMillis, state.intervalMillis / 2);
+            } else {
+                state.intervalMillis = Math.min(maxIntervalMillis, state.intervalMillis * 2);
+            }
+            state.modCount = modCount;
+            maintain(baseCache);
+            state.nextRunAt = System.currentTimeMillis() + state.intervalMillis;
+        }
+        cursor = (start + visited) % size;
+    }
+
+    /**
+     * 引擎还没创建的缓存跳过, 不在这里创建
+     */
+    private void maintain(BaseCache<?, ?> baseCache) {
+        ICache<?, ?> cache = factory.getCache(baseCache.getName());
+        if (cache == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            cache.cleanUp();
+        } catch (Exception e) {
+            log.error("[CacheMaintenance] clean up error, cache name:" + baseCache.getName(), e);
+        }
+        baseCache.getMetrics().recordMaintenance(System.nanoTime() - start);
+    }
+
+    /**
+     * 缓存当前的维护间隔, 单位毫秒, 还没维护过时返回 0
+     */
+    public long intervalMillis(String name) {
+        State state = states.get(name);
+        return state != null ? state.intervalMillis : 0;
+    }
+
+    private static final class State {
+        private volatile long intervalMillis;
+        private long nextRunAt;
+        private long modCount = -1;
+
+        private State(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+    }
+}
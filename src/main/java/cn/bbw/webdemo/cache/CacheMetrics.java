@@ -0,0 +1,372 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 缓存统计, 每个 {@link BaseCache} 一份, 引擎重建后仍然保留, 由 {@link CacheMetricsBinder} 发布到 Micrometer
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/7 8:40 下午
+ * @since 1.0
+ */
+public class CacheMetrics {
+
+    /**
+     * 移除原因, 与 Guava/Caffeine 的 RemovalCause 同名
+     */
+    public static final String[] REMOVAL_CAUSES = {"EXPLICIT", "REPLACED", "COLLECTED", "EXPIRED", "SIZE"};
+
+    /**
+     * 是否记录统计
+     */
+    @Getter
+    @Setter
+    private volatile boolean enabled = true;
+
+    /**
+     * 加载耗时记录器(纳秒), 用于发布加载耗时直方图
+     */
+    @Setter
+    private volatile LongConsumer loadTimeRecorder;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccess = new LongAdder();
+    private final LongAdder loadFailure = new LongAdder();
+    private final LongAdder loadsRejected = new LongAdder();
+    private final LongAdder loadsTimedOut = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder cascades = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder loadsCoalesced = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder writesCoalesced = new LongAdder();
+    private final LongAdder compressions = new LongAdder();
+    private final LongAdder compressTime = new LongAdder();
+    private final LongAdder compressRawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder decompressions = new LongAdder();
+    private final LongAdder decompressTime = new LongAdder();
+    private final LongAdder nearHits = new LongAdder();
+    private final LongAdder maintenances = new LongAdder();
+    private final LongAdder maintenanceTime = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> removals = new ConcurrentHashMap<>();
+
+    public CacheMetrics() {
+        for (String cause : REMOVAL_CAUSES) {
+            removals.put(cause, new LongAdder());
+        }
+    }
+
+    public void recordHit() {
+        if (enabled) {
+            hits.increment();
+        }
+    }
+
+    public void recordMiss() {
+        if (enabled) {
+            misses.increment();
+        }
+    }
+
+    public void recordHits(int count) {
+        if (enabled && count > 0) {
+            hits.add(count);
+        }
+    }
+
+    public void recordMisses(int count) {
+        if (enabled && count > 0) {
+            misses.add(count);
+        }
+    }
+
+    public void recordLoadSuccess(long nanos) {
+        if (enabled) {
+            loadSuccess.increment();
+            recordLoadTime(nanos);
+        }
+    }
+
+    public void recordLoadFailure(long nanos) {
+        if (enabled) {
+            loadFailure.increment();
+            recordLoadTime(nanos);
+        }
+    }
+
+    /**
+     * 记录一次加载隔板满而拒绝的加载, 见 {@link LoaderBulkhead}
+     */
+    public void recordLoadRejected() {
+        if (enabled) {
+            loadsRejected.increment();
+        }
+    }
+
+    /**
+     * 记录一次调用线程等待超时的加载
+     */
+    public void recordLoadTimeout() {
+        if (enabled) {
+            loadsTimedOut.increment();
+        }
+    }
+
+    private void recordLoadTime(long nanos) {
+        totalLoadTime.add(nanos);
+        LongConsumer recorder = loadTimeRecorder;
+        if (recorder != null) {
+            recorder.accept(nanos);
+        }
+    }
+
+    /**
+     * 记录移除
+     *
+     * @param cause 移除原因, 见 {@link #REMOVAL_CAUSES}
+     */
+    public void recordRemoval(String cause) {
+        if (enabled) {
+            removals.computeIfAbsent(cause, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 记录一次父缓存删除导致的子缓存级联删除
+     */
+    public void recordCascade() {
+        if (enabled) {
+            cascades.increment();
+        }
+    }
+
+    /**
+     * 记录一次负缓存命中, 即未命中后因查不到数据或加载退避而没有调用数据源
+     */
+    public void recordNegativeHit() {
+        if (enabled) {
+            negativeHits.increment();
+        }
+    }
+
+    /**
+     * 记录一次合并的加载, 即同一个 key 已有加载在途, 等待在途的结果或直接返回旧值, 没有再调用数据源
+     */
+    public void recordLoadCoalesced() {
+        if (enabled) {
+            loadsCoalesced.increment();
+        }
+    }
+
+    /**
+     * 记录写入数据源成功的个数
+     */
+    public void recordWrites(int count) {
+        if (enabled && count > 0) {
+            writes.add(count);
+        }
+    }
+
+    /**
+     * 记录写入数据源失败的个数
+     */
+    public void recordWriteFailures(int count) {
+        if (enabled && count > 0) {
+            writeFailures.add(count);
+        }
+    }
+
+    /**
+     * 记录一次异步写合并, 即写入数据源前同一个 key 再次更新, 省掉一次写入
+     */
+    public void recordWriteCoalesced() {
+        if (enabled) {
+            writesCoalesced.increment();
+        }
+    }
+
+    /**
+     * 记录一次压缩, 压缩后没有变小而按原样存放的也记录, 计入 CPU 耗时
+     *
+     * @param rawBytes    原始字节数
+     * @param storedBytes 实际存放的字节数
+     * @param nanos       耗时, 单位纳秒
+     */
+    public void recordCompress(int rawBytes, int storedBytes, long nanos) {
+        if (enabled) {
+            compressions.increment();
+            compressTime.add(nanos);
+            compressRawBytes.add(rawBytes);
+            compressedBytes.add(storedBytes);
+        }
+    }
+
+    /**
+     * 记录一次解压
+     *
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void recordDecompress(long nanos) {
+        if (enabled) {
+            decompressions.increment();
+            decompressTime.add(nanos);
+        }
+    }
+
+    /**
+     * 记录一次近缓存命中, 同时计入 {@link #hitCount()}, 见 {@link NearCache}
+     */
+    public void recordNearHit() {
+        if (enabled) {
+            nearHits.increment();
+        }
+    }
+
+    /**
+     * 记录一次后台维护, 见 {@link CacheMaintenance}
+     *
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void recordMaintenance(long nanos) {
+        if (enabled) {
+            maintenances.increment();
+            maintenanceTime.add(nanos);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long hit = hitCount();
+        long total = hit + missCount();
+        return total == 0 ? 1.0 : (double) hit / total;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccess.sum();
+    }
+
+    public long loadFailureCount() {
+        return loadFailure.sum();
+    }
+
+    public long loadRejectedCount() {
+        return loadsRejected.sum();
+    }
+
+    public long loadTimeoutCount() {
+        return loadsTimedOut.sum();
+    }
+
+    /**
+     * 加载总耗时, 单位纳秒
+     */
+    public long totalLoadTime() {
+        return totalLoadTime.sum();
+    }
+
+    public long removalCount(String cause) {
+        LongAdder adder = removals.get(cause);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 淘汰数, 即容量、过期、回收导致的移除, 不含主动删除和覆盖
+     */
+    public long evictionCount() {
+        return removalCount("SIZE") + removalCount("EXPIRED") + removalCount("COLLECTED");
+    }
+
+    public long cascadeCount() {
+        return cascades.sum();
+    }
+
+    public long negativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    public long loadCoalescedCount() {
+        return loadsCoalesced.sum();
+    }
+
+    public long compressCount() {
+        return compressions.sum();
+    }
+
+    /**
+     * 压缩总耗时, 单位纳秒
+     */
+    public long totalCompressTime() {
+        return compressTime.sum();
+    }
+
+    public long decompressCount() {
+        return decompressions.sum();
+    }
+
+    /**
+     * 解压总耗时, 单位纳秒
+     */
+    public long totalDecompressTime() {
+        return decompressTime.sum();
+    }
+
+    /**
+     * 压缩率, 尝试压缩的原始字节数 / 实际存放的字节数, 没有压缩过时为 1
+     */
+    public double compressionRatio() {
+        long stored = compressedBytes.sum();
+        return stored == 0 ? 1.0 : (double) compressRawBytes.sum() / stored;
+    }
+
+    public long nearHitCount() {
+        return nearHits.sum();
+    }
+
+    public long maintenanceCount() {
+        return maintenances.sum();
+    }
+
+    /**
+     * 后台维护总耗时, 单位纳秒
+     */
+    public long totalMaintenanceTime() {
+        return maintenanceTime.sum();
+    }
+
+    public long writeCount() {
+        return writes.sum();
+    }
+
+    public long writeFailureCount() {
+        return writeFailures.sum();
+    }
+
+    public long writeCoalescedCount() {
+        return writesCoalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hitCount() + ", misses=" + missCount() + ", loadSuccess=" + loadSuccessCount()
+                + ", nearHits=" + nearHitCount() + ", loadFailure=" + loadFailureCount() + ", loadsRejected=" + loadRejectedCount() + ", loadsTimedOut=" + loadTimeoutCount() + ", loadsCoalesced=" + loadCoalescedCount() + ", evictions=" + evictionCount() + ", cascades=" + cascadeCount()
+                + ", negativeHits=" + negativeHitCount() + ", writes=" + writeCount() + ", writeFailures=" + writeFailureCount()
+                + ", writesCoalesced=" + writeCoalescedCount() + ", compressions=" + compressCount()
+                + ", compressionRatio=" + String.format("%.2f", compressionRatio()) + ", decompressions=" + decompressCount() + ", maintenances=" + maintenanceCount();
+    }
+}
@@ -0,0 +1,94 @@
+package cn.bbw.webdemo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 {@link CacheFactory} 中所有缓存的 {@link CacheMetrics} 按缓存名发布到 Micrometer,
+ * 之后登记的缓存也会自动发布, 通过 /actuator/metrics/cache.gets?tag=cache:{name} 查看
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/7 9:20 下午
+ * @since 1.0
+ */
+@Component
+public class CacheMetricsBinder implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CacheFactory.getInstance().addRegisterListener(baseCache -> bind(registry, baseCache));
+    }
+
+    private void bind(MeterRegistry registry, BaseCache<?, ?> baseCache) {
+        String name = baseCache.getName();
+        CacheMetrics metrics = baseCache.getMetrics();
+        Tags tags = Tags.of("cache", name);
+
+        FunctionCounter.builder("cache.gets", metrics, CacheMetrics::hitCount).tags(tags).tag("result", "hit")
+                .description("缓存命中次数").register(registry);
+        FunctionCounter.builder("cache.gets", metrics, CacheMetrics::missCount).tags(tags).tag("result", "miss")
+                .description("缓存未命中次数").register(registry);
+        FunctionCounter.builder("cache.near.hits", metrics, CacheMetrics::nearHitCount).tags(tags)
+                .description("近缓存命中次数, 已计入 cache.gets").register(registry);
+        FunctionCounter.builder("cache.loads", metrics, CacheMetrics::loadSuccessCount).tags(tags).tag("result", "success")
+                .description("加载成功次数").register(registry);
+        FunctionCounter.builder("cache.loads", metrics, CacheMetrics::loadFailureCount).tags(tags).tag("result", "failure")
+                .description("加载失败次数").register(registry);
+        FunctionCounter.builder("cache.loads", metrics, CacheMetrics::loadRejectedCount).tags(tags).tag("result", "rejected")
+                .description("加载隔板满而拒绝的次数").register(registry);
+        FunctionCounter.builder("cache.loads", metrics, CacheMetrics::loadTimeoutCount).tags(tags).tag("result", "timeout")
+                .description("等待加载超时的次数").register(registry);
+        Gauge.builder("cache.loads.queued", baseCache, BaseCache::queuedLoads).tags(tags)
+                .description("加载隔板中排队的加载个数").register(registry);
+        FunctionCounter.builder("cache.loads.coalesced", metrics, CacheMetrics::loadCoalescedCount).tags(tags)
+                .description("同一个 key 已有加载在途而合并掉的加载次数").register(registry);
+        FunctionCounter.builder("cache.evictions", metrics, CacheMetrics::evictionCount).tags(tags)
+                .description("容量、过期淘汰次数").register(registry);
+        for (String cause : CacheMetrics.REMOVAL_CAUSES) {
+            FunctionCounter.builder("cache.removals", metrics, m -> m.removalCount(cause)).tags(tags).tag("cause", cause)
+                    .description("按原因统计的移除次数").register(registry);
+        }
+        FunctionCounter.builder("cache.cascades", metrics, CacheMetrics::cascadeCount).tags(tags)
+                .description("父缓存删除导致的子缓存级联删除次数").register(registry);
+        FunctionCounter.builder("cache.negative.hits", metrics, CacheMetrics::negativeHitCount).tags(tags)
+                .description("负缓存命中次数").register(registry);
+        FunctionCounter.builder("cache.writes", metrics, CacheMetrics::writeCount).tags(tags).tag("result", "success")
+                .description("写入数据源成功个数").register(registry);
+        FunctionCounter.builder("cache.writes", metrics, CacheMetrics::writeFailureCount).tags(tags).tag("result", "failure")
+                .description("写入数据源失败个数").register(registry);
+        FunctionCounter.builder("cache.writes.coalesced", metrics, CacheMetrics::writeCoalescedCount).tags(tags)
+                .description("异步写合并掉的写入次数").register(registry);
+        Gauge.builder("cache.writes.pending", baseCache, BaseCache::pendingWrites).tags(tags)
+                .description("异步写未写入数据源的个数").register(registry);
+        FunctionTimer.builder("cache.codec", metrics, CacheMetrics::compressCount, CacheMetrics::totalCompressTime,
+                TimeUnit.NANOSECONDS).tags(tags).tag("op", "compress").description("压缩次数和耗时").register(registry);
+        FunctionTimer.builder("cache.codec", metrics, CacheMetrics::decompressCount, CacheMetrics::totalDecompressTime,
+                TimeUnit.NANOSECONDS).tags(tags).tag("op", "decompress").description("解压次数和耗时").register(registry);
+        Gauge.builder("cache.codec.ratio", metrics, CacheMetrics::compressionRatio).tags(tags)
+                .description("压缩率, 原始字节数/存放字节数").register(registry);
+        FunctionTimer.builder("cache.maintenance", metrics, CacheMetrics::maintenanceCount, CacheMetrics::totalMaintenanceTime,
+                TimeUnit.NANOSECONDS).tags(tags).description("后台维护次数和耗时").register(registry);
+        Gauge.builder("cache.maintenance.interval", CacheFactory.getInstance(), factory -> {
+            CacheMaintenance maintenance = factory.getMaintenance();
+            return maintenance != null ? maintenance.intervalMillis(name) : 0;
+        }).tags(tags).baseUnit("milliseconds").description("当前的后台维护间隔").register(registry);
+        Gauge.builder("cache.size", CacheFactory.getInstance(), factory -> {
+            ICache<?, ?> cache = factory.getCache(name);
+            return cache != null ? cache.size() : 0;
+        }).tags(tags).description("缓存元素个数").register(registry);
+
+        Timer loadTimer = Timer.builder("cache.load.duration").tags(tags)
+                .publishPercentileHistogram()
+                .description("加载耗时").register(registry);
+        metrics.setLoadTimeRecorder(nanos -> loadTimer.record(nanos, TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,83 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存配置, 在 application.properties 中按缓存名声明, 启动时交给 {@link CacheFactory#configure}:
+ * <pre>
+ * cache.specs.FileCache.engine=CAFFEINE
+ * cache.specs.FileCache.max-weight=536870912
+ * cache.specs.FileCache.max-value-bytes=67108864
+ * cache.specs.FileCache.duration=3600
+ * cache.specs.FileCache.expire-after-access=false
+ * cache.specs.FileCache.refresh-seconds=600
+ * cache.specs.FileCache.stats=true
+ * cache.specs.FileCache.write-mode=BEHIND
+ * cache.specs.FileCache.compress=true
+ * cache.specs.FileCache.compress-threshold=4096
+ * </pre>
+ * 文件缓存启动预热的文件, 逗号分隔, 默认不预热:
+ * <pre>
+ * cache.file.preload=test.pdf
+ * </pre>
+ * 运行中可通过 JMX 修改, 见 {@link CacheSpecEndpoint}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/10 9:10 下午
+ * @since 1.0
+ */
+@Slf4j
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "cache")
+public class CacheProperties {
+
+    /**
+     * 缓存名 -> 配置
+     */
+    private Map<String, CacheSpec> specs = new LinkedHashMap<>();
+
+    /**
+     * 文件缓存配置
+     */
+    private File file = new File();
+
+    @PostConstruct
+    public void init() {
+        specs.forEach((name, spec) -> {
+            try {
+                CacheFactory.getInstance().configure(name, spec);
+            } catch (Exception e) {
+                log.error("[CacheProperties] configure error, cache name:" + name, e);
+            }
+        });
+        if (!file.getPreload().isEmpty()) {
+            // 缓存第一次使用时才登记, 需要预热的提前创建引擎, 赶上启动预热
+            FileCache fileCache = FileCache.getInstance();
+            fileCache.setPreloadFiles(new ArrayList<>(file.getPreload()));
+            CacheFactory.getInstance().getCache(fileCache);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class File {
+
+        /**
+         * 启动预热的文件, classpath 下的路径
+         */
+        private List<String> preload = new ArrayList<>();
+    }
+}
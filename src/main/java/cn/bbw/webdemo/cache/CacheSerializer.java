@@ -0,0 +1,28 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * 缓存 key/value 序列化, 用于持久化到磁盘
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/6 9:10 下午
+ * @since 1.0
+ */
+public interface CacheSerializer<T> {
+
+    /**
+     * 序列化
+     *
+     * @param t 对象
+     * @return 字节数组
+     */
+    byte[] serialize(T t);
+
+    /**
+     * 反序列化
+     *
+     * @param bytes 字节数组
+     * @return {@linkplain T}
+     */
+    T deserialize(byte[] bytes);
+}
@@ -0,0 +1,269 @@
+package cn.bbw.webdemo.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存快照, 把缓存中的数据导出到二进制文件, 启动时或在新实例中批量导入.
+ * <pre>
+ * 1.导出时遍历内存中的数据, 按 key/value 序列化器写入, 先写临时文件再改名, 导出中途失败不会覆盖旧快照
+ * 2.导入时顺序读取文件, 按批交给多个线程反序列化并直接放入缓存引擎, 不调用 {@link BaseCache#without}, 不触发同步写和跨节点失效
+ * 3.每条记录带截止时间, 按写入过期时取引擎中记录的过期时间 {@link ICache#expiresAt}, 按访问过期时取导出时刻 + duration
+ *   和 {@link BaseCache#expireAt} 中较早的一个; 导入时已过截止时间的跳过, 其余按截止时间放入, 保留剩余有效期
+ * 4.文件不存在时直接跳过, 文件被截断时保留已导入的部分
+ * </pre>
+ * 文件格式: magic(int) version(int) 导出时间(long) 缓存名(UTF) duration(int) key序列化器(UTF) value序列化器(UTF)
+ * [key长度(int) key value长度(int) value 截止时间(long)]* -1(int) 记录数(int)
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/14 8:30 下午
+ * @since 1.0
+ */
+@Slf4j
+public final class CacheSnapshot {
+
+    /**
+     * 快照文件后缀, {@link CacheFactory} 按 缓存名 + 后缀 命名
+     */
+    public static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+    private static final int END = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * 导入时每批交给一个线程的记录数
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * 使用缓存自身的序列化器导出
+     *
+     * @param cache 缓存
+     * @param file  快照文件
+     * @return 导出的记录数
+     */
+    public static <K, V> int export(BaseCache<K, V> cache, Path file) throws IOException {
+        return export(cache, file, cache.getKeySerializer(), cache.getValueSerializer());
+    }
+
+    /**
+     * 导出缓存中的数据
+     *
+     * @param cache           缓存
+     * @param file            快照文件
+     * @param keySerializer   key 序列化器
+     * @param valueSerializer value 序列化器
+     * @return 导出的记录数
+     */
+    public static <K, V> int export(BaseCache<K, V> cache, Path file, CacheSerializer<K> keySerializer,
+                                    CacheSerializer<V> valueSerializer) throws IOException {
+        long start = System.currentTimeMillis();
+        long deadline = cache.getDuration() > 0 ? start + TimeUnit.SECONDS.toMillis(cache.getDuration()) : 0;
+        ICache<K, V> engine = cache.getCache();
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(start);
+            out.writeUTF(cache.getName());
+            out.writeInt(cache.getDuration());
+            out.writeUTF(keySerializer.getClass().getName());
+            out.writeUTF(valueSerializer.getClass().getName());
+            cache.forEach((k, v) -> {
+                byte[] key;
+                byte[] value;
+                try {
+                    key = keySerializer.serialize(k);
+                    value = valueSerializer.serialize(v);
+                } catch (RuntimeException e) {
+                    if (failed.getAndIncrement() == 0) {
+                        log.error("[CacheSnapshot] serialize error, cache name:" + cache.getName() + ", key:" + k, e);
+                    }
+                    return;
+                }
+                long expireAt = engine != null ? engine.expiresAt(k) : 0;
+                if (expireAt <= 0) {
+                    expireAt = BaseCache.earliest(cache.hasVariableExpiry() ? cache.expireAt(k, v) : 0, deadline);
+                }
+                try {
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeInt(value.length);
+                    out.write(value);
+                    out.writeLong(expireAt);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count.incrementAndGet();
+            });
+            out.writeInt(END);
+            out.writeInt(count.get());
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("[CacheSnapshot] exported, cache name:{}, file:{}, count:{}, failed:{}, cost:{}ms",
+                cache.getName(), file, count.get(), failed.get(), System.currentTimeMillis() - start);
+        return count.get();
+    }
+
+    /**
+     * 使用缓存自身的序列化器导入
+     *
+     * @param cache       缓存, 可以与导出的缓存不同名, 用于把线上快照导入压测实例
+     * @param file        快照文件, 不存在时返回 0
+     * @param parallelism 反序列化和写入缓存的线程数
+     * @return 导入的记录数
+     */
+    public static <K, V> int load(BaseCache<K, V> cache, Path file, int parallelism) throws IOException {
+        return load(cache, file, cache.getKeySerializer(), cache.getValueSerializer(), parallelism);
+    }
+
+    /**
+     * 导入快照
+     *
+     * @param cache           缓存
+     * @param file            快照文件, 不存在时返回 0
+     * @param keySerializer   key 序列化器
+     * @param valueSerializer value 序列化器
+     * @param parallelism     反序列化和写入缓存的线程数
+     * @return 导入的记录数
+     */
+    public static <K, V> int load(BaseCache<K, V> cache, Path file, CacheSerializer<K> keySerializer,
+                                  CacheSerializer<V> valueSerializer, int parallelism) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int expired = 0;
+        int count = 0;
+        // 队列满时由读取线程自己执行, 读取速度不会超过写入速度太多
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 2),
+                new ThreadFactoryBuilder().setNameFormat("cache-snapshot-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a cache snapshot file:" + file);
+            }
+            long timestamp = in.readLong();
+            String name = in.readUTF();
+            int duration = in.readInt();
+            String keyType = in.readUTF();
+            String valueType = in.readUTF();
+            if (!keyType.equals(keySerializer.getClass().getName()) || !valueType.equals(valueSerializer.getClass().getName())) {
+                log.warn("[CacheSnapshot] serializer mismatch, file:{}, key:{}, value:{}", file, keyType, valueType);
+            }
+            if (duration > 0 && now - timestamp >= TimeUnit.SECONDS.toMillis(duration)) {
+                log.info("[CacheSnapshot] snapshot expired, file:{}, timestamp:{}", file, timestamp);
+                return 0;
+            }
+            List<Record> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                int length;
+                while ((length = in.readInt()) != END) {
+                    count++;
+                    byte[] key = new byte[length];
+                    in.readFully(key);
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    long expireAt = in.readLong();
+                    if (expireAt > 0 && expireAt <= now) {
+                        expired++;
+                        continue;
+                    }
+                    batch.add(new Record(key, value, expireAt));
+                    if (batch.size() >= BATCH_SIZE) {
+                        submit(pool, cache, batch, keySerializer, valueSerializer, loaded, failed);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                int total = in.readInt();
+                if (total != count) {
+                    log.warn("[CacheSnapshot] record count mismatch, file:{}, expect:{}, actual:{}", file, total, count);
+                }
+            } catch (EOFException e) {
+                log.warn("[CacheSnapshot] snapshot truncated, file:{}, read:{}", file, count);
+            }
+            if (!batch.isEmpty()) {
+                submit(pool, cache, batch, keySerializer, valueSerializer, loaded, failed);
+            }
+            log.info("[CacheSnapshot] loading, cache name:{}, snapshot name:{}, timestamp:{}", cache.getName(), name, timestamp);
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("[CacheSnapshot] loaded, cache name:{}, file:{}, loaded:{}, expired:{}, failed:{}, cost:{}ms",
+                cache.getName(), file, loaded.get(), expired, failed.get(), System.currentTimeMillis() - now);
+        return loaded.get();
+    }
+
+    private static <K, V> void submit(ThreadPoolExecutor pool, BaseCache<K, V> cache, List<Record> batch,
+                                      CacheSerializer<K> keySerializer, CacheSerializer<V> valueSerializer,
+                                      AtomicInteger loaded, AtomicInteger failed) {
+        pool.execute(() -> {
+            for (Record record : batch) {
+                try {
+                    if (cache.restore(keySerializer.deserialize(record.key), valueSerializer.deserialize(record.value), record.expireAt)) {
+                        loaded.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    if (failed.getAndIncrement() == 0) {
+                        log.error("[CacheSnapshot] restore error, cache name:" + cache.getName(), e);
+                    }
+                }
+            }
+        });
+    }
+
+    private static final class Record {
+        private final byte[] key;
+        private final byte[] value;
+        private final long expireAt;
+
+        private Record(byte[] key, byte[] value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * 单个缓存的配置, 为空的项保持 {@link BaseCache} 代码中的设置.
+ * 在 application.properties 中按缓存名声明, 如 cache.specs.FileCache.max-weight=536870912
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/10 8:30 下午
+ * @since 1.0
+ */
+@Getter
+@Setter
+@ToString
+public class CacheSpec {
+
+    /**
+     * 缓存引擎, 堆内引擎不能切换为 OFF_HEAP
+     */
+    private CacheEngine engine;
+
+    /**
+     * 内存可存放最大元素个数
+     */
+    private Integer maxSize;
+
+    /**
+     * 内存可存放元素的最大总权重, 大于 0 时替代 maxSize
+     */
+    private Long maxWeight;
+
+    /**
+     * 单个值的最大字节数, 只对 OFF_HEAP 引擎生效
+     */
+    private Integer maxValueBytes;
+
+    /**
+     * 过期时间, 单位秒
+     */
+    private Integer duration;
+
+    /**
+     * true 按最后访问时间过期, false 按写入时间过期
+     */
+    private Boolean expireAfterAccess;
+
+    /**
+     * 写入后多少秒触发后台刷新, 0 表示不刷新
+     */
+    private Integer refreshSeconds;
+
+    /**
+     * 是否记录统计
+     */
+    private Boolean stats;
+
+    /**
+     * 写入数据源的方式
+     */
+    private WriteMode writeMode;
+
+    /**
+     * 是否使用 {@link DeflateCodec} 压缩超过 compressThreshold 字节的值, 只对 OFF_HEAP 引擎生效
+     */
+    private Boolean compress;
+
+    /**
+     * 超过多少字节的值才压缩
+     */
+    private Integer compressThreshold;
+
+    /**
+     * 统计的热点 key 个数, 0 表示不统计
+     */
+    private Integer hotKeys;
+
+    /**
+     * 是否为热点 key 开启每个线程独立的近缓存
+     */
+    private Boolean nearCache;
+
+    /**
+     * 加载隔板线程数, 0 表示在调用线程中加载
+     */
+    private Integer loaderThreads;
+
+    /**
+     * 加载隔板排队上限
+     */
+    private Integer loaderQueueSize;
+
+    /**
+     * 等待加载的最长时间, 单位毫秒, 0 表示不限
+     */
+    private Long loadTimeoutMillis;
+
+    /**
+     * 读取缓存当前的配置
+     */
+    public static CacheSpec of(BaseCache<?, ?> baseCache) {
+        CacheSpec spec = new CacheSpec();
+        spec.engine = baseCache.getEngine();
+        spec.maxSize = baseCache.getMaxSize();
+        spec.maxWeight = baseCache.getMaxWeight();
+        spec.maxValueBytes = baseCache.getMaxValueBytes();
+        spec.duration = baseCache.getDuration();
+        spec.expireAfterAccess = baseCache.isExpireAfterAccess();
+        spec.refreshSeconds = baseCache.getRefreshSeconds();
+        spec.stats = baseCache.getMetrics().isEnabled();
+        spec.writeMode = baseCache.getWriteMode();
+        spec.compress = baseCache.getCodec() != null;
+        spec.compressThreshold = baseCache.getCompressThreshold();
+        spec.hotKeys = baseCache.getHotKeyTopN();
+        spec.nearCache = baseCache.isNearCache();
+        spec.loaderThreads = baseCache.getLoaderThreads();
+        spec.loaderQueueSize = baseCache.getLoaderQueueSize();
+        spec.loadTimeoutMillis = baseCache.getLoadTimeoutMillis();
+        return spec;
+    }
+
+    /**
+     * 合并配置, other 中不为空的项覆盖当前项
+     */
+    public CacheSpec merge(CacheSpec other) {
+        CacheSpec spec = new CacheSpec();
+        spec.engine = other.engine != null ? other.engine : engine;
+        spec.maxSize = other.maxSize != null ? other.maxSize : maxSize;
+        spec.maxWeight = other.maxWeight != null ? other.maxWeight : maxWeight;
+        spec.maxValueBytes = other.maxValueBytes != null ? other.maxValueBytes : maxValueBytes;
+        spec.duration = other.duration != null ? other.duration : duration;
+        spec.expireAfterAccess = other.expireAfterAccess != null ? other.expireAfterAccess : expireAfterAccess;
+        spec.refreshSeconds = other.refreshSeconds != null ? other.refreshSeconds : refreshSeconds;
+        spec.stats = other.stats != null ? other.stats : stats;
+        spec.writeMode = other.writeMode != null ? other.writeMode : writeMode;
+        spec.compress = other.compress != null ? other.compress : compress;
+        spec.compressThreshold = other.compressThreshold != null ? other.compressThreshold : compressThreshold;
+        spec.hotKeys = other.hotKeys != null ? other.hotKeys : hotKeys;
+        spec.nearCache = other.nearCache != null ? other.nearCache : nearCache;
+        spec.loaderThreads = other.loaderThreads != null ? other.loaderThreads : loaderThreads;
+        spec.loaderQueueSize = other.loaderQueueSize != null ? other.loaderQueueSize : loaderQueueSize;
+        spec.loadTimeoutMillis = other.loadTimeoutMillis != null ? other.loadTimeoutMillis : loadTimeoutMillis;
+        return spec;
+    }
+
+    /**
+     * 把不为空的项设置到缓存上, 需要在创建引擎前或重建引擎时调用
+     */
+    void applyTo(BaseCache<?, ?> baseCache) {
+        if (engine != null) {
+            baseCache.setEngine(engine);
+        }
+        if (maxSize != null) {
+            baseCache.setMaxSize(maxSize);
+        }
+        if (maxWeight != null) {
+            baseCache.setMaxWeight(maxWeight);
+        }
+        if (maxValueBytes != null) {
+            baseCache.setMaxValueBytes(maxValueBytes);
+        }
+        if (duration != null) {
+            baseCache.setDuration(duration);
+        }
+        if (expireAfterAccess != null) {
+            baseCache.setExpireAfterAccess(expireAfterAccess);
+        }
+        if (refreshSeconds != null) {
+            baseCache.setRefreshSeconds(refreshSeconds);
+        }
+        if (stats != null) {
+            baseCache.getMetrics().setEnabled(stats);
+        }
+        if (writeMode != null) {
+            baseCache.setWriteMode(writeMode);
+        }
+        if (compress != null && compress != (baseCache.getCodec() != null)) {
+            baseCache.setCodec(compress ? DeflateCodec.getInstance() : null);
+        }
+        if (compressThreshold != null) {
+            baseCache.setCompressThreshold(compressThreshold);
+        }
+        // 没有变化时不重建, 保留已统计的频率和近缓存
+        if (hotKeys != null && hotKeys != baseCache.getHotKeyTopN()) {
+            baseCache.setHotKeyTopN(hotKeys);
+        }
+        if (nearCache != null && nearCache != baseCache.isNearCache()) {
+            baseCache.setNearCache(nearCache);
+        }
+        if (loaderThreads != null && loaderThreads != baseCache.getLoaderThreads()) {
+            baseCache.setLoaderThreads(loaderThreads);
+        }
+        if (loaderQueueSize != null && loaderQueueSize != baseCache.getLoaderQueueSize()) {
+            baseCache.setLoaderQueueSize(loaderQueueSize);
+        }
+        if (loadTimeoutMillis != null && loadTimeoutMillis != baseCache.getLoadTimeoutMillis()) {
+            baseCache.setLoadTimeoutMillis(loadTimeoutMillis);
+        }
+    }
+}
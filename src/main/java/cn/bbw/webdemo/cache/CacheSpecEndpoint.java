@@ -0,0 +1,55 @@
+package cn.bbw.webdemo.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 查看和在线修改缓存配置, 修改后按新配置重建引擎, 不需要发版.
+ * 修改会清空或重建线上缓存, 只通过 JMX 暴露 (org.springframework.boot:type=Endpoint,name=Cachespecs), 不开放 HTTP:
+ * <pre>
+ * specs()
+ * spec(name)
+ * configure(name, engine, maxSize, maxWeight, duration, expireAfterAccess, refreshSeconds, stats)
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/10 9:40 下午
+ * @since 1.0
+ */
+@Component
+@JmxEndpoint(id = "cachespecs")
+public class CacheSpecEndpoint {
+
+    @ReadOperation
+    public Map<String, CacheSpec> specs() {
+        return CacheFactory.getInstance().getSpecs();
+    }
+
+    @ReadOperation
+    public CacheSpec spec(@Selector String name) {
+        return CacheFactory.getInstance().getSpec(name);
+    }
+
+    @WriteOperation
+    public CacheSpec configure(@Selector String name, @Nullable CacheEngine engine, @Nullable Integer maxSize,
+                               @Nullable Long maxWeight, @Nullable Integer duration, @Nullable Boolean expireAfterAccess,
+                               @Nullable Integer refreshSeconds, @Nullable Boolean stats) {
+        CacheSpec spec = new CacheSpec();
+        spec.setEngine(engine);
+        spec.setMaxSize(maxSize);
+        spec.setMaxWeight(maxWeight);
+        spec.setDuration(duration);
+        spec.setExpireAfterAccess(expireAfterAccess);
+        spec.setRefreshSeconds(refreshSeconds);
+        spec.setStats(stats);
+        CacheFactory.getInstance().configure(name, spec);
+        return CacheFactory.getInstance().getSpec(name);
+    }
+}
@@ -0,0 +1,91 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 把引擎内部 Map 的 Spliterator 转换为缓存项的 Spliterator, 拆分交给内部 Map, 支持并行流.
+ * 内部值经 mapper 转换, 返回 null 的(空值、已过期)跳过; filter 在创建 Entry 之前执行, 被过滤的缓存项不分配对象
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/13 8:20 下午
+ * @since 1.0
+ */
+final class CacheSpliterator<K, S, V> implements Spliterator<Map.Entry<K, V>>, Consumer<Map.Entry<K, S>> {
+
+    private final Spliterator<Map.Entry<K, S>> delegate;
+    private final Function<? super S, ? extends V> mapper;
+    private final BiPredicate<? super K, ? super V> filter;
+
+    private Map.Entry<K, S> current;
+
+    CacheSpliterator(Spliterator<Map.Entry<K, S>> delegate, Function<? super S, ? extends V> mapper,
+                     BiPredicate<? super K, ? super V> filter) {
+        this.delegate = delegate;
+        this.mapper = mapper;
+        this.filter = filter;
+    }
+
+    @Override
+    public void accept(Map.Entry<K, S> entry) {
+        current = entry;
+    }
+
+    private Map.Entry<K, V> map(Map.Entry<K, S> entry) {
+        S source = entry.getValue();
+        V value = source != null ? mapper.apply(source) : null;
+        if (value == null) {
+            return null;
+        }
+        K key = entry.getKey();
+        if (filter != null && !filter.test(key, value)) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+        while (delegate.tryAdvance(this)) {
+            Map.Entry<K, V> entry = map(current);
+            current = null;
+            if (entry != null) {
+                action.accept(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+        delegate.forEachRemaining(source -> {
+            Map.Entry<K, V> entry = map(source);
+            if (entry != null) {
+                action.accept(entry);
+            }
+        });
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+        Spliterator<Map.Entry<K, S>> split = delegate.trySplit();
+        return split != null ? new CacheSpliterator<>(split, mapper, filter) : null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return delegate.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        // 有跳过的缓存项, 不再是精确大小
+        return (delegate.characteristics() & ~(SIZED | SUBSIZED | SORTED)) | NONNULL | DISTINCT;
+    }
+}
@@ -0,0 +1,32 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.Map;
+
+/**
+ * 缓存写入数据源, 通过 {@link BaseCache#setWriteMode(WriteMode, CacheWriter)} 设置
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:05 下午
+ * @since 1.0
+ */
+public interface CacheWriter<K, T> {
+
+    /**
+     * 写入数据源, {@link WriteMode#THROUGH} 时在 put/replace 中同步调用, 抛出异常时不更新缓存
+     *
+     * @param key   缓存的key
+     * @param value 写入的数据
+     */
+    void write(K key, T value);
+
+    /**
+     * 批量写入数据源, {@link WriteMode#BEHIND} 时由异步写队列调用, 默认逐个调用 {@link #write(Object, Object)};
+     * 可覆盖为一次批量更新, 抛出异常时整批放回队列下次重试
+     *
+     * @param values 合并后每个 key 最后一次的值
+     */
+    default void writeAll(Map<K, T> values) {
+        values.forEach(this::write);
+    }
+}
@@ -0,0 +1,53 @@
+package cn.bbw.webdemo.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法结果缓存, 由 {@link CacheAnnotationAdvisor} 拦截, 结果放入名为 {@link #cache()} 的 {@link MethodCache}:
+ * <pre>
+ * &#64;Cached(cache = "UserCache", key = 0, parent = "AccountCache")
+ * public User getUser(long id, boolean detail)
+ * </pre>
+ * 未命中时在调用线程中执行方法, 同一个 key 并发调用时只执行一次; 方法抛出的异常原样抛出, 不放入缓存.
+ * 容量、有效期之外的配置(引擎、统计、热点等)按缓存名在 application.properties 的 cache.specs 中声明
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:10 下午
+ * @since 1.0
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+    /**
+     * 缓存名, 多个方法使用同一个缓存名时共用一个缓存
+     */
+    String cache();
+
+    /**
+     * 组成 key 的参数下标; 为空时使用全部参数. 只有一个参数时 key 就是该参数, 多个参数时是参数组成的 List,
+     * 没有参数时是空 List; 任一参数为 null 时不走缓存
+     */
+    int[] key() default {};
+
+    /**
+     * 父缓存名, 父缓存中的 key 删除、淘汰时本缓存中相同的 key 失效; 父缓存第一次使用(登记)之前本缓存不缓存, 直接执行方法
+     */
+    String parent() default "";
+
+    /**
+     * 内存可存放最大元素个数
+     */
+    int maxSize() default CacheFactory.MAX_SIZE;
+
+    /**
+     * 过期时间, 单位秒
+     */
+    int duration() default CacheFactory.EXPIRED_SECONDS;
+}
@@ -0,0 +1,340 @@
+package cn.bbw.webdemo.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Weigher;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * 基于 Caffeine 的缓存实现, 与 {@link MemCache} 行为一致, 淘汰策略为 W-TinyLFU
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/3 8:20 下午
+ * @since 1.0
+ */
+@Slf4j
+public class CaffeineCache<K, V> implements CacheLoader<K, Optional<V>>, ICache<K, V>, RemovalListener<K, Optional<V>>, Weigher<K, Optional<V>>, Expiry<K, Optional<V>> {
+
+    private final LoadingCache<K, Optional<V>> loadingCache;
+    private final BaseCache<K, V> baseCache;
+    private final SingleFlight<K, V> singleFlight;
+
+    public CaffeineCache(BaseCache<K, V> baseCache) {
+        this.baseCache = baseCache;
+        this.singleFlight = new SingleFlight<>(baseCache.getMetrics());
+        Caffeine<K, Optional<V>> builder = Caffeine.newBuilder().executor(baseCache.getLoadExecutor()).removalListener(this);
+        if (baseCache.hasVariableExpiry() || !baseCache.isExpireAfterAccess()) {
+            // 每个缓存项按 BaseCache.expireAt 计算有效期, 由时间轮到期淘汰; 按写入过期时也使用, 重建引擎时可以按缓存项设置剩余有效期
+            builder.expireAfter(this);
+        } else {
+            builder.expireAfterAccess(baseCache.getDuration(), TimeUnit.SECONDS);
+        }
+        if (baseCache.getRefreshSeconds() > 0) {
+            builder.refreshAfterWrite(baseCache.getRefreshSeconds(), TimeUnit.SECONDS);
+        }
+        if (baseCache.getMaxWeight() > 0) {
+            builder.maximumWeight(baseCache.getMaxWeight()).weigher(this);
+        } else {
+            builder.maximumSize(baseCache.getMaxSize());
+        }
+        loadingCache = builder.build(this);
+    }
+
+    @Override
+    public long expireAfterCreate(@NonNull K key, @NonNull Optional<V> value, long currentTime) {
+        return baseCache.expireNanos(key, value.orElse(null));
+    }
+
+    @Override
+    public long expireAfterUpdate(@NonNull K key, @NonNull Optional<V> value, long currentTime, long currentDuration) {
+        return baseCache.expireNanos(key, value.orElse(null));
+    }
+
+    @Override
+    public long expireAfterRead(@NonNull K key, @NonNull Optional<V> value, long currentTime, long currentDuration) {
+        return baseCache.isExpireAfterAccess() ? baseCache.expireNanos(key, value.orElse(null)) : currentDuration;
+    }
+
+    @Override
+    public int weigh(@NonNull K key, @NonNull Optional<V> value) {
+        return value.isPresent() ? baseCache.weigh(key, value.get()) : 1;
+    }
+
+    @Override
+    public void onRemoval(@Nullable K key, @Nullable Optional<V> value, @NonNull RemovalCause cause) {
+        try {
+            if (cause == RemovalCause.SIZE) {
+                if (value != null && value.isPresent()) {
+                    baseCache.spill(key, value.get());
+                }
+            } else {
+                baseCache.evictStore(key);
+            }
+        } catch (Exception e) {
+            log.error("[CaffeineCache] disk store error, key:" + key, e);
+        }
+        baseCache.getMetrics().recordRemoval(cause.name());
+        baseCache.cascade(key);
+    }
+
+    @Override
+    public Optional<V> load(@NonNull K key) {
+        // 由 Caffeine 在 get 未命中时调用, get 中已经记录过合并
+        return load(key, false);
+    }
+
+    /**
+     * get、reload 和过期后的重新加载共用在途的加载, 同一个 key 同一时刻只调用一次数据源, 其余调用方等待结果
+     */
+    private Optional<V> load(K key, boolean recordCoalesced) {
+        try {
+            V v = singleFlight.execute(key, k -> CompletableFuture.completedFuture(baseCache.loadThrough(k)), recordCoalesced).join();
+            if (v != null) {
+                return Optional.of(v);
+            }
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[CaffeineCache] load error, key:" + key, e);
+        }
+        // 查不到和加载异常都不放入缓存, 由 BaseCache 的负缓存按各自的有效期记录
+        return null;
+    }
+
+    /**
+     * 后台刷新, 由 Caffeine 在加载线程池中执行, 刷新失败时保留旧值; 数据源中已经删除时返回 null, 由 Caffeine 删除缓存项
+     */
+    @Override
+    public Optional<V> reload(@NonNull K key, @NonNull Optional<V> oldValue) {
+        try {
+            V v = baseCache.refreshThrough(key);
+            return v != null ? Optional.of(v) : null;
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[CaffeineCache] refresh error, key:" + key, e);
+        }
+        return oldValue;
+    }
+
+    @Override
+    public Map<K, Optional<V>> loadAll(@NonNull Iterable<? extends K> keys) {
+        List<K> list = new ArrayList<>();
+        keys.forEach(list::add);
+        Map<K, V> loaded = null;
+        try {
+            loaded = baseCache.loadAllThrough(list);
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[CaffeineCache] loadAll error, keys:" + list, e);
+        }
+        Map<K, Optional<V>> result = new LinkedHashMap<>(list.size());
+        if (loaded != null) {
+            loaded.forEach((k, v) -> {
+                if (v != null) {
+                    result.put(k, Optional.of(v));
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public V get(K key) {
+        Optional<V> v = loadingCache.getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return v.orElse(null);
+        }
+        baseCache.getMetrics().recordMiss();
+        if (singleFlight.isInFlight(key)) {
+            // 等待 Caffeine 中在途的加载, 不会调用 load
+            baseCache.getMetrics().recordLoadCoalesced();
+        }
+        v = loadingCache.get(key);
+        return v != null ? v.orElse(null) : null;
+    }
+
+    @Override
+    public V getCacheOnly(K key) {
+        Optional<V> v = loadingCache.getIfPresent(key);
+        return v != null ? v.orElse(null) : null;
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys) {
+        Map<K, V> result = new LinkedHashMap<>(keys.size());
+        List<K> misses = new ArrayList<>();
+        Map<K, Optional<V>> present = loadingCache.getAllPresent(keys);
+        for (K key : keys) {
+            Optional<V> v = present.get(key);
+            if (v == null) {
+                misses.add(key);
+            } else {
+                v.ifPresent(value -> result.put(key, value));
+            }
+        }
+        baseCache.getMetrics().recordHits(keys.size() - misses.size());
+        baseCache.getMetrics().recordMisses(misses.size());
+        if (!misses.isEmpty()) {
+            loadingCache.getAll(misses).forEach((k, v) -> v.ifPresent(value -> result.put(k, value)));
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(K key) {
+        Optional<V> v = loadingCache.getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return CompletableFuture.completedFuture(v.orElse(null));
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> baseCache.loadAsyncThrough(k).thenApply(value -> {
+            if (value != null) {
+                loadingCache.put(k, Optional.of(value));
+            }
+            return value;
+        }));
+    }
+
+    @Override
+    public boolean put(K key, V value) {
+        try {
+            loadingCache.put(key, Optional.of(value));
+            baseCache.evictNegative(key);
+            return true;
+        } catch (Exception e) {
+            log.error("[CaffeineCache] put error, key:" + key + ", value:" + value, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean put(K key, V value, long expireAt) {
+        if (baseCache.isExpireAfterAccess() || expireAt <= 0) {
+            return put(key, value);
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(expireAt - System.currentTimeMillis());
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            long nanos = Math.min(baseCache.expireNanos(key, value), remaining);
+            loadingCache.policy().expireVariably().ifPresent(policy -> policy.put(key, Optional.of(value), nanos, TimeUnit.NANOSECONDS));
+            baseCache.evictNegative(key);
+            return true;
+        } catch (Exception e) {
+            log.error("[CaffeineCache] put error, key:" + key + ", value:" + value, e);
+        }
+        return false;
+    }
+
+    @Override
+    public long expiresAt(K key) {
+        if (baseCache.isExpireAfterAccess()) {
+            return 0;
+        }
+        return loadingCache.policy().expireVariably()
+                .map(policy -> policy.getExpiresAfter(key, TimeUnit.MILLISECONDS))
+                .filter(OptionalLong::isPresent)
+                .map(remaining -> System.currentTimeMillis() + remaining.getAsLong())
+                .orElse(0L);
+    }
+
+    @Override
+    public V reload(K key) {
+        // 已有加载在途时直接等待在途的结果; Caffeine 删除正在加载的 key 会阻塞到加载完成, 再删除会导致重复加载
+        if (!singleFlight.isInFlight(key)) {
+            remove(key);
+        }
+        Optional<V> v = load(key, true);
+        if (v == null) {
+            return null;
+        }
+        loadingCache.put(key, v);
+        return v.orElse(null);
+    }
+
+    @Override
+    public void refresh(K key) {
+        loadingCache.refresh(key);
+    }
+
+    @Override
+    public boolean replace(K key, V value) {
+        remove(key);
+        return put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        loadingCache.invalidate(key);
+        // 只在磁盘中的数据不会触发 onRemoval, 需要单独删除
+        baseCache.evictStore(key);
+        baseCache.evictNegative(key);
+    }
+
+    @Override
+    public boolean exist(K key) {
+        return getCacheOnly(key) != null;
+    }
+
+    @Override
+    public Collection<K> keys() {
+        return loadingCache.asMap().keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach((k, v) -> values.add(v));
+        return !values.isEmpty() ? new CopyOnWriteArrayList<>(values) : null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        loadingCache.asMap().forEach((k, v) -> {
+            if (v != null && v.isPresent()) {
+                action.accept(k, v.get());
+            }
+        });
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> spliterator(BiPredicate<? super K, ? super V> filter) {
+        return new CacheSpliterator<>(loadingCache.asMap().entrySet().spliterator(), v -> v.orElse(null), filter);
+    }
+
+    @Override
+    public void cleanUp() {
+        loadingCache.cleanUp();
+    }
+
+    @Override
+    public void clear() {
+        loadingCache.invalidateAll();
+        baseCache.clearNegatives();
+    }
+
+    @Override
+    public int size() {
+        return (int) loadingCache.estimatedSize();
+    }
+}
@@ -0,0 +1,84 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 基于 JDK Deflater 的压缩编码, zlib 格式, 与 HTTP Content-Encoding: deflate 一致.
+ * Deflater/Inflater 持有本地内存, 每个线程复用一个
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/13 8:20 下午
+ * @since 1.0
+ */
+public final class DeflateCodec implements CacheCodec {
+
+    private static final DeflateCodec INSTANCE = new DeflateCodec(Deflater.BEST_SPEED);
+
+    /**
+     * 默认实例, 使用最快的压缩级别
+     */
+    public static DeflateCodec getInstance() {
+        return INSTANCE;
+    }
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * @param level 压缩级别, 1-9, 越大压缩率越高越耗 CPU
+     */
+    public DeflateCodec(int level) {
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] encode(byte[] src, int offset, int length) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(src, offset, length);
+        deflater.finish();
+        byte[] out = new byte[Math.max(64, length / 2)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    @Override
+    public byte[] decode(byte[] src, int offset, int length, int originalLength) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(src, offset, length);
+        byte[] out = new byte[originalLength];
+        try {
+            int size = 0;
+            while (size < originalLength && !inflater.finished()) {
+                int n = inflater.inflate(out, size, originalLength - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != originalLength) {
+                throw new IllegalStateException("corrupt deflate data, expect:" + originalLength + ", actual:" + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,313 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 磁盘二级缓存, 内存淘汰的数据写入这里, 未命中时先查这里再调用 {@link BaseCache#without}.
+ * <pre>
+ * 1.数据以追加方式写入内存映射的段文件 segment-N.dat, 每条记录带 crc, 删除写入墓碑记录
+ * 2.索引在内存中, 启动时按顺序扫描段文件重建, 进程重启后缓存仍然可用
+ * 3.段数达到上限时删除最旧的段文件, 其中的数据随之淘汰
+ * </pre>
+ * 记录格式: [长度 int][crc int][类型 byte][过期时间 long][key长度 int][key][value长度 int][value]
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/6 9:30 下午
+ * @since 1.0
+ */
+@Slf4j
+public class DiskStore<K, V> implements Closeable {
+
+    /**
+     * 单个段文件大小
+     */
+    public static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+    /**
+     * 段文件个数上限
+     */
+    public static final int MAX_SEGMENTS = 32;
+
+    private static final int MAGIC = 0x43414348;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private final Path dir;
+    private final CacheSerializer<K> keySerializer;
+    private final CacheSerializer<V> valueSerializer;
+    private final ConcurrentHashMap<K, Location> index = new ConcurrentHashMap<>();
+
+    /**
+     * 写操作在 this 上同步, 读操作不加锁
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private Segment current;
+    private long nextSeq;
+
+    public DiskStore(Path dir, CacheSerializer<K> keySerializer, CacheSerializer<V> valueSerializer) throws IOException {
+        this.dir = dir;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(DiskStore::seqOf))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            long seq = seqOf(file);
+            Segment segment = new Segment(file);
+            if (segment.buffer.getInt(0) != MAGIC) {
+                log.warn("[DiskStore] bad segment, file:{}", file);
+                Files.deleteIfExists(file);
+                continue;
+            }
+            recover(segment);
+            segments.addLast(segment);
+            nextSeq = seq + 1;
+        }
+        current = segments.peekLast();
+        while (segments.size() > MAX_SEGMENTS) {
+            dropOldest();
+        }
+        log.info("[DiskStore] open {}, segments:{}, entries:{}", dir, segments.size(), index.size());
+    }
+
+    private static long seqOf(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * 扫描段文件重建索引, 遇到未写完或校验失败的记录时停止
+     */
+    private void recover(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = HEADER_SIZE;
+        CRC32 crc32 = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= SEGMENT_SIZE) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > SEGMENT_SIZE) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(position + RECORD_HEADER_SIZE);
+            payload.limit(position + RECORD_HEADER_SIZE + length);
+            crc32.reset();
+            crc32.update(payload.duplicate());
+            if ((int) crc32.getValue() != buffer.getInt(position + 4)) {
+                log.warn("[DiskStore] corrupt record, file:{}, position:{}", segment.file, position);
+                break;
+            }
+            byte type = payload.get();
+            long expireAt = payload.getLong();
+            byte[] keyBytes = new byte[payload.getInt()];
+            payload.get(keyBytes);
+            try {
+                K key = keySerializer.deserialize(keyBytes);
+                if (type == PUT) {
+                    int valueLength = payload.getInt();
+                    index.put(key, new Location(segment, payload.position(), valueLength, expireAt));
+                } else {
+                    index.remove(key);
+                }
+            } catch (Exception e) {
+                log.error("[DiskStore] recover key error, file:" + segment.file + ", position:" + position, e);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        segment.position = position;
+    }
+
+    private void roll() throws IOException {
+        if (segments.size() >= MAX_SEGMENTS) {
+            dropOldest();
+        }
+        long seq = nextSeq++;
+        Segment segment = new Segment(dir.resolve("segment-" + seq + ".dat"));
+        segment.buffer.putInt(0, MAGIC);
+        segments.addLast(segment);
+        current = segment;
+    }
+
+    private void dropOldest() throws IOException {
+        Segment oldest = segments.pollFirst();
+        if (oldest == null) {
+            return;
+        }
+        index.values().removeIf(location -> location.segment == oldest);
+        // 已映射的内存在 GC 回收 MappedByteBuffer 后释放
+        Files.deleteIfExists(oldest.file);
+    }
+
+    private Location append(byte type, byte[] key, byte[] value, long expireAt) throws IOException {
+        int length = 1 + 8 + 4 + key.length + (type == PUT ? 4 + value.length : 0);
+        if (RECORD_HEADER_SIZE + length > SEGMENT_SIZE - HEADER_SIZE) {
+            return null;
+        }
+        if (current == null || current.position + RECORD_HEADER_SIZE + length > SEGMENT_SIZE) {
+            roll();
+        }
+        int position = current.position;
+        ByteBuffer out = current.buffer.duplicate();
+        out.position(position + RECORD_HEADER_SIZE);
+        out.put(type).putLong(expireAt).putInt(key.length).put(key);
+        Location location = null;
+        if (type == PUT) {
+            out.putInt(value.length);
+            location = new Location(current, out.position(), value.length, expireAt);
+            out.put(value);
+        }
+        ByteBuffer payload = current.buffer.duplicate();
+        payload.position(position + RECORD_HEADER_SIZE);
+        payload.limit(position + RECORD_HEADER_SIZE + length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        current.buffer.putInt(position + 4, (int) crc32.getValue());
+        current.buffer.putInt(position, length);
+        current.position = position + RECORD_HEADER_SIZE + length;
+        return location;
+    }
+
+    /**
+     * 读取数据
+     *
+     * @param key 键
+     * @return 不存在或已过期返回 null
+     */
+    public V get(K key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (location.expireAt > 0 && location.expireAt <= System.currentTimeMillis()) {
+            index.remove(key, location);
+            return null;
+        }
+        byte[] bytes = new byte[location.length];
+        ByteBuffer in = location.segment.buffer.duplicate();
+        in.position(location.offset);
+        in.get(bytes);
+        try {
+            return valueSerializer.deserialize(bytes);
+        } catch (Exception e) {
+            log.error("[DiskStore] deserialize error, key:" + key, e);
+            index.remove(key, location);
+        }
+        return null;
+    }
+
+    /**
+     * 写入数据
+     *
+     * @param key      键
+     * @param value    值
+     * @param expireAt 过期时间戳(毫秒), 0 表示不过期
+     */
+    public void put(K key, V value, long expireAt) {
+        byte[] keyBytes;
+        byte[] valueBytes;
+        try {
+            keyBytes = keySerializer.serialize(key);
+            valueBytes = valueSerializer.serialize(value);
+        } catch (Exception e) {
+            log.error("[DiskStore] serialize error, key:" + key, e);
+            return;
+        }
+        synchronized (this) {
+            try {
+                Location location = append(PUT, keyBytes, valueBytes, expireAt);
+                if (location != null) {
+                    index.put(key, location);
+                }
+            } catch (Exception e) {
+                log.error("[DiskStore] put error, key:" + key, e);
+            }
+        }
+    }
+
+    /**
+     * 删除数据, 写入墓碑记录保证重启后不会恢复
+     *
+     * @param key 键
+     */
+    public synchronized void remove(K key) {
+        if (index.remove(key) == null) {
+            return;
+        }
+        try {
+            append(DELETE, keySerializer.serialize(key), null, 0);
+        } catch (Exception e) {
+            log.error("[DiskStore] remove error, key:" + key, e);
+        }
+    }
+
+    public boolean contains(K key) {
+        return index.containsKey(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 刷盘
+     */
+    public synchronized void flush() {
+        segments.forEach(segment -> segment.buffer.force());
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position = HEADER_SIZE;
+
+        private Segment(Path file) throws IOException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            }
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final long expireAt;
+
+        private Location(Segment segment, int offset, int length, long expireAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 缓存中按原样存放的数据, 见 {@link BaseCache#getEncoded(Object)}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/13 8:30 下午
+ * @since 1.0
+ */
+@Getter
+public final class EncodedValue {
+
+    /**
+     * 只读数据, encoding 不为空时是压缩后的数据
+     */
+    private final ByteBuffer data;
+
+    /**
+     * 压缩编码名称, 见 {@link CacheCodec#name()}, 为空表示未压缩
+     */
+    private final String encoding;
+
+    /**
+     * 原始数据长度
+     */
+    private final int length;
+
+    public EncodedValue(ByteBuffer data, String encoding, int length) {
+        this.data = data;
+        this.encoding = encoding;
+        this.length = length;
+    }
+
+    public boolean isCompressed() {
+        return encoding != null;
+    }
+}
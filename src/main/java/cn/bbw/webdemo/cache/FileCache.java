@@ -1,13 +1,15 @@
 package cn.bbw.webdemo.cache;
 
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  * @author buliangliang
@@ -16,7 +18,23 @@ import java.util.Collection;
  * @since 1.0
  */
 @Slf4j
-public final class FileCache extends BaseCache<String, InputStream> {
+public final class FileCache extends BaseCache<String, ByteBuffer> {
+
+    /**
+     * 文件缓存堆外总字节数上限
+     */
+    private static final long MAX_WEIGHT = 256L * 1024 * 1024;
+
+    /**
+     * 单个文件缓存的最大字节数, 更大的文件每次从 classpath 读取
+     */
+    private static final int MAX_FILE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * 启动预热的文件, 由 cache.file.preload 配置, 默认不预热
+     */
+    @Setter
+    private volatile Collection<String> preloadFiles = Collections.emptyList();
 
     private static class CacheHolder {
         private static final FileCache INSTANCE = new FileCache();
@@ -28,27 +46,38 @@ public final class FileCache extends BaseCache<String, InputStream> {
 
     private FileCache() {
         super();
+        setEngine(CacheEngine.OFF_HEAP);
+        setMaxWeight(MAX_WEIGHT);
+        setMaxValueBytes(MAX_FILE_BYTES);
+        setValueSerializer(ByteBufferSerializer.getInstance());
     }
 
     @Override
-    public InputStream without(String key) {
-        ClassPathResource resource = new ClassPathResource("test.pdf");
-        try {
-            log.info("test-------pdf");
-            return resource.getInputStream();
+    public ByteBuffer without(String key) {
+        ClassPathResource resource = new ClassPathResource(key);
+        if (!resource.exists()) {
+            return null;
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            return ByteBuffer.wrap(StreamUtils.copyToByteArray(inputStream));
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("[FileCache] without error, key:" + key, e);
         }
         return null;
     }
 
+    @Override
+    public Collection<String> preloadKeys() {
+        return preloadFiles;
+    }
+
     public String fileName() {
-        return "";
+        return "test.pdf";
     }
 
-    public void put(Collection<InputStream> list) {
-        for (InputStream inputStream : list) {
-            put(fileName(), inputStream);
+    public void put(Collection<ByteBuffer> list) {
+        for (ByteBuffer buffer : list) {
+            put(fileName(), buffer);
         }
     }
 }
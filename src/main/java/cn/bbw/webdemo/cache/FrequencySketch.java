@@ -0,0 +1,91 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Count-Min Sketch 频率估计, 用固定内存估算 key 的访问次数, 估计值只会偏大不会偏小.
+ * 累计记录 10 倍宽度次后所有计数减半, 使旧的热点逐渐冷却.
+ * 计数不加锁, 并发时允许少量计数丢失
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 9:30 下午
+ * @since 1.0
+ */
+final class FrequencySketch<K> {
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x97cb3127, 0x8ebc6af1, 0x2f05a6b3, 0xc3a5c85c};
+
+    private final int[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param width 每行计数个数, 向上取 2 的幂
+     */
+    FrequencySketch(int width) {
+        int w = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.table = new int[DEPTH][w];
+        this.mask = w - 1;
+        this.sampleSize = 10 * w;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @return 记录后的估计次数
+     */
+    int increment(K key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int[] row = table[i];
+            int index = index(hash, i);
+            int count = row[index] + 1;
+            row[index] = count;
+            min = Math.min(min, count);
+        }
+        if (size.incrementAndGet() == sampleSize) {
+            reset();
+        }
+        return min;
+    }
+
+    /**
+     * 估计次数
+     */
+    int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table[i][index(hash, i)]);
+        }
+        return min;
+    }
+
+    /**
+     * 所有计数减半, 由达到 sampleSize 的那次记录执行
+     */
+    private void reset() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        size.addAndGet(-sampleSize / 2);
+    }
+
+    private int index(int hash, int i) {
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
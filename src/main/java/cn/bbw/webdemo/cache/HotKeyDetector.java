@@ -0,0 +1,132 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 热点 key 统计, 按 1/{@link #SAMPLE_RATE} 抽样记录访问, 用 {@link FrequencySketch} 估算频率.
+ * <pre>
+ * 1.估计次数超过当前第 topN 个热点的 key 进入候选, 候选最多 topN * 8 个; 只被抽中过一次的 key 不算热点
+ * 2.每 {@link #REFRESH_MILLIS} 由一次抽样到的访问顺带按估计次数重新排序, 保留前 topN 个, 回调 listener
+ * 3.排序只涉及候选, 与缓存大小无关
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 9:50 下午
+ * @since 1.0
+ */
+final class HotKeyDetector<K> {
+
+    /**
+     * 抽样比例, 必须是 2 的幂
+     */
+    static final int SAMPLE_RATE = 8;
+
+    /**
+     * 热点重新排序的间隔, 单位毫秒
+     */
+    static final long REFRESH_MILLIS = 1000;
+
+    private final int topN;
+    private final int maxCandidates;
+    private final FrequencySketch<K> sketch;
+    private final ConcurrentHashMap<K, Boolean> candidates = new ConcurrentHashMap<>();
+    private final Consumer<List<K>> listener;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * 进入候选需要超过的估计次数, 即上次排序时第 topN 个热点的估计次数
+     */
+    private volatile int threshold;
+
+    private volatile long nextRefresh = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REFRESH_MILLIS);
+
+    private volatile List<K> hotKeys = Collections.emptyList();
+
+    /**
+     * @param topN     热点 key 个数
+     * @param listener 热点重新排序后的回调, 在触发排序的访问线程中执行
+     */
+    HotKeyDetector(int topN, Consumer<List<K>> listener) {
+        this.topN = topN;
+        this.maxCandidates = topN * 8;
+        this.sketch = new FrequencySketch<>(Math.max(1024, topN * 256));
+        this.listener = listener;
+    }
+
+    /**
+     * 记录一次访问, 未抽中时直接返回
+     */
+    void record(K key) {
+        if (key != null && sample()) {
+            recordSampled(key);
+        }
+    }
+
+    /**
+     * 是否抽中本次访问, 原始类型的 key 先抽样, 抽中后再装箱调用 {@link #recordSampled}
+     */
+    static boolean sample() {
+        return (ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) == 0;
+    }
+
+    /**
+     * 记录一次已经抽中的访问
+     */
+    void recordSampled(K key) {
+        int frequency = sketch.increment(key);
+        if (frequency > threshold && candidates.size() < maxCandidates) {
+            candidates.putIfAbsent(key, Boolean.TRUE);
+        }
+        if (System.nanoTime() - nextRefresh >= 0 && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh();
+            } finally {
+                refreshing.set(false);
+            }
+        }
+    }
+
+    private void refresh() {
+        nextRefresh = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REFRESH_MILLIS);
+        // 排序期间计数还在变化, 先取出估计次数再排序
+        List<Map.Entry<K, Integer>> sorted = new ArrayList<>(candidates.size());
+        candidates.keySet().forEach(key -> sorted.add(new AbstractMap.SimpleImmutableEntry<>(key, sketch.frequency(key))));
+        sorted.sort(Map.Entry.<K, Integer>comparingByValue().reversed());
+        List<K> top = new ArrayList<>(Math.min(topN, sorted.size()));
+        for (int i = 0; i < sorted.size(); i++) {
+            // 只被抽中过一次的 key 与随机访问无法区分, 不算热点
+            if (i < topN && sorted.get(i).getValue() > 1) {
+                top.add(sorted.get(i).getKey());
+            } else {
+                candidates.remove(sorted.get(i).getKey());
+            }
+        }
+        threshold = top.size() < topN ? 0 : sorted.get(topN - 1).getValue();
+        hotKeys = Collections.unmodifiableList(top);
+        listener.accept(hotKeys);
+    }
+
+    /**
+     * 上次排序的热点 key, 按估计次数从高到低
+     */
+    List<K> hotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * 估计的访问次数, 已按抽样比例还原
+     */
+    long frequency(K key) {
+        return (long) sketch.frequency(key) * SAMPLE_RATE;
+    }
+}
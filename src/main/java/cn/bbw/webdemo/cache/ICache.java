@@ -1,7 +1,12 @@
 package cn.bbw.webdemo.cache;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 
 /**
  * @author buliangliang
@@ -27,6 +32,23 @@ public interface ICache<K, V> {
      */
     V getCacheOnly(K key);
 
+    /**
+     * 批量获取缓存值, 未命中的 key 通过 {@link BaseCache#withoutAll(Collection)} 一次性加载
+     *
+     * @param keys 键列表
+     * @return 存在值的 key 与值, 不包含加载为空的 key
+     */
+    Map<K, V> getAll(Collection<K> keys);
+
+    /**
+     * 异步获取缓存值, 未命中时在加载线程池中调用 {@link BaseCache#withoutAsync}, 不阻塞调用线程;
+     * 同一个 key 的并发未命中共享同一个在途 future
+     *
+     * @param key 键
+     * @return 加载完成的值
+     */
+    CompletableFuture<V> getAsync(K key);
+
     /**
      * 设置缓存
      *
@@ -36,6 +58,25 @@ public interface ICache<K, V> {
      */
     boolean put(K key, V val);
 
+    /**
+     * 设置缓存, 过期时间不晚于 expireAt, 用于重建引擎时保留缓存项的剩余有效期;
+     * 按访问过期的缓存写入即重新计时, 忽略 expireAt
+     *
+     * @param key      键
+     * @param val      值
+     * @param expireAt 过期时间戳(毫秒), 0 表示按缓存配置过期
+     * @return 是否成功加入缓存, 已经过期时返回 false
+     */
+    boolean put(K key, V val, long expireAt);
+
+    /**
+     * 缓存项的过期时间, 按写入过期时为写入时间加 duration, 与 {@link BaseCache#expireAt} 取较早的一个
+     *
+     * @param key 键
+     * @return 过期时间戳(毫秒), 不存在或按访问过期时返回 0
+     */
+    long expiresAt(K key);
+
     /**
      * 重新设置缓存,先删除(包括清除绑定在身上的其他缓存),再重新加载
      *
@@ -44,6 +85,13 @@ public interface ICache<K, V> {
      */
     V reload(K key);
 
+    /**
+     * 后台刷新缓存, 刷新完成前继续返回旧值, 同一个 key 同时只有一个刷新在途
+     *
+     * @param key 键
+     */
+    void refresh(K key);
+
     /**
      * 重新设置缓存
      *
@@ -82,6 +130,23 @@ public interface ICache<K, V> {
      */
     Collection<V> values();
 
+    /**
+     * 遍历缓存项, 弱一致: 遍历期间的写入可能看到也可能看不到, 不会抛出 ConcurrentModificationException; 不复制缓存
+     *
+     * @param action 处理函数
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        spliterator(null).forEachRemaining(entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * 缓存项的 Spliterator, 弱一致, 可拆分用于并行流
+     *
+     * @param filter 过滤条件, 在引擎内部执行, 被过滤的缓存项不创建 Entry; 为空时不过滤
+     * @return Spliterator
+     */
+    Spliterator<Map.Entry<K, V>> spliterator(BiPredicate<? super K, ? super V> filter);
+
     /**
      * 刷新key、value,过期的清除掉
      */
@@ -99,4 +164,10 @@ public interface ICache<K, V> {
      * @return 缓存大小
      */
     int size();
+
+    /**
+     * 释放引擎占用的资源, 处理积压的移除通知, 剩余的缓存项不再触发移除通知; 重建引擎后对旧引擎调用, 之后不再使用
+     */
+    default void close() {
+    }
 }
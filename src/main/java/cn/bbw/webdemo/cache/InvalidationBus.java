@@ -0,0 +1,372 @@
+package cn.bbw.webdemo.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨节点缓存失效总线, 本节点通过 {@link BaseCache} 写入、替换、删除、重新加载、清空缓存后, 通知其他节点删除对应的 key.
+ * <pre>
+ * 1.按缓存名合并, 刷新前同一个缓存的相同 key 只发送一次, 清空缓存时丢弃该缓存待发送的 key 只发送清空
+ * 2.定时刷新, 单个缓存待发送的 key 达到 maxBatch 时提前刷新; 消息超过 {@link #MAX_MESSAGE_BYTES} 时拆成多条
+ * 3.key 使用 {@link InvalidationKeyCodec} 编码, 不经过 JDK 反序列化; 消息带上节点 id, 收到自己发出的消息直接忽略
+ * 4.收到消息后只删除本节点的数据, 不再广播; 子缓存由本节点的级联失效处理, 不单独广播
+ * 5.配置了 secret 时消息末尾附带 HMAC-SHA256 签名, 签名不一致的消息直接丢弃, 防止伪造的消息清空缓存
+ * </pre>
+ * 消息格式: magic(int) type(byte) nodeId(long) cacheName(UTF) count(int) [length(int) key(bytes)]*count [hmac(32 bytes)]
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:40 下午
+ * @since 1.0
+ */
+@Slf4j
+public class InvalidationBus implements Closeable {
+
+    /**
+     * 单条消息最大字节数, 需小于 UDP 报文的最大长度
+     */
+    public static final int MAX_MESSAGE_BYTES = 60 * 1024;
+
+    private static final int MAGIC = 0x43494E56;
+
+    private static final byte TYPE_KEYS = 1;
+
+    private static final byte TYPE_CLEAR = 2;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int HMAC_BYTES = 32;
+
+    /**
+     * 节点 id, 用于忽略自己发出的消息
+     */
+    @Getter
+    private final long nodeId = new SecureRandom().nextLong();
+
+    private final InvalidationTransport transport;
+
+    private final long flushMillis;
+
+    private final int maxBatch;
+
+    /**
+     * 签名密钥, 为 null 时不签名
+     */
+    private final SecretKeySpec secret;
+
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * 缓存名 -> 待发送的失效
+     */
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("cache-invalidation-bus").setDaemon(true).build());
+
+    private final LongAdder publishedKeys = new LongAdder();
+
+    private final LongAdder sentMessages = new LongAdder();
+
+    private final LongAdder receivedKeys = new LongAdder();
+
+    private final LongAdder failedMessages = new LongAdder();
+
+    private final LongAdder rejectedMessages = new LongAdder();
+
+    /**
+     * @param transport   传输方式
+     * @param flushMillis 刷新间隔, 单位毫秒
+     * @param maxBatch    单个缓存待发送 key 达到该数量时提前刷新
+     */
+    public InvalidationBus(InvalidationTransport transport, long flushMillis, int maxBatch) {
+        this(transport, flushMillis, maxBatch, null);
+    }
+
+    /**
+     * @param transport   传输方式
+     * @param flushMillis 刷新间隔, 单位毫秒
+     * @param maxBatch    单个缓存待发送 key 达到该数量时提前刷新
+     * @param secret      所有节点共享的签名密钥, 为空时不签名
+     */
+    public InvalidationBus(InvalidationTransport transport, long flushMillis, int maxBatch, String secret) {
+        this.transport = transport;
+        this.flushMillis = flushMillis;
+        this.maxBatch = maxBatch;
+        if (secret == null || secret.isEmpty()) {
+            this.secret = null;
+            this.mac = null;
+        } else {
+            this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            this.mac = ThreadLocal.withInitial(this::newMac);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac m = Mac.getInstance(HMAC_ALGORITHM);
+            m.init(secret);
+            return m;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void start() throws IOException {
+        transport.start(this::receive);
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        log.info("[InvalidationBus] started, nodeId:{}, flushMillis:{}, maxBatch:{}", nodeId, flushMillis, maxBatch);
+    }
+
+    /**
+     * 登记 key 的失效, 在下次刷新时发送
+     */
+    <K> void publish(BaseCache<K, ?> cache, K key) {
+        publishedKeys.increment();
+        // Pending 只在 compute 内读写, 数量也在 compute 内取出
+        int[] size = new int[1];
+        pending.compute(cache.getName(), (name, old) -> {
+            Pending next = old != null ? old : new Pending(cache);
+            if (!next.clear) {
+                next.keys.add(key);
+            }
+            size[0] = next.keys.size();
+            return next;
+        });
+        if (size[0] >= maxBatch && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * 登记缓存清空, 丢弃该缓存待发送的 key
+     */
+    void publishClear(BaseCache<?, ?> cache) {
+        pending.compute(cache.getName(), (name, old) -> {
+            Pending next = old != null ? old : new Pending(cache);
+            next.clear = true;
+            next.keys.clear();
+            return next;
+        });
+    }
+
+    /**
+     * 发送所有待发送的失效
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        for (String name : pending.keySet()) {
+            Pending p = pending.remove(name);
+            if (p == null) {
+                continue;
+            }
+            try {
+                if (p.clear) {
+                    send(encode(TYPE_CLEAR, name, new ArrayList<>(0)));
+                } else {
+                    sendKeys(p.cache, name, p.keys);
+                }
+            } catch (Exception e) {
+                failedMessages.increment();
+                log.error("[InvalidationBus] send error, cache name:" + name, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> void sendKeys(BaseCache<K, ?> cache, String name, Set<Object> keys) throws IOException {
+        // 名称和消息头占用的字节按 UTF 最长估算
+        int limit = MAX_MESSAGE_BYTES - 19 - name.length() * 3 - HMAC_BYTES;
+        List<byte[]> batch = new ArrayList<>();
+        int bytes = 0;
+        for (Object key : keys) {
+            byte[] data = InvalidationKeyCodec.encode(cache, (K) key);
+            if (data == null) {
+                log.warn("[InvalidationBus] key type not supported, skipped, cache name:{}, key type:{}", name, key.getClass().getName());
+                continue;
+            }
+            if (data.length + 4 > limit) {
+                log.warn("[InvalidationBus] key too large, skipped, cache name:{}, key:{}", name, key);
+                continue;
+            }
+            if (bytes + data.length + 4 > limit) {
+                send(encode(TYPE_KEYS, name, batch));
+                batch = new ArrayList<>();
+                bytes = 0;
+            }
+            batch.add(data);
+            bytes += data.length + 4;
+        }
+        if (!batch.isEmpty()) {
+            send(encode(TYPE_KEYS, name, batch));
+        }
+    }
+
+    private void send(byte[] message) throws IOException {
+        transport.send(message);
+        sentMessages.increment();
+    }
+
+    private byte[] encode(byte type, String name, List<byte[]> keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(type);
+        out.writeLong(nodeId);
+        out.writeUTF(name);
+        out.writeInt(keys.size());
+        for (byte[] key : keys) {
+            out.writeInt(key.length);
+            out.write(key);
+        }
+        if (mac != null) {
+            out.flush();
+            out.write(mac.get().doFinal(bytes.toByteArray()));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 校验并去掉签名
+     *
+     * @return 签名不一致时返回 null
+     */
+    private byte[] verify(byte[] message) {
+        if (mac == null) {
+            return message;
+        }
+        if (message.length < HMAC_BYTES) {
+            return null;
+        }
+        int length = message.length - HMAC_BYTES;
+        Mac m = mac.get();
+        m.update(message, 0, length);
+        byte[] expected = m.doFinal();
+        byte[] actual = Arrays.copyOfRange(message, length, message.length);
+        return MessageDigest.isEqual(expected, actual) ? Arrays.copyOf(message, length) : null;
+    }
+
+    /**
+     * 处理收到的消息, 在传输层的接收线程中执行
+     */
+    void receive(byte[] message) {
+        try {
+            byte[] body = verify(message);
+            if (body == null) {
+                rejectedMessages.increment();
+                log.warn("[InvalidationBus] signature mismatch, message dropped, length:{}", message.length);
+                return;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            if (in.readInt() != MAGIC) {
+                log.warn("[InvalidationBus] unknown message, length:{}", message.length);
+                return;
+            }
+            byte type = in.readByte();
+            if (in.readLong() == nodeId) {
+                return;
+            }
+            String name = in.readUTF();
+            BaseCache<?, ?> cache = CacheFactory.getInstance().getBaseCache(name);
+            if (cache == null) {
+                return;
+            }
+            if (type == TYPE_CLEAR) {
+                cache.clearLocal();
+                return;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > message.length) {
+                log.warn("[InvalidationBus] invalid key count, cache name:{}, count:{}", name, count);
+                return;
+            }
+            List<byte[]> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > message.length) {
+                    log.warn("[InvalidationBus] invalid key length, cache name:{}, length:{}", name, length);
+                    return;
+                }
+                byte[] key = new byte[length];
+                in.readFully(key);
+                keys.add(key);
+            }
+            invalidate(cache, keys);
+        } catch (Exception e) {
+            log.error("[InvalidationBus] receive error, length:" + message.length, e);
+        }
+    }
+
+    private <K> void invalidate(BaseCache<K, ?> cache, List<byte[]> keys) throws IOException {
+        for (byte[] data : keys) {
+            K key = InvalidationKeyCodec.decode(cache, data);
+            if (key != null) {
+                cache.removeLocal(key);
+                receivedKeys.increment();
+            }
+        }
+    }
+
+    /**
+     * 统计: 登记失效的 key 数, 发送消息数, 收到并删除的 key 数, 发送失败的消息数, 签名不一致丢弃的消息数
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("published", publishedKeys.sum());
+        stats.put("sent", sentMessages.sum());
+        stats.put("received", receivedKeys.sum());
+        stats.put("failed", failedMessages.sum());
+        stats.put("rejected", rejectedMessages.sum());
+        return stats;
+    }
+
+    /**
+     * 发送剩余的失效后关闭
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+        transport.close();
+    }
+
+    private static final class Pending {
+        private final BaseCache<?, ?> cache;
+        private final Set<Object> keys = new HashSet<>();
+        private boolean clear;
+
+        private Pending(BaseCache<?, ?> cache) {
+            this.cache = cache;
+        }
+    }
+}
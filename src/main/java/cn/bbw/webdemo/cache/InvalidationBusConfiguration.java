@@ -0,0 +1,72 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+
+/**
+ * 按配置启用跨节点失效总线, 停机时由 {@link CacheFactory#shutdown()} 发送剩余失效并关闭.
+ * <pre>
+ * cache.bus.enabled=true
+ * cache.bus.transport=udp
+ * cache.bus.bind-address=127.0.0.1
+ * cache.bus.port=7701
+ * cache.bus.peers=127.0.0.1:7702
+ * cache.bus.secret=
+ * cache.bus.flush-millis=50
+ * cache.bus.max-batch=512
+ * </pre>
+ * transport 为 loopback 时只在当前 JVM 内投递, 用于调试.
+ * 默认只监听本机回环地址, 跨主机部署时 bind-address 配置为内网网卡地址, 并为所有节点配置相同的 secret
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 9:20 下午
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class InvalidationBusConfiguration {
+
+    @Value("${cache.bus.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cache.bus.transport:udp}")
+    private String transport;
+
+    @Value("${cache.bus.bind-address:127.0.0.1}")
+    private String bindAddress;
+
+    @Value("${cache.bus.port:7701}")
+    private int port;
+
+    @Value("${cache.bus.peers:}")
+    private String peers;
+
+    @Value("${cache.bus.flush-millis:50}")
+    private long flushMillis;
+
+    @Value("${cache.bus.max-batch:512}")
+    private int maxBatch;
+
+    @Value("${cache.bus.secret:}")
+    private String secret;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        InvalidationTransport t = "loopback".equalsIgnoreCase(transport)
+                ? new LoopbackTransport()
+                : new UdpTransport(bindAddress, port, UdpTransport.parsePeers(peers));
+        if (t instanceof UdpTransport && secret.isEmpty()) {
+            log.warn("[InvalidationBusConfiguration] cache.bus.secret not set, messages are not signed");
+        }
+        CacheFactory.getInstance().startInvalidationBus(new InvalidationBus(t, flushMillis, maxBatch, secret));
+        log.info("[InvalidationBusConfiguration] invalidation bus enabled, transport:{}", transport);
+    }
+}
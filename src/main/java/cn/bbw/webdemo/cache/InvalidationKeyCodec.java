@@ -0,0 +1,147 @@
+package cn.bbw.webdemo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 失效总线的 key 编码, 收到的报文来自网络, 不能交给 JDK 反序列化.
+ * <pre>
+ * 1.String、Long、Integer 以及由它们组成的 List (方法缓存的多参数 key) 按类型标记直接编码
+ * 2.其他类型的 key 使用缓存配置的 keySerializer, 但缓存使用默认的 {@link JdkSerializer} 时不支持, 发送时跳过
+ * 3.解码时遇到未知的类型标记直接失败
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:45 下午
+ * @since 1.0
+ */
+final class InvalidationKeyCodec {
+
+    private static final byte TAG_STRING = 1;
+
+    private static final byte TAG_LONG = 2;
+
+    private static final byte TAG_INTEGER = 3;
+
+    private static final byte TAG_LIST = 4;
+
+    private static final byte TAG_SERIALIZER = 5;
+
+    /**
+     * List 嵌套的最大深度, 防止恶意报文导致栈溢出
+     */
+    private static final int MAX_DEPTH = 4;
+
+    private InvalidationKeyCodec() {
+    }
+
+    /**
+     * @return key 的编码, 不支持的类型返回 null
+     */
+    static <K> byte[] encode(BaseCache<K, ?> cache, K key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (write(out, key, 0)) {
+            out.flush();
+            return bytes.toByteArray();
+        }
+        CacheSerializer<K> serializer = cache.getKeySerializer();
+        if (serializer instanceof JdkSerializer) {
+            return null;
+        }
+        byte[] data = serializer.serialize(key);
+        byte[] result = new byte[data.length + 1];
+        result[0] = TAG_SERIALIZER;
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K decode(BaseCache<K, ?> cache, byte[] data) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("empty key");
+        }
+        if (data[0] == TAG_SERIALIZER) {
+            CacheSerializer<K> serializer = cache.getKeySerializer();
+            if (serializer instanceof JdkSerializer) {
+                throw new IOException("jdk serialized key rejected, cache name:" + cache.getName());
+            }
+            byte[] key = new byte[data.length - 1];
+            System.arraycopy(data, 1, key, 0, key.length);
+            return serializer.deserialize(key);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        Object key = read(in, data.length, 0);
+        if (in.available() > 0) {
+            throw new IOException("trailing bytes after key, length:" + data.length);
+        }
+        return (K) key;
+    }
+
+    private static boolean write(DataOutputStream out, Object key, int depth) throws IOException {
+        if (key instanceof String) {
+            byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TAG_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (key instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) key);
+        } else if (key instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) key);
+        } else if (key instanceof List && depth < MAX_DEPTH) {
+            List<?> list = (List<?>) key;
+            out.writeByte(TAG_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                if (!write(out, element, depth + 1)) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static Object read(DataInputStream in, int limit, int depth) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_STRING:
+                byte[] bytes = new byte[checkLength(in.readInt(), limit)];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_INTEGER:
+                return in.readInt();
+            case TAG_LIST:
+                if (depth >= MAX_DEPTH) {
+                    throw new IOException("key nested too deep");
+                }
+                int size = checkLength(in.readInt(), limit);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in, limit, depth + 1));
+                }
+                return list;
+            default:
+                throw new IOException("unknown key tag:" + tag);
+        }
+    }
+
+    private static int checkLength(int length, int limit) throws IOException {
+        if (length < 0 || length > limit) {
+            throw new IOException("invalid key length:" + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,187 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 父子缓存级联失效管道, 父缓存删除、淘汰时不再在触发线程中同步删除子缓存, 而是提交到这里异步执行.
+ * <pre>
+ * 1.按 key 的 hash 分到固定的分片, 每个分片一个线程顺序执行, 同一个 key 的失效按提交顺序执行
+ * 2.线程每次取出队列中积压的一批, 批内相同的 (子缓存, key) 只执行一次
+ * 3.子缓存的删除又会触发孙缓存的失效, 同样提交到这里; 级联删除只在本节点执行, 不发送到 {@link InvalidationBus}
+ * 4.{@link #flush(long, TimeUnit)} 等待已提交(包括由此级联产生)的失效全部执行完, 供测试和管理接口使用
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/9 8:10 下午
+ * @since 1.0
+ */
+@Slf4j
+public class InvalidationPipeline {
+
+    /**
+     * 每批最多处理的失效个数
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private final Stripe[] stripes;
+
+    public InvalidationPipeline(int parallelism) {
+        this.stripes = new Stripe[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            stripes[i] = new Stripe("cache-invalidation-" + i);
+        }
+    }
+
+    /**
+     * 提交子缓存失效
+     *
+     * @param target 子缓存
+     * @param key    键
+     */
+    public <K> void submit(BaseCache<K, ?> target, K key) {
+        int index = (Objects.hashCode(key) & Integer.MAX_VALUE) % stripes.length;
+        stripes[index].submit(new Invalidation(target, key));
+    }
+
+    /**
+     * 未执行的失效个数
+     */
+    public long pending() {
+        long pending = 0;
+        for (Stripe stripe : stripes) {
+            pending += stripe.submitted.get() - stripe.completed.get();
+        }
+        return pending;
+    }
+
+    /**
+     * 等待已提交的失效执行完, 执行过程中级联产生的失效也会等待
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 全部执行完返回 true, 超时返回 false
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long[] marks = new long[stripes.length];
+        while (true) {
+            long total = 0;
+            for (int i = 0; i < stripes.length; i++) {
+                marks[i] = stripes[i].submitted.get();
+                total += marks[i];
+            }
+            for (int i = 0; i < stripes.length; i++) {
+                if (!stripes[i].await(marks[i], deadline)) {
+                    return false;
+                }
+            }
+            long after = 0;
+            for (Stripe stripe : stripes) {
+                after += stripe.submitted.get();
+            }
+            // 等待期间没有新的级联失效提交, 说明已经全部执行完
+            if (after == total) {
+                return true;
+            }
+        }
+    }
+
+    private static final class Stripe implements Runnable {
+        private final LinkedBlockingQueue<Invalidation> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+
+        private Stripe(String name) {
+            Thread thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void submit(Invalidation invalidation) {
+            submitted.incrementAndGet();
+            queue.add(invalidation);
+        }
+
+        private synchronized boolean await(long mark, long deadline) throws InterruptedException {
+            while (completed.get() < mark) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<Invalidation> batch = new ArrayList<>(BATCH_SIZE);
+            Set<Invalidation> unique = new LinkedHashSet<>();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                unique.addAll(batch);
+                for (Invalidation invalidation : unique) {
+                    invalidation.run();
+                }
+                unique.clear();
+                int size = batch.size();
+                batch.clear();
+                completed.addAndGet(size);
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final class Invalidation {
+        private final BaseCache target;
+        private final Object key;
+
+        private Invalidation(BaseCache<?, ?> target, Object key) {
+            this.target = target;
+            this.key = key;
+        }
+
+        private void run() {
+            try {
+                target.removeLocal(key);
+            } catch (Exception e) {
+                log.error("[InvalidationPipeline] remove error, key:" + key, e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Invalidation)) {
+                return false;
+            }
+            Invalidation that = (Invalidation) o;
+            return target == that.target && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(target) + Objects.hashCode(key);
+        }
+    }
+}
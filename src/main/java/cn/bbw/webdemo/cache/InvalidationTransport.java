@@ -0,0 +1,36 @@
+package cn.bbw.webdemo.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * 跨节点失效消息的传输方式, 由 {@link InvalidationBus} 负责编码、合并, 这里只负责收发字节
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:10 下午
+ * @since 1.0
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * 开始接收消息
+     *
+     * @param receiver 收到消息时的回调, 在传输层的接收线程中执行
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * 发送消息到其他节点, 自己发出的消息也可能被自己收到
+     *
+     * @param message 消息, 不超过 {@link InvalidationBus#MAX_MESSAGE_BYTES}
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * 停止接收并释放资源
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,52 @@
+package cn.bbw.webdemo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 基于 JDK 序列化的默认实现, 对象需实现 {@link java.io.Serializable}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/6 9:12 下午
+ * @since 1.0
+ */
+public final class JdkSerializer<T> implements CacheSerializer<T> {
+
+    private static final JdkSerializer<?> INSTANCE = new JdkSerializer<>();
+
+    @SuppressWarnings("unchecked")
+    public static <T> JdkSerializer<T> getInstance() {
+        return (JdkSerializer<T>) INSTANCE;
+    }
+
+    private JdkSerializer() {
+    }
+
+    @Override
+    public byte[] serialize(T t) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(t);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(byte[] bytes) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (T) ois.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
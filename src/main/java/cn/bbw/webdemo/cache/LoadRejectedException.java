@@ -0,0 +1,19 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * 加载被 {@link LoaderBulkhead} 拒绝或超时, 数据源没有返回结果.
+ * 不记录堆栈, 下游变慢时会大量抛出
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 10:10 下午
+ * @since 1.0
+ */
+public class LoadRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LoadRejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
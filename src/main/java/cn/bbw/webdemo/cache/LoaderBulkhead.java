@@ -0,0 +1,129 @@
+package cn.bbw.webdemo.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 单个缓存的加载隔板, 同步加载提交到缓存自己的有界线程池, 调用线程最多等待 timeoutMillis.
+ * <pre>
+ * 1.线程和队列都满时直接拒绝, 不排队等待
+ * 2.超时后调用线程返回, 还在排队的加载取消; 已经开始的加载继续执行直到数据源返回, 结果丢弃
+ * 3.拒绝和超时都抛出 {@link LoadRejectedException}, 由 {@link BaseCache} 决定返回旧值还是失败
+ * 4.隔板线程中再加载同一个缓存时直接在当前线程执行, 避免线程池占满后互相等待
+ * </pre>
+ * 下游变慢时最多占用该缓存的 threads 个线程, 请求线程最多等待 timeoutMillis, 不影响其他缓存
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 10:20 下午
+ * @since 1.0
+ */
+final class LoaderBulkhead {
+
+    private static final ThreadLocal<LoaderBulkhead> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final CacheMetrics metrics;
+
+    /**
+     * @param name          缓存名
+     * @param threads       线程数
+     * @param queueSize     排队上限
+     * @param timeoutMillis 调用线程最多等待的时间, 单位毫秒, 0 表示不限
+     * @param metrics       记录拒绝和超时
+     */
+    LoaderBulkhead(String name, int threads, int queueSize, long timeoutMillis, CacheMetrics metrics) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = metrics;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                new ThreadFactoryBuilder().setNameFormat("cache-loader-" + name + "-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在隔板线程中执行加载并等待结果
+     */
+    <T> T call(Callable<T> loader) {
+        if (CURRENT.get() == this) {
+            return invoke(loader);
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                CURRENT.set(this);
+                try {
+                    return loader.call();
+                } finally {
+                    CURRENT.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.recordLoadRejected();
+            throw new LoadRejectedException("cache loader full, cache name:" + name + ", queued:" + executor.getQueue().size());
+        }
+        try {
+            return timeoutMillis > 0 ? future.get(timeoutMillis, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            metrics.recordLoadTimeout();
+            throw new LoadRejectedException("cache load timeout, cache name:" + name + ", timeout:" + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new LoadRejectedException("cache load interrupted, cache name:" + name);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static <T> T invoke(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 排队中的加载个数
+     */
+    int queued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 执行中的加载个数
+     */
+    int active() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 不再接受新的加载, 执行中和排队中的继续执行
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
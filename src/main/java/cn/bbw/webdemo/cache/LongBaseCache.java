@@ -0,0 +1,92 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * long 键缓存基类, 用于按玩家、实体 id 缓存的场景, 默认使用 {@link CacheEngine#LONG_KEY} 引擎.
+ * 读取使用 {@link #get(long)}, 命中时不装箱不分配对象; 切换为其他引擎后仍可使用, 只是退回装箱的读取方式
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 5:10 下午
+ * @since 1.0
+ */
+public abstract class LongBaseCache<T> extends BaseCache<Long, T> {
+
+    public LongBaseCache() {
+        this(null, null);
+    }
+
+    public LongBaseCache(BaseCache<Long, ?> parent) {
+        this(null, parent, CacheFactory.MAX_SIZE, CacheFactory.EXPIRED_SECONDS);
+    }
+
+    public LongBaseCache(String name, BaseCache<Long, ?> parent, int duration) {
+        this(name, parent, CacheFactory.MAX_SIZE, duration);
+    }
+
+    public LongBaseCache(String name, BaseCache<Long, ?> parent) {
+        this(name, parent, CacheFactory.MAX_SIZE, CacheFactory.EXPIRED_SECONDS);
+    }
+
+    public LongBaseCache(String name, BaseCache<Long, ?> parent, int maxSize, int duration) {
+        super(name, parent, maxSize, duration);
+        setEngine(CacheEngine.LONG_KEY);
+    }
+
+    /**
+     * 从缓存读取不到时会调用从接口，一般从数据库中重新读取
+     *
+     * @param id 缓存的key
+     * @return {@linkplain T}
+     */
+    public abstract T without(long id);
+
+    @Override
+    public final T without(Long key) {
+        return without(key.longValue());
+    }
+
+    /**
+     * 命中时不装箱不分配对象; 热点统计按抽样记录, 抽中时才装箱. 近缓存按装箱的 key 存放, 开启近缓存时走装箱的读取
+     *
+     * @param id 缓存的key
+     * @return {@linkplain T}
+     */
+    @SuppressWarnings("deprecation")
+    public T get(long id) {
+        ICache<Long, T> cache = getCache();
+        if (cache instanceof LongKeyCache && nearCache() == null) {
+            HotKeyDetector<Long> detector = getHotKeyDetector();
+            if (detector != null && HotKeyDetector.sample()) {
+                detector.recordSampled(id);
+            }
+            T t = ((LongKeyCache<T>) cache).get(id);
+            if (t != null && isExpired(t)) {
+                return get(Long.valueOf(id));
+            }
+            return t;
+        }
+        return get(Long.valueOf(id));
+    }
+
+    /**
+     * 遍历缓存项, LONG_KEY 引擎下不装箱
+     *
+     * @param action 处理函数
+     */
+    public void forEachLong(LongKeyCache.LongBiConsumer<? super T> action) {
+        ICache<Long, T> cache = getCache();
+        if (cache instanceof LongKeyCache) {
+            ((LongKeyCache<T>) cache).forEachLong(action);
+        } else if (cache != null) {
+            cache.forEach(action::accept);
+        }
+    }
+
+    public T getCacheOnly(long id) {
+        ICache<Long, T> cache = getCache();
+        if (cache instanceof LongKeyCache) {
+            return ((LongKeyCache<T>) cache).getCacheOnly(id);
+        }
+        return getCacheOnly(Long.valueOf(id));
+    }
+}
@@ -0,0 +1,888 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * long 键缓存, 用于按玩家、实体 id 缓存的场景, 不装箱、不为每个缓存项创建 entry 和 Optional 对象.
+ * <pre>
+ * 1.按 key 的 hash 分为 16 个分段, 每段一张开放寻址(线性探测)的原始类型数组表, 删除时后移补位, 没有墓碑
+ * 2.读取使用 StampedLock 乐观读, 命中时不加锁不分配对象; 写入加写锁
+ * 3.容量按分段平均分配, 满了以后按 CLOCK 淘汰: 指针循环扫描, 读过的清除标记跳过, 未读过的淘汰
+ * 4.{@link #get(long)} 命中时不分配对象, 由 {@link LongBaseCache#get(long)} 调用
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 3:20 下午
+ * @since 1.0
+ */
+@Slf4j
+public class LongKeyCache<V> implements ICache<Long, V> {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private static final String SIZE = "SIZE";
+    private static final String EXPIRED = "EXPIRED";
+    private static final String EXPLICIT = "EXPLICIT";
+    private static final String REPLACED = "REPLACED";
+
+    private final BaseCache<Long, V> baseCache;
+    private final SingleFlight<Long, V> singleFlight;
+    private final Segment[] segments;
+
+    /**
+     * 每段最多元素个数, 按权重淘汰时为每段最大权重
+     */
+    private final long segmentLimit;
+    private final boolean weighted;
+    private final boolean expireAfterAccess;
+    private final boolean variableExpiry;
+    private final long durationMillis;
+    private final long refreshMillis;
+
+    public LongKeyCache(BaseCache<Long, V> baseCache) {
+        this.baseCache = baseCache;
+        this.singleFlight = new SingleFlight<>(baseCache.getMetrics());
+        this.weighted = baseCache.getMaxWeight() > 0;
+        long limit = weighted ? baseCache.getMaxWeight() : baseCache.getMaxSize();
+        this.segmentLimit = Math.max(1, (limit + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        this.expireAfterAccess = baseCache.isExpireAfterAccess();
+        this.variableExpiry = baseCache.hasVariableExpiry();
+        this.durationMillis = TimeUnit.SECONDS.toMillis(baseCache.getDuration());
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(baseCache.getRefreshSeconds());
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(newTable(MIN_TABLE_SIZE));
+        }
+    }
+
+    private static long mix(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int slotHash(long mixed) {
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private Segment segmentFor(long mixed) {
+        return segments[(int) (mixed >>> (64 - SEGMENT_BITS))];
+    }
+
+    private Table newTable(int length) {
+        return new Table(length, expireAfterAccess, variableExpiry, weighted);
+    }
+
+    /**
+     * 查找 key 所在的槽位, 不存在返回 -1; 乐观读时表可能正在被修改, 探测次数以表长为上限
+     */
+    private static int indexOf(Table table, long key) {
+        int mask = table.mask;
+        int i = slotHash(mix(key)) & mask;
+        for (int n = 0; n <= mask; n++) {
+            if (table.values[i] == null) {
+                return -1;
+            }
+            if (table.keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean isExpired(Table table, int i, long now) {
+        if (table.expireAts != null) {
+            long expireAt = table.expireAts[i];
+            if (expireAt > 0 && expireAt <= now) {
+                return true;
+            }
+        }
+        if (durationMillis <= 0) {
+            return false;
+        }
+        long since = table.accessTimes != null ? table.accessTimes[i] : table.writeTimes[i];
+        return now - since >= durationMillis;
+    }
+
+    /**
+     * 读取缓存项, 未命中或已过期返回 null, 命中时不加锁不分配对象
+     */
+    @SuppressWarnings("unchecked")
+    private V getIfPresent(long key) {
+        Segment segment = segmentFor(mix(key));
+        long now = System.currentTimeMillis();
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        Table table = segment.table;
+        int i = indexOf(table, key);
+        Object value = i >= 0 ? table.values[i] : null;
+        long writeTime = i >= 0 ? table.writeTimes[i] : 0;
+        boolean expired = value != null && isExpired(table, i, now);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                table = segment.table;
+                i = indexOf(table, key);
+                value = i >= 0 ? table.values[i] : null;
+                writeTime = i >= 0 ? table.writeTimes[i] : 0;
+                expired = value != null && isExpired(table, i, now);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (value == null) {
+            return null;
+        }
+        if (expired) {
+            expire(segment, key, value, now);
+            return null;
+        }
+        // 不加锁写入访问标记和访问时间, 与写操作竞争时最多影响一个缓存项的淘汰顺序和过期时间
+        table.referenced[i] = true;
+        if (table.accessTimes != null) {
+            table.accessTimes[i] = now;
+        }
+        if (refreshMillis > 0 && now - writeTime >= refreshMillis) {
+            refresh(key);
+        }
+        return (V) value;
+    }
+
+    /**
+     * 读取缓存值, 未命中时加载; 命中时不分配对象
+     *
+     * @param key 键
+     * @return 值
+     */
+    public V get(long key) {
+        V v = getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return v;
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> CompletableFuture.completedFuture(load(k))).join();
+    }
+
+    public V getCacheOnly(long key) {
+        return getIfPresent(key);
+    }
+
+    private V load(Long key) {
+        try {
+            V v = baseCache.loadThrough(key);
+            if (v != null) {
+                store(key, v, 0);
+            }
+            return v;
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[LongKeyCache] load error, key:" + key, e);
+        }
+        return null;
+    }
+
+    /**
+     * @param limit 按写入过期时过期时间不晚于 limit, 0 表示不限制; 通过提前写入时间实现, 后台刷新也按原写入时间计算
+     * @return 权重超过单个分段的容量时不缓存, 返回 false
+     */
+    private boolean store(long key, V value, long limit) {
+        long now = System.currentTimeMillis();
+        long expireAt = variableExpiry ? baseCache.expireAt(key, value) : 0;
+        long writeTime = now;
+        if (!expireAfterAccess && limit > 0) {
+            if (variableExpiry) {
+                expireAt = BaseCache.earliest(expireAt, limit);
+            }
+            if (durationMillis > 0) {
+                writeTime = Math.min(now, limit - durationMillis);
+            }
+        }
+        int weight = weighted ? baseCache.weigh(key, value) : 1;
+        if (weight > segmentLimit) {
+            // 放入会淘汰整个分段后仍然超出, 不缓存, 同时删除旧值
+            log.warn("[LongKeyCache] value too heavy, key:{}, weight:{}, segmentLimit:{}", key, weight, segmentLimit);
+            discard(key);
+            return false;
+        }
+        Segment segment = segmentFor(mix(key));
+        List<Removal> removals = new ArrayList<>(1);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int i = indexOf(table, key);
+            if (i >= 0) {
+                removals.add(new Removal(key, table.values[i], REPLACED));
+                if (table.weights != null) {
+                    segment.weight += weight - table.weights[i];
+                }
+                write(table, i, key, value, writeTime, now, expireAt, weight);
+            } else {
+                while (segment.size > 0 && (weighted ? segment.weight + weight > segmentLimit : segment.size >= segmentLimit)) {
+                    evictOne(segment, now, removals);
+                }
+                if ((segment.size + 1) * 4L > segment.table.values.length * 3L) {
+                    resize(segment);
+                }
+                table = segment.table;
+                i = slotHash(mix(key)) & table.mask;
+                while (table.values[i] != null) {
+                    i = (i + 1) & table.mask;
+                }
+                write(table, i, key, value, writeTime, now, expireAt, weight);
+                segment.size++;
+                segment.weight += weight;
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        removals.forEach(this::onRemoval);
+        return true;
+    }
+
+    private static void write(Table table, int i, long key, Object value, long writeTime, long now, long expireAt, int weight) {
+        table.keys[i] = key;
+        table.values[i] = value;
+        table.writeTimes[i] = writeTime;
+        table.referenced[i] = false;
+        if (table.accessTimes != null) {
+            table.accessTimes[i] = now;
+        }
+        if (table.expireAts != null) {
+            table.expireAts[i] = expireAt;
+        }
+        if (table.weights != null) {
+            table.weights[i] = weight;
+        }
+    }
+
+    private static void move(Table table, int from, int to) {
+        table.keys[to] = table.keys[from];
+        table.values[to] = table.values[from];
+        table.writeTimes[to] = table.writeTimes[from];
+        table.referenced[to] = table.referenced[from];
+        if (table.accessTimes != null) {
+            table.accessTimes[to] = table.accessTimes[from];
+        }
+        if (table.expireAts != null) {
+            table.expireAts[to] = table.expireAts[from];
+        }
+        if (table.weights != null) {
+            table.weights[to] = table.weights[from];
+        }
+    }
+
+    /**
+     * 表扩容为两倍, 需持有写锁; 新表填充完成后才替换, 乐观读看到的始终是完整的表
+     */
+    private void resize(Segment segment) {
+        Table old = segment.table;
+        Table table = newTable(old.values.length * 2);
+        for (int j = 0; j < old.values.length; j++) {
+            if (old.values[j] == null) {
+                continue;
+            }
+            int i = slotHash(mix(old.keys[j])) & table.mask;
+            while (table.values[i] != null) {
+                i = (i + 1) & table.mask;
+            }
+            table.keys[i] = old.keys[j];
+            table.values[i] = old.values[j];
+            table.writeTimes[i] = old.writeTimes[j];
+            table.referenced[i] = old.referenced[j];
+            if (table.accessTimes != null) {
+                table.accessTimes[i] = old.accessTimes[j];
+            }
+            if (table.expireAts != null) {
+                table.expireAts[i] = old.expireAts[j];
+            }
+            if (table.weights != null) {
+                table.weights[i] = old.weights[j];
+            }
+        }
+        segment.table = table;
+        segment.hand &= table.mask;
+    }
+
+    /**
+     * 删除槽位 i 的缓存项, 后面同一探测链上的缓存项向前补位, 需持有写锁
+     */
+    private static void removeAt(Segment segment, Table table, int i) {
+        segment.size--;
+        if (table.weights != null) {
+            segment.weight -= table.weights[i];
+        }
+        int mask = table.mask;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table.values[j] == null) {
+                break;
+            }
+            int home = slotHash(mix(table.keys[j])) & mask;
+            // i 在 j 的探测路径 [home, j) 上时, j 可以前移到 i
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                move(table, j, i);
+                i = j;
+            }
+        }
+        table.values[i] = null;
+    }
+
+    /**
+     * CLOCK 淘汰一个缓存项, 过期的直接淘汰, 读过的清除标记后跳过, 需持有写锁
+     */
+    private void evictOne(Segment segment, long now, List<Removal> removals) {
+        Table table = segment.table;
+        for (int n = 0; n < table.values.length * 2; n++) {
+            int i = segment.hand;
+            segment.hand = (i + 1) & table.mask;
+            Object value = table.values[i];
+            if (value == null) {
+                continue;
+            }
+            boolean expired = isExpired(table, i, now);
+            if (!expired && table.referenced[i]) {
+                table.referenced[i] = false;
+                continue;
+            }
+            removals.add(new Removal(table.keys[i], value, expired ? EXPIRED : SIZE));
+            removeAt(segment, table, i);
+            // 后移补位的缓存项落在 i, 下次从 i 开始
+            segment.hand = i;
+            return;
+        }
+    }
+
+    /**
+     * 删除已过期的缓存项, 期间被覆盖则不删除
+     */
+    private void expire(Segment segment, long key, Object value, long now) {
+        Removal removal = null;
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int i = indexOf(table, key);
+            if (i >= 0 && table.values[i] == value && isExpired(table, i, now)) {
+                removal = new Removal(key, value, EXPIRED);
+                removeAt(segment, table, i);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        if (removal != null) {
+            onRemoval(removal);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onRemoval(Removal removal) {
+        Long key = removal.key;
+        try {
+            if (SIZE.equals(removal.cause)) {
+                baseCache.spill(key, (V) removal.value);
+            } else {
+                baseCache.evictStore(key);
+            }
+        } catch (Exception e) {
+            log.error("[LongKeyCache] disk store error, key:" + key, e);
+        }
+        baseCache.getMetrics().recordRemoval(removal.cause);
+        baseCache.cascade(key);
+    }
+
+    @Override
+    public V get(Long key) {
+        return get(key.longValue());
+    }
+
+    @Override
+    public V getCacheOnly(Long key) {
+        return getIfPresent(key);
+    }
+
+    @Override
+    public Map<Long, V> getAll(Collection<Long> keys) {
+        Map<Long, V> result = new LinkedHashMap<>(keys.size());
+        List<Long> misses = new ArrayList<>();
+        for (Long key : keys) {
+            V v = getIfPresent(key);
+            if (v != null) {
+                result.put(key, v);
+            } else {
+                misses.add(key);
+            }
+        }
+        baseCache.getMetrics().recordHits(result.size());
+        baseCache.getMetrics().recordMisses(misses.size());
+        if (!misses.isEmpty()) {
+            try {
+                baseCache.loadAllThrough(misses).forEach((k, v) -> {
+                    if (v != null) {
+                        store(k, v, 0);
+                        result.put(k, v);
+                    }
+                });
+            } catch (Exception e) {
+                BaseCache.logLoadError(log, "[LongKeyCache] loadAll error, keys:" + misses, e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(Long key) {
+        V v = getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return CompletableFuture.completedFuture(v);
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> baseCache.loadAsyncThrough(k).thenApply(value -> {
+            if (value != null) {
+                store(k, value, 0);
+            }
+            return value;
+        }));
+    }
+
+    @Override
+    public boolean put(Long key, V value) {
+        try {
+            boolean cached = store(key, value, 0);
+            baseCache.evictNegative(key);
+            return cached;
+        } catch (Exception e) {
+            log.error("[LongKeyCache] put error, key:" + key + ", value:" + value, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean put(Long key, V value, long expireAt) {
+        if (expireAfterAccess || expireAt <= 0) {
+            return put(key, value);
+        }
+        if (expireAt <= System.currentTimeMillis()) {
+            return false;
+        }
+        try {
+            boolean cached = store(key, value, expireAt);
+            baseCache.evictNegative(key);
+            return cached;
+        } catch (Exception e) {
+            log.error("[LongKeyCache] put error, key:" + key + ", value:" + value, e);
+        }
+        return false;
+    }
+
+    @Override
+    public long expiresAt(Long key) {
+        if (expireAfterAccess) {
+            return 0;
+        }
+        Segment segment = segmentFor(mix(key));
+        long stamp = segment.lock.readLock();
+        try {
+            Table table = segment.table;
+            int i = indexOf(table, key);
+            if (i < 0) {
+                return 0;
+            }
+            long expireAt = table.expireAts != null ? table.expireAts[i] : 0;
+            return BaseCache.earliest(expireAt, durationMillis > 0 ? table.writeTimes[i] + durationMillis : 0);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public V reload(Long key) {
+        remove(key);
+        return singleFlight.execute(key, k -> CompletableFuture.completedFuture(load(k))).join();
+    }
+
+    @Override
+    public void refresh(Long key) {
+        singleFlight.execute(key, k -> CompletableFuture.supplyAsync(() -> refreshEntry(k), baseCache.getLoadExecutor()));
+    }
+
+    /**
+     * 后台刷新, 刷新失败时保留旧值, 数据源中已经删除时删除缓存项
+     */
+    private V refreshEntry(Long key) {
+        try {
+            V v = baseCache.refreshThrough(key);
+            if (v != null) {
+                store(key, v, 0);
+            } else {
+                discard(key);
+            }
+            return v;
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[LongKeyCache] refresh error, key:" + key, e);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean replace(Long key, V value) {
+        remove(key);
+        return put(key, value);
+    }
+
+    @Override
+    public void remove(Long key) {
+        if (!discard(key)) {
+            // 只在磁盘中的数据不会触发 onRemoval, 需要单独删除
+            baseCache.evictStore(key);
+        }
+        baseCache.evictNegative(key);
+    }
+
+    /**
+     * 删除缓存项并触发 onRemoval, 不清除负缓存
+     *
+     * @return 缓存项是否存在
+     */
+    private boolean discard(long k) {
+        Segment segment = segmentFor(mix(k));
+        Removal removal = null;
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int i = indexOf(table, k);
+            if (i >= 0) {
+                removal = new Removal(k, table.values[i], EXPLICIT);
+                removeAt(segment, table, i);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        if (removal == null) {
+            return false;
+        }
+        onRemoval(removal);
+        return true;
+    }
+
+    @Override
+    public boolean exist(Long key) {
+        return getIfPresent(key) != null;
+    }
+
+    @Override
+    public Collection<Long> keys() {
+        List<Long> keys = new ArrayList<>(size());
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.values.length; i++) {
+                    if (table.values[i] != null) {
+                        keys.add(table.keys[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        long now = System.currentTimeMillis();
+        List<V> values = new ArrayList<>(size());
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.values.length; i++) {
+                    if (table.values[i] != null && !isExpired(table, i, now)) {
+                        values.add((V) table.values[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return !values.isEmpty() ? values : null;
+    }
+
+    /**
+     * 在读锁内把分段中未过期的缓存项复制到缓冲区, 之后不持有锁处理, 处理中可以读写本缓存;
+     * 删除时后移补位会移动缓存项, 直接遍历表可能漏掉或重复, 按分段复制保证每个缓存项恰好一次
+     */
+    private void snapshot(Segment segment, long now, Snapshot buffer) {
+        long stamp = segment.lock.readLock();
+        try {
+            Table table = segment.table;
+            buffer.reset(segment.size);
+            for (int i = 0; i < table.values.length; i++) {
+                Object value = table.values[i];
+                if (value != null && !isExpired(table, i, now)) {
+                    buffer.add(table.keys[i], value);
+                }
+            }
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Long, ? super V> action) {
+        forEachLong(action::accept);
+    }
+
+    /**
+     * 遍历缓存项, 不装箱; 按分段复制, 复用同一个缓冲区, 不复制整个缓存
+     *
+     * @param action 处理函数
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachLong(LongBiConsumer<? super V> action) {
+        long now = System.currentTimeMillis();
+        Snapshot buffer = new Snapshot();
+        for (Segment segment : segments) {
+            snapshot(segment, now, buffer);
+            for (int i = 0; i < buffer.size; i++) {
+                action.accept(buffer.keys[i], (V) buffer.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<Long, V>> spliterator(BiPredicate<? super Long, ? super V> filter) {
+        return new SegmentSpliterator(0, SEGMENT_COUNT, System.currentTimeMillis(), filter);
+    }
+
+    @Override
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            List<Removal> removals = new ArrayList<>();
+            long stamp = segment.lock.writeLock();
+            try {
+                Table table = segment.table;
+                int i = 0;
+                while (i < table.values.length) {
+                    // 删除后补位的缓存项落在 i, 需要再次检查
+                    if (table.values[i] != null && isExpired(table, i, now)) {
+                        removals.add(new Removal(table.keys[i], table.values[i], EXPIRED));
+                        removeAt(segment, table, i);
+                    } else {
+                        i++;
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+            removals.forEach(this::onRemoval);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            List<Removal> removals = new ArrayList<>();
+            long stamp = segment.lock.writeLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.values.length; i++) {
+                    if (table.values[i] != null) {
+                        removals.add(new Removal(table.keys[i], table.values[i], EXPLICIT));
+                    }
+                }
+                segment.table = newTable(MIN_TABLE_SIZE);
+                segment.size = 0;
+                segment.weight = 0;
+                segment.hand = 0;
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+            removals.forEach(this::onRemoval);
+        }
+        baseCache.clearNegatives();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * 遍历 long 键缓存项的处理函数
+     */
+    @FunctionalInterface
+    public interface LongBiConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * 按分段拆分的 Spliterator, 最多拆成 16 份; 每次复制一个分段, 不持有锁调用 action
+     */
+    private final class SegmentSpliterator implements Spliterator<Map.Entry<Long, V>> {
+        private final long now;
+        private final BiPredicate<? super Long, ? super V> filter;
+        /**
+         * 下一个要复制的分段
+         */
+        private int segmentIndex;
+        private int segmentEnd;
+        private final Snapshot buffer = new Snapshot();
+        private int position;
+
+        private SegmentSpliterator(int segmentIndex, int segmentEnd, long now, BiPredicate<? super Long, ? super V> filter) {
+            this.segmentIndex = segmentIndex;
+            this.segmentEnd = segmentEnd;
+            this.now = now;
+            this.filter = filter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super Map.Entry<Long, V>> action) {
+            while (true) {
+                while (position < buffer.size) {
+                    int i = position++;
+                    long key = buffer.keys[i];
+                    V value = (V) buffer.values[i];
+                    if (filter == null || filter.test(key, value)) {
+                        action.accept(new AbstractMap.SimpleImmutableEntry<>(key, value));
+                        return true;
+                    }
+                }
+                if (segmentIndex >= segmentEnd) {
+                    return false;
+                }
+                snapshot(segments[segmentIndex++], now, buffer);
+                position = 0;
+            }
+        }
+
+        @Override
+        public Spliterator<Map.Entry<Long, V>> trySplit() {
+            int remaining = segmentEnd - segmentIndex;
+            if (remaining < 2) {
+                return null;
+            }
+            int mid = segmentIndex + remaining / 2;
+            SegmentSpliterator split = new SegmentSpliterator(mid, segmentEnd, now, filter);
+            segmentEnd = mid;
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = buffer.size - position;
+            for (int i = segmentIndex; i < segmentEnd; i++) {
+                size += segments[i].size;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | NONNULL | DISTINCT;
+        }
+    }
+
+    /**
+     * 分段复制缓冲区, 在分段之间复用
+     */
+    private static final class Snapshot {
+        private long[] keys = new long[MIN_TABLE_SIZE];
+        private Object[] values = new Object[MIN_TABLE_SIZE];
+        private int size;
+
+        private void reset(int capacity) {
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+            if (capacity > keys.length) {
+                keys = new long[capacity];
+                values = new Object[capacity];
+            }
+        }
+
+        private void add(long key, Object value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table;
+        private int size;
+        private long weight;
+        private int hand;
+
+        private Segment(Table table) {
+            this.table = table;
+        }
+    }
+
+    /**
+     * 一张表的所有列, 扩容时整体替换; 访问时间、过期时间、权重按配置分配, 不用的列为 null
+     */
+    private static final class Table {
+        private final int mask;
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] writeTimes;
+        private final boolean[] referenced;
+        private final long[] accessTimes;
+        private final long[] expireAts;
+        private final int[] weights;
+
+        private Table(int length, boolean access, boolean variable, boolean weighted) {
+            this.mask = length - 1;
+            this.keys = new long[length];
+            this.values = new Object[length];
+            this.writeTimes = new long[length];
+            this.referenced = new boolean[length];
+            this.accessTimes = access ? new long[length] : null;
+            this.expireAts = variable ? new long[length] : null;
+            this.weights = weighted ? new int[length] : null;
+        }
+    }
+
+    private static final class Removal {
+        private final long key;
+        private final Object value;
+        private final String cause;
+
+        private Removal(long key, Object value, String cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * 进程内传输, 同一个 JVM 中已启动的所有实例互相投递, 用于单机调试和测试多个 {@link InvalidationBus}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:20 下午
+ * @since 1.0
+ */
+@Slf4j
+public class LoopbackTransport implements InvalidationTransport {
+
+    private static final Set<LoopbackTransport> STARTED = new CopyOnWriteArraySet<>();
+
+    private volatile Consumer<byte[]> receiver;
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        STARTED.add(this);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (LoopbackTransport transport : STARTED) {
+            Consumer<byte[]> r = transport.receiver;
+            if (r == null) {
+                continue;
+            }
+            try {
+                r.accept(message);
+            } catch (Exception e) {
+                log.error("[LoopbackTransport] deliver error", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        STARTED.remove(this);
+        receiver = null;
+    }
+}
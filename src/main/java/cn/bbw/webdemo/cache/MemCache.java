@@ -1,17 +1,28 @@
 package cn.bbw.webdemo.cache;
 
 import com.google.common.cache.*;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 
 /**
  * @author buliangliang
@@ -20,59 +31,214 @@ import java.util.stream.Collectors;
  * @since 1.0
  */
 @Slf4j
-public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICache<K, V>, RemovalListener<K, Optional<V>> {
+public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICache<K, V>, RemovalListener<K, Optional<V>>, Weigher<K, Optional<V>> {
+
+    /**
+     * 积压的淘汰通知上限, 队列满时在触发淘汰的线程中直接处理
+     */
+    private static final int PENDING_REMOVALS = 4096;
 
     private final LoadingCache<K, Optional<V>> loadingCache;
     private final BaseCache<K, V> baseCache;
+    private final SingleFlight<K, V> singleFlight;
+
+    /**
+     * 按 {@link BaseCache#expireAt} 计算的过期时间, Guava 没有时间轮, 读取和 cleanUp 时比较;
+     * 按写入过期时同时记录写入时间加 duration, 用于重建引擎时迁移剩余有效期; 按访问过期且未覆盖 expireAt 时为 null
+     */
+    private final ConcurrentHashMap<K, Long> deadlines;
+    private final boolean expireAfterWrite;
+    private final long durationMillis;
+
+    /**
+     * 后台维护启动后, 过期、回收和容量淘汰的通知先放到这里, 由 {@link #cleanUp()} 批量处理;
+     * Guava 在请求线程中顺带清理, 这样请求线程只需入队, 不再执行磁盘删除和级联失效
+     */
+    private final ArrayBlockingQueue<RemovalNotification<K, Optional<V>>> pendingRemovals = new ArrayBlockingQueue<>(PENDING_REMOVALS);
 
     public MemCache(BaseCache<K, V> baseCache) {
         this.baseCache = baseCache;
+        this.singleFlight = new SingleFlight<>(baseCache.getMetrics());
+        this.expireAfterWrite = !baseCache.isExpireAfterAccess();
+        this.durationMillis = TimeUnit.SECONDS.toMillis(baseCache.getDuration());
+        this.deadlines = baseCache.hasVariableExpiry() || expireAfterWrite ? new ConcurrentHashMap<>() : null;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
         if (baseCache.isExpireAfterAccess()) {
             // expireAfterAccess是指定项在一定时间内没有读写，会移除该key，下次取的时候从loading中取
-            loadingCache = CacheBuilder.newBuilder().maximumSize(baseCache.getMaxSize())
-                    .expireAfterAccess(baseCache.getDuration(), TimeUnit.SECONDS)
-                    .removalListener(this)
-                    .build(this);
+            builder.expireAfterAccess(baseCache.getDuration(), TimeUnit.SECONDS);
         } else {
             // expireAfterWrite是在指定项在一定时间内没有创建/覆盖时，会移除该key，下次取的时候从loading中取
-            loadingCache = CacheBuilder.newBuilder().maximumSize(baseCache.getMaxSize())
-                    .expireAfterWrite(baseCache.getDuration(), TimeUnit.SECONDS)
-                    .removalListener(this)
-                    .build(this);
+            builder.expireAfterWrite(baseCache.getDuration(), TimeUnit.SECONDS);
         }
+        if (baseCache.getRefreshSeconds() > 0) {
+            // refreshAfterWrite是写入超过指定时间后的首次读取触发后台刷新，刷新完成前继续返回旧值
+            builder.refreshAfterWrite(baseCache.getRefreshSeconds(), TimeUnit.SECONDS);
+        }
+        if (baseCache.getMaxWeight() > 0) {
+            // maximumWeight是按权重之和限制容量，权重由BaseCache.weigh计算，适合值大小差异大的缓存
+            loadingCache = builder.maximumWeight(baseCache.getMaxWeight()).weigher(this).removalListener(this).build(this);
+        } else {
+            loadingCache = builder.maximumSize(baseCache.getMaxSize()).removalListener(this).build(this);
+        }
+    }
+
+    /**
+     * 加载、写入时记录过期时间
+     */
+    private Optional<V> track(K key, Optional<V> value) {
+        return track(key, value, 0);
+    }
+
+    /**
+     * @param limit 按写入过期时过期时间不晚于 limit, 0 表示不限制
+     */
+    private Optional<V> track(K key, Optional<V> value, long limit) {
+        if (deadlines != null && value != null) {
+            long expireAt = value.isPresent() && baseCache.hasVariableExpiry() ? baseCache.expireAt(key, value.get()) : 0;
+            if (expireAfterWrite && value.isPresent()) {
+                long written = durationMillis > 0 ? System.currentTimeMillis() + durationMillis : 0;
+                expireAt = BaseCache.earliest(BaseCache.earliest(expireAt, written), limit);
+            }
+            if (expireAt > 0) {
+                deadlines.put(key, expireAt);
+            } else {
+                deadlines.remove(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 读取前淘汰已到过期时间的缓存项
+     */
+    private void expireIfDue(K key) {
+        if (deadlines != null) {
+            Long expireAt = deadlines.get(key);
+            if (expireAt != null && expireAt <= System.currentTimeMillis() && deadlines.remove(key, expireAt)) {
+                loadingCache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public int weigh(@NonNull K key, @NonNull Optional<V> value) {
+        return value.isPresent() ? baseCache.weigh(key, value.get()) : 1;
     }
 
     public void onRemoval(@Nullable K key, @Nullable Optional<V> value, @NonNull RemovalCause cause) {
-        baseCache.getChildren().forEach(child -> {
+        if (deadlines != null && cause != RemovalCause.REPLACED) {
+            deadlines.remove(key);
+        }
+        notifyRemoval(key, value, cause);
+    }
+
+    /**
+     * 磁盘二级缓存、统计和级联失效
+     */
+    private void notifyRemoval(@Nullable K key, @Nullable Optional<V> value, @NonNull RemovalCause cause) {
+        try {
+            if (cause == RemovalCause.SIZE) {
+                if (value != null && value.isPresent()) {
+                    baseCache.spill(key, value.get());
+                }
+            } else {
+                baseCache.evictStore(key);
+            }
+        } catch (Exception e) {
+            log.error("[MemCache] disk store error, key:" + key, e);
+        }
+        baseCache.getMetrics().recordRemoval(cause.name());
+        baseCache.cascade(key);
+    }
+
+    @Override
+    public Optional<V> load(@NonNull K key) {
+        // 由 Guava 在 get 未命中时调用, get 中已经记录过合并
+        return load(key, false);
+    }
+
+    /**
+     * get、reload 和过期后的重新加载共用在途的加载, 同一个 key 同一时刻只调用一次数据源, 其余调用方等待结果
+     */
+    private Optional<V> load(K key, boolean recordCoalesced) {
+        try {
+            V v = singleFlight.execute(key, k -> CompletableFuture.completedFuture(baseCache.loadThrough(k)), recordCoalesced).join();
+            if (v != null) {
+                return track(key, Optional.of(v));
+            }
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[MemCache] load error, key:" + key, e);
+        }
+        // 查不到和加载异常都不放入缓存, 由 BaseCache 的负缓存按各自的有效期记录
+        return null;
+    }
+
+    /**
+     * 后台刷新, 在加载线程池中执行, 刷新失败时保留旧值.
+     * 数据源中已经删除时先删除缓存项再让刷新失败: Guava 不允许返回 null, 刷新成功时会把结果重新放回已删除的缓存项
+     */
+    @Override
+    public ListenableFuture<Optional<V>> reload(@NonNull K key, @NonNull Optional<V> oldValue) {
+        ListenableFutureTask<Optional<V>> task = ListenableFutureTask.create(() -> {
             try {
-                child.remove(key);
+                V v = baseCache.refreshThrough(key);
+                if (v != null) {
+                    return track(key, Optional.of(v));
+                }
             } catch (Exception e) {
-                log.error("[MemCache] onRemoval error, key:" + key + ", value:" + value, e);
+                BaseCache.logLoadError(log, "[MemCache] refresh error, key:" + key, e);
+                return oldValue;
             }
+            loadingCache.invalidate(key);
+            throw new RefreshNotFoundException();
         });
+        baseCache.getLoadExecutor().execute(task);
+        return task;
     }
 
     @Override
-    public Optional<V> load(@NonNull K key) {
+    public Map<K, Optional<V>> loadAll(@NonNull Iterable<? extends K> keys) {
+        List<K> list = new ArrayList<>();
+        keys.forEach(list::add);
+        Map<K, V> loaded = null;
         try {
-            V v = baseCache.without(key);
-            return Optional.ofNullable(v);
+            loaded = baseCache.loadAllThrough(list);
         } catch (Exception e) {
-            log.error("[MemCache] load error, key:" + key, e);
+            BaseCache.logLoadError(log, "[MemCache] loadAll error, keys:" + list, e);
+        }
+        Map<K, Optional<V>> result = new LinkedHashMap<>(list.size());
+        if (loaded != null) {
+            loaded.forEach((k, v) -> {
+                if (v != null) {
+                    result.put(k, track(k, Optional.of(v)));
+                }
+            });
         }
-        return Optional.empty();
+        return result;
     }
 
     @Override
     public V get(final K key) {
-        Optional<V> v = Optional.empty();
-        try {
-            v = loadingCache.get(key);
+        expireIfDue(key);
+        Optional<V> v = loadingCache.getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
             return v.orElse(null);
-        } catch (ExecutionException e) {
-            log.error("[MemCache] load error, key:" + key, e);
         }
-        return v.orElse(null);
+        baseCache.getMetrics().recordMiss();
+        if (singleFlight.isInFlight(key)) {
+            // 等待 Guava 中在途的加载, 不会调用 load
+            baseCache.getMetrics().recordLoadCoalesced();
+        }
+        try {
+            return loadingCache.get(key).orElse(null);
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            // 查不到数据, 没有放入缓存
+            return null;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            BaseCache.logLoadError(log, "[MemCache] load error, key:" + key, e);
+        }
+        return null;
     }
 
     /**
@@ -83,7 +249,56 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
      */
     @Override
     public V getCacheOnly(K key) {
-        return Objects.requireNonNull(loadingCache.getIfPresent(key)).orElse(null);
+        expireIfDue(key);
+        Optional<V> v = loadingCache.getIfPresent(key);
+        return v != null ? v.orElse(null) : null;
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys) {
+        Map<K, V> result = new LinkedHashMap<>(keys.size());
+        List<K> misses = new ArrayList<>();
+        keys.forEach(this::expireIfDue);
+        Map<K, Optional<V>> present = loadingCache.getAllPresent(keys);
+        for (K key : keys) {
+            Optional<V> v = present.get(key);
+            if (v == null) {
+                misses.add(key);
+            } else {
+                v.ifPresent(value -> result.put(key, value));
+            }
+        }
+        baseCache.getMetrics().recordHits(keys.size() - misses.size());
+        baseCache.getMetrics().recordMisses(misses.size());
+        if (misses.isEmpty()) {
+            return result;
+        }
+        try {
+            loadingCache.getAll(misses).forEach((k, v) -> v.ifPresent(value -> result.put(k, value)));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            // 部分 key 查不到, 查到的已经放入缓存
+            loadingCache.getAllPresent(misses).forEach((k, v) -> v.ifPresent(value -> result.put(k, value)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            BaseCache.logLoadError(log, "[MemCache] loadAll error, keys:" + misses, e);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(K key) {
+        expireIfDue(key);
+        Optional<V> v = loadingCache.getIfPresent(key);
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return CompletableFuture.completedFuture(v.orElse(null));
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> baseCache.loadAsyncThrough(k).thenApply(value -> {
+            if (value != null) {
+                loadingCache.put(k, track(k, Optional.of(value)));
+            }
+            return value;
+        }));
     }
 
     /**
@@ -95,7 +310,8 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
     @Override
     public boolean put(K key, V value) {
         try {
-            loadingCache.put(key, Optional.of(value));
+            loadingCache.put(key, track(key, Optional.of(value)));
+            baseCache.evictNegative(key);
             return true;
         } catch (Exception e) {
             log.error("[MemCache] put error, key:" + key + ", value:" + value, e);
@@ -103,6 +319,33 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
         return false;
     }
 
+    @Override
+    public boolean put(K key, V value, long expireAt) {
+        if (!expireAfterWrite || expireAt <= 0) {
+            return put(key, value);
+        }
+        if (expireAt <= System.currentTimeMillis()) {
+            return false;
+        }
+        try {
+            loadingCache.put(key, track(key, Optional.of(value), expireAt));
+            baseCache.evictNegative(key);
+            return true;
+        } catch (Exception e) {
+            log.error("[MemCache] put error, key:" + key + ", value:" + value, e);
+        }
+        return false;
+    }
+
+    @Override
+    public long expiresAt(K key) {
+        if (!expireAfterWrite) {
+            return 0;
+        }
+        Long expireAt = deadlines.get(key);
+        return expireAt != null ? expireAt : 0;
+    }
+
     /**
      * 重新设置缓存,先删除(包括清除绑定在身上的其他缓存),再重新加载
      *
@@ -112,11 +355,19 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
     @Override
     public V reload(K key) {
         remove(key);
-        Optional<V> v = load(key);
-        loadingCache.put(key, v);
+        Optional<V> v = load(key, true);
+        if (v == null) {
+            return null;
+        }
+        loadingCache.put(key, track(key, v));
         return v.orElse(null);
     }
 
+    @Override
+    public void refresh(K key) {
+        loadingCache.refresh(key);
+    }
+
     /**
      * 重新设置缓存
      *
@@ -137,6 +388,9 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
     @Override
     public void remove(K key) {
         loadingCache.invalidate(key);
+        // 只在磁盘中的数据不会触发 onRemoval, 需要单独删除
+        baseCache.evictStore(key);
+        baseCache.evictNegative(key);
     }
 
     /**
@@ -162,18 +416,43 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
 
     @Override
     public Collection<V> values() {
-        Collection<Optional<V>> values = loadingCache.asMap().values();
-        return !values.isEmpty() ? values.stream().filter(v -> v != null && v.isPresent()).map(Optional::get).collect(Collectors.toCollection(CopyOnWriteArrayList::new)) : null;
+        List<V> values = new ArrayList<>(size());
+        forEach((k, v) -> values.add(v));
+        return !values.isEmpty() ? new CopyOnWriteArrayList<>(values) : null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        loadingCache.asMap().forEach((k, v) -> {
+            if (v != null && v.isPresent()) {
+                action.accept(k, v.get());
+            }
+        });
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> spliterator(BiPredicate<? super K, ? super V> filter) {
+        return new CacheSpliterator<>(loadingCache.asMap().entrySet().spliterator(), v -> v.orElse(null), filter);
     }
 
     @Override
     public void cleanUp() {
+        if (deadlines != null) {
+            long now = System.currentTimeMillis();
+            deadlines.forEach((key, expireAt) -> {
+                if (expireAt <= now && deadlines.remove(key, expireAt)) {
+                    loadingCache.invalidate(key);
+                }
+            });
+        }
         loadingCache.cleanUp();
+        drainRemovals();
     }
 
     @Override
     public void clear() {
         loadingCache.invalidateAll();
+        baseCache.clearNegatives();
     }
 
     @Override
@@ -183,6 +462,58 @@ public class MemCache<K, V> extends CacheLoader<K, Optional<V>> implements ICach
 
     @Override
     public void onRemoval(RemovalNotification<K, Optional<V>> notification) {
+        if (deferrable(notification) && pendingRemovals.offer(notification)) {
+            if (deadlines != null) {
+                deadlines.remove(notification.getKey());
+            }
+            return;
+        }
         onRemoval(notification.getKey(), notification.getValue(), notification.getCause());
     }
+
+    /**
+     * 只有后台维护在运行时才积压, 否则子缓存的级联失效会一直等到有人调用 cleanUp;
+     * 开启磁盘二级缓存时容量淘汰要立即写入磁盘, 否则写入前的读取会穿透到数据源, 写入前的删除也会被覆盖
+     */
+    private boolean deferrable(RemovalNotification<K, Optional<V>> notification) {
+        if (!notification.wasEvicted() || CacheFactory.getInstance().getMaintenance() == null) {
+            return false;
+        }
+        return notification.getCause() != RemovalCause.SIZE || baseCache.getDiskStore() == null;
+    }
+
+    /**
+     * 重建引擎后处理迁移期间积压的淘汰通知
+     */
+    @Override
+    public void close() {
+        drainRemovals();
+    }
+
+    /**
+     * 批量处理积压的淘汰通知, 每次最多处理入口时积压的个数, 处理期间新增的留到下次
+     */
+    private void drainRemovals() {
+        int pending = pendingRemovals.size();
+        if (pending == 0) {
+            return;
+        }
+        List<RemovalNotification<K, Optional<V>>> batch = new ArrayList<>(pending);
+        pendingRemovals.drainTo(batch, pending);
+        for (RemovalNotification<K, Optional<V>> notification : batch) {
+            notifyRemoval(notification.getKey(), notification.getValue(), notification.getCause());
+        }
+    }
+
+    /**
+     * 刷新时数据源中已经删除, 缓存项已经删除. 不记录堆栈
+     */
+    private static final class RefreshNotFoundException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private RefreshNotFoundException() {
+            super("[MemCache] refresh not found, entry removed", null, false, false);
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Cached} 方法的缓存, 加载时执行当前线程正在拦截的方法调用, 由 {@link CacheInterceptor} 创建.
+ * 只能通过被拦截的方法加载, 其他线程中的加载(如 {@link #reload}、后台刷新)没有方法调用, 加载失败;
+ * 因此不支持加载线程池({@link #setLoaderThreads}), 方法抛出的异常要交给调用方, 也不支持失败退避({@link #setFailureBackoffMillis})
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:30 下午
+ * @since 1.0
+ */
+@Slf4j
+public class MethodCache extends BaseCache<Object, Object> {
+
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 父缓存名, 第一次调用时关联
+     */
+    private final String parentName;
+
+    private volatile boolean linked;
+
+    /**
+     * 父缓存未登记时只提示一次
+     */
+    private volatile boolean unlinkedWarned;
+
+    /**
+     * 正在读取的 key, 同一个 key 的并发调用共享; 等待其他线程加载的调用方从这里取得方法抛出的异常
+     */
+    private final ConcurrentHashMap<Object, Load> loads = new ConcurrentHashMap<>();
+
+    MethodCache(String name, String parentName, int maxSize, int duration) {
+        super(name, null, maxSize, duration);
+        this.parentName = parentName;
+        this.linked = parentName.isEmpty();
+    }
+
+    @Override
+    public Object without(Object key) {
+        Call call = CURRENT.get();
+        if (call == null) {
+            throw new IllegalStateException("method cache can only be loaded by the cached method, cache name:" + getName());
+        }
+        call.invoked = true;
+        try {
+            Object result = call.invocation.proceed();
+            call.load.error = null;
+            return result;
+        } catch (Throwable e) {
+            // 引擎会吞掉加载异常, 记下原始异常由 get 抛出
+            call.error = e;
+            call.load.error = e;
+            throw new IllegalStateException("cached method error, cache name:" + getName(), e);
+        }
+    }
+
+    /**
+     * 读取缓存, 未命中时执行 invocation 加载
+     */
+    Object get(Object key, MethodInvocation invocation) throws Throwable {
+        if (!link()) {
+            return invocation.proceed();
+        }
+        Load load = loads.compute(key, (k, l) -> {
+            Load v = l != null ? l : new Load();
+            v.callers++;
+            return v;
+        });
+        Call previous = CURRENT.get();
+        Call call = new Call(invocation, load);
+        CURRENT.set(call);
+        try {
+            Object result = get(key);
+            // 没有执行方法又没有结果时, 等待的是其他线程的加载
+            Throwable error = call.invoked ? call.error : result == null ? load.error : null;
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+            loads.computeIfPresent(key, (k, l) -> --l.callers == 0 ? null : l);
+        }
+    }
+
+    @Override
+    public void setLoaderThreads(int loaderThreads) {
+        if (loaderThreads > 0) {
+            throw new IllegalArgumentException("method cache must load in the calling thread, cache name:" + getName());
+        }
+        super.setLoaderThreads(loaderThreads);
+    }
+
+    @Override
+    public void setFailureBackoffMillis(long failureBackoffMillis) {
+        if (failureBackoffMillis > 0) {
+            throw new IllegalArgumentException("method cache must rethrow method errors, cache name:" + getName());
+        }
+        super.setFailureBackoffMillis(failureBackoffMillis);
+    }
+
+    /**
+     * 关联父缓存, 引擎已经创建(如导入快照)时也加入父缓存的子缓存列表.
+     * 父缓存第一次使用时才登记, 登记前父缓存中没有数据, 也不会有失效, 本缓存暂不缓存, 直接执行方法
+     *
+     * @return 是否已关联
+     */
+    @SuppressWarnings("unchecked")
+    private boolean link() {
+        if (linked) {
+            return true;
+        }
+        synchronized (this) {
+            if (linked) {
+                return true;
+            }
+            BaseCache<Object, ?> parent = (BaseCache<Object, ?>) CacheFactory.getInstance().getBaseCache(parentName);
+            if (parent == null) {
+                if (!unlinkedWarned) {
+                    unlinkedWarned = true;
+                    log.warn("[MethodCache] parent cache not registered, skip caching, cache name:{}, parent:{}", getName(), parentName);
+                }
+                return false;
+            }
+            setParent(parent);
+            if (!parent.getChildren().contains(this)) {
+                parent.getChildren().add(this);
+            }
+            linked = true;
+            return true;
+        }
+    }
+
+    private static final class Call {
+        private final MethodInvocation invocation;
+        private final Load load;
+        private boolean invoked;
+        private Throwable error;
+
+        private Call(MethodInvocation invocation, Load load) {
+            this.invocation = invocation;
+            this.load = load;
+        }
+    }
+
+    private static final class Load {
+        /**
+         * 只在 loads 的 compute 中修改
+         */
+        private int callers;
+        private volatile Throwable error;
+    }
+}
@@ -0,0 +1,91 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个线程独立的近缓存, 放在 {@link BaseCache#get} 前面, 只存放 {@link HotKeyDetector} 统计出的热点 key,
+ * 命中时不经过引擎的 hash 查找和访问顺序维护, 也没有线程间竞争.
+ * <pre>
+ * 1.各线程的数据带有写入时的版本号, 版本号变化后线程下次读取时整体清空
+ * 2.热点 key 被写入、删除, 以及清空缓存、热点重新排序时版本号加一, 热点排序每秒一次, 也限制了引擎淘汰后近缓存最多旧一秒
+ * 3.读取引擎前先取版本号, 放入时版本号已变化则不放入, 避免把删除前读到的旧值放回
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 10:20 下午
+ * @since 1.0
+ */
+final class NearCache<K, T> {
+
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Set<K> hotKeys = Collections.emptySet();
+
+    private final ThreadLocal<Local<K, T>> locals = ThreadLocal.withInitial(Local::new);
+
+    /**
+     * 当前版本号, 在读取引擎前获取, 放入时传回
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * 读取当前线程的近缓存
+     *
+     * @param expected {@link #version()}
+     */
+    T get(K key, long expected) {
+        Local<K, T> local = locals.get();
+        if (local.version != expected) {
+            local.values.clear();
+            local.version = expected;
+            return null;
+        }
+        return local.values.get(key);
+    }
+
+    /**
+     * 热点 key 放入当前线程的近缓存, 其余 key 忽略
+     *
+     * @param expected 读取引擎前获取的 {@link #version()}
+     */
+    void put(K key, T value, long expected) {
+        if (value == null || !hotKeys.contains(key)) {
+            return;
+        }
+        Local<K, T> local = locals.get();
+        if (local.version == expected && version.get() == expected) {
+            local.values.put(key, value);
+        }
+    }
+
+    /**
+     * 热点 key 写入、删除后使所有线程的近缓存失效, 非热点 key 不在近缓存中, 不需要处理
+     */
+    void invalidate(K key) {
+        if (hotKeys.contains(key)) {
+            version.incrementAndGet();
+        }
+    }
+
+    void invalidateAll() {
+        version.incrementAndGet();
+    }
+
+    void setHotKeys(List<K> keys) {
+        hotKeys = new HashSet<>(keys);
+        version.incrementAndGet();
+    }
+
+    private static final class Local<K, T> {
+        private final HashMap<K, T> values = new HashMap<>();
+        private long version = -1;
+    }
+}
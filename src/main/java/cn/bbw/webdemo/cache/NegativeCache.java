@@ -0,0 +1,67 @@
+package cn.bbw.webdemo.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 负缓存, 记录查不到数据或加载异常的 key 及其截止时间, 截止前不再调用数据源.
+ * 与主缓存分开存放, 有独立的容量和有效期, 不会挤占正常数据的容量
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/8 7:30 下午
+ * @since 1.0
+ */
+final class NegativeCache<K> {
+
+    /**
+     * key -> 截止时间戳(毫秒)
+     */
+    private final Cache<K, Long> deadlines;
+
+    /**
+     * @param maxSize      最多记录的 key 个数
+     * @param maxTtlMillis 最长有效期, 用于兜底清理
+     */
+    NegativeCache(int maxSize, long maxTtlMillis) {
+        this.deadlines = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * key 是否处于负缓存有效期内
+     */
+    boolean contains(K key) {
+        Long deadline = deadlines.getIfPresent(key);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline <= System.currentTimeMillis()) {
+            deadlines.asMap().remove(key, deadline);
+            return false;
+        }
+        return true;
+    }
+
+    void put(K key, long ttlMillis) {
+        if (ttlMillis > 0) {
+            deadlines.put(key, System.currentTimeMillis() + ttlMillis);
+        }
+    }
+
+    void remove(K key) {
+        deadlines.invalidate(key);
+    }
+
+    void clear() {
+        deadlines.invalidateAll();
+    }
+
+    long size() {
+        return deadlines.size();
+    }
+}
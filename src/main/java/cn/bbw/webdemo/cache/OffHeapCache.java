@@ -0,0 +1,764 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * 堆外缓存, 值为字节数据, 存放在 direct ByteBuffer 切分的 slab 中, 读取时复制到堆内, 返回只读的副本.
+ * <pre>
+ * 1.容量由 {@link BaseCache#getMaxWeight()} 指定(字节), 切分为若干个 slab, 在当前 slab 中顺序分配;
+ *   slab 不小于 {@link BaseCache#getMaxValueBytes()}, 超过 slab 大小的值不缓存
+ * 2.slab 写满后换下一个 slab, slab 数达到上限时淘汰最旧的 slab, 其中被读过的数据复制到新 slab(second chance)
+ * 3.淘汰的 slab 放入空闲列表复用, 不依赖 GC 回收; 调用方拿到的是副本, 复用 slab 不会改写调用方持有的数据
+ * 4.复制期间 slab 按读取计数固定, 复用前先更新 slab 的版本号, 读取计数为 0 才复用; 版本号变化后开始的读取按未命中处理.
+ *   堆外内存最多为 slab 上限再加 {@link #SPARE_SLABS} 个, 空闲 slab 都在复制中时新数据暂不缓存
+ * 5.堆内只保留索引, 缓存的数据不占用堆, 读取产生的副本是短命对象
+ * 6.设置了 {@link BaseCache#getCodec()} 时, 超过阈值的值压缩后存放, 读取时解压到堆内; {@link #getEncoded} 不解压直接返回
+ * 7.容量淘汰的数据写入磁盘二级缓存, 删除、覆盖、过期时同步删除磁盘中的数据
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/5 4:02 下午
+ * @since 1.0
+ */
+@Slf4j
+public class OffHeapCache<K> implements ICache<K, ByteBuffer> {
+
+    /**
+     * 未设置 maxWeight 时的默认容量
+     */
+    private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+    /**
+     * 容量切分的 slab 个数
+     */
+    private static final int SLAB_COUNT = 16;
+    private static final int MIN_SLAB_SIZE = 1024 * 1024;
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+    /**
+     * slab 上限之外可以多分配的 slab 数, 用于轮换和等待复制完成
+     */
+    private static final int SPARE_SLABS = 2;
+
+    private final BaseCache<K, ByteBuffer> baseCache;
+    private final SingleFlight<K, ByteBuffer> singleFlight;
+    private final ConcurrentHashMap<K, Entry<K>> index = new ConcurrentHashMap<>();
+
+    /**
+     * 分配和淘汰 slab 时加锁, 读操作不加锁
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Slab<K>> slabs = new ArrayDeque<>();
+    private Slab<K> current;
+
+    /**
+     * 已淘汰等待复用的 slab
+     */
+    private final ArrayDeque<Slab<K>> free = new ArrayDeque<>();
+
+    /**
+     * 已分配的 slab 数, 包括空闲的
+     */
+    private int allocated;
+
+    /**
+     * 上次分配 slab 是否失败, 只在状态变化时打印日志
+     */
+    private boolean exhausted;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int maxAllocated;
+    private final long durationMillis;
+    private final long refreshMillis;
+
+    public OffHeapCache(BaseCache<K, ByteBuffer> baseCache) {
+        this.baseCache = baseCache;
+        this.singleFlight = new SingleFlight<>(baseCache.getMetrics());
+        long capacity = baseCache.getMaxWeight() > 0 ? baseCache.getMaxWeight() : DEFAULT_CAPACITY;
+        int size = (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, capacity / SLAB_COUNT));
+        this.slabSize = (int) Math.max(size, Math.min(baseCache.getMaxValueBytes(), Integer.MAX_VALUE));
+        this.maxSlabs = (int) Math.max(2, capacity / slabSize);
+        this.maxAllocated = maxSlabs + SPARE_SLABS;
+        this.durationMillis = TimeUnit.SECONDS.toMillis(baseCache.getDuration());
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(baseCache.getRefreshSeconds());
+    }
+
+    /**
+     * 删除、覆盖、过期: 同步删除磁盘二级缓存, 统计和级联失效
+     */
+    private void onRemoval(K key, String cause) {
+        try {
+            baseCache.evictStore(key);
+        } catch (Exception e) {
+            log.error("[OffHeapCache] disk store error, key:" + key, e);
+        }
+        baseCache.getMetrics().recordRemoval(cause);
+        baseCache.cascade(key);
+    }
+
+    /**
+     * 容量淘汰: 写入磁盘二级缓存, 统计和级联失效; 淘汰的 slab 此时仍被固定, 不会复用, 数据有效
+     */
+    private void onEvicted(Entry<K> entry) {
+        try {
+            ByteBuffer value = baseCache.getDiskStore() != null ? value(entry) : null;
+            if (value != null) {
+                baseCache.spill(entry.key, value);
+            }
+        } catch (Exception e) {
+            log.error("[OffHeapCache] disk store error, key:" + entry.key, e);
+        }
+        baseCache.getMetrics().recordRemoval("SIZE");
+        baseCache.cascade(entry.key);
+    }
+
+    private ByteBuffer load(K key) {
+        try {
+            ByteBuffer v = baseCache.loadThrough(key);
+            return v != null ? store(key, v) : null;
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[OffHeapCache] load error, key:" + key, e);
+        }
+        return null;
+    }
+
+    /**
+     * 复制到堆外, 返回加载到的数据的只读视图, 不用再从 slab 复制
+     */
+    private ByteBuffer store(K key, ByteBuffer value) {
+        insert(key, value, 0);
+        return value.asReadOnlyBuffer();
+    }
+
+    /**
+     * 复制到堆外; 超过单个 slab 大小或堆外内存达到上限时不缓存, 并删除该 key 的旧值, 避免之后读到旧数据
+     *
+     * @param limit 按写入过期时过期时间不晚于 limit, 0 表示不限制
+     * @return 缓存项, 没有缓存时返回 null
+     */
+    private Entry<K> insert(K key, ByteBuffer value, long limit) {
+        int rawLength = value.remaining();
+        ByteBuffer data = value.duplicate();
+        CacheCodec codec = baseCache.getCodec();
+        if (codec != null && rawLength >= baseCache.getCompressThreshold()) {
+            ByteBuffer compressed = compress(codec, value);
+            if (compressed != null) {
+                data = compressed;
+            } else {
+                codec = null;
+            }
+        } else {
+            codec = null;
+        }
+        int length = data.remaining();
+        if (length > slabSize) {
+            log.warn("[OffHeapCache] value too large, key:{}, size:{}, slabSize:{}", key, length, slabSize);
+            discard(key, "REPLACED");
+            return null;
+        }
+        long expireAt = baseCache.hasVariableExpiry() ? baseCache.expireAt(key, value.asReadOnlyBuffer()) : 0;
+        if (!baseCache.isExpireAfterAccess()) {
+            expireAt = BaseCache.earliest(expireAt, limit);
+        }
+        List<Entry<K>> evicted = new ArrayList<>();
+        Entry<K> entry = null;
+        Entry<K> old;
+        Slab<K> retired = null;
+        lock.lock();
+        try {
+            if (current == null || current.remaining() < length) {
+                retired = roll(length, evicted);
+            }
+            if (current == null || current.remaining() < length) {
+                old = index.remove(key);
+            } else {
+                entry = current.write(key, data, System.currentTimeMillis());
+                entry.expireAt = expireAt;
+                entry.codec = codec;
+                entry.rawLength = rawLength;
+                old = index.put(key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            evicted.forEach(this::onEvicted);
+        } finally {
+            if (retired != null) {
+                retired.unpin();
+            }
+        }
+        if (old != null) {
+            onRemoval(key, "REPLACED");
+        }
+        return entry;
+    }
+
+    /**
+     * 新值不能缓存或刷新时数据源中已经删除时删除旧值, 不清除负缓存
+     */
+    private void discard(K key, String cause) {
+        if (index.remove(key) != null) {
+            onRemoval(key, cause);
+        }
+    }
+
+    /**
+     * 压缩, 节省不到 1/8 时返回 null, 按原样存放, 避免读取时白白解压
+     */
+    private ByteBuffer compress(CacheCodec codec, ByteBuffer value) {
+        long start = System.nanoTime();
+        int length = value.remaining();
+        byte[] src;
+        int offset;
+        if (value.hasArray()) {
+            src = value.array();
+            offset = value.arrayOffset() + value.position();
+        } else {
+            src = new byte[length];
+            value.duplicate().get(src);
+            offset = 0;
+        }
+        byte[] encoded = codec.encode(src, offset, length);
+        boolean keep = encoded.length <= length - (length >> 3);
+        baseCache.getMetrics().recordCompress(length, keep ? encoded.length : length, System.nanoTime() - start);
+        return keep ? ByteBuffer.wrap(encoded) : null;
+    }
+
+    /**
+     * 缓存项的值, 复制到堆内, 压缩存放的解压, 返回只读副本; slab 已被复用时返回 null
+     */
+    private ByteBuffer value(Entry<K> entry) {
+        byte[] data = copy(entry);
+        if (data == null) {
+            return null;
+        }
+        CacheCodec codec = entry.codec;
+        if (codec == null) {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        long start = System.nanoTime();
+        byte[] raw = codec.decode(data, 0, data.length, entry.rawLength);
+        baseCache.getMetrics().recordDecompress(System.nanoTime() - start);
+        return ByteBuffer.wrap(raw).asReadOnlyBuffer();
+    }
+
+    private EncodedValue encoded(Entry<K> entry) {
+        byte[] data = copy(entry);
+        if (data == null) {
+            return null;
+        }
+        CacheCodec codec = entry.codec;
+        return new EncodedValue(ByteBuffer.wrap(data).asReadOnlyBuffer(), codec != null ? codec.name() : null, entry.rawLength);
+    }
+
+    /**
+     * 复制期间固定 slab; 缓存项被淘汰后 slab 已被复用时返回 null, 按未命中处理
+     */
+    private byte[] copy(Entry<K> entry) {
+        Slab<K> slab = entry.slab;
+        if (!slab.pin(entry.generation)) {
+            return null;
+        }
+        try {
+            byte[] data = new byte[entry.length];
+            ByteBuffer src = slab.buffer.duplicate();
+            src.position(entry.offset);
+            src.get(data);
+            return data;
+        } finally {
+            slab.unpin();
+        }
+    }
+
+    /**
+     * 读取按原样存放的数据, 压缩存放的不解压, 未命中时加载
+     */
+    EncodedValue getEncoded(K key) {
+        Entry<K> entry = getEntry(key);
+        EncodedValue encoded = entry != null ? encoded(entry) : null;
+        if (encoded != null) {
+            baseCache.getMetrics().recordHit();
+            return encoded;
+        }
+        ByteBuffer v = get(key);
+        if (v == null) {
+            return null;
+        }
+        entry = index.get(key);
+        encoded = entry != null ? encoded(entry) : null;
+        return encoded != null ? encoded : new EncodedValue(v, null, v.remaining());
+    }
+
+    /**
+     * 换下一个 slab, slab 数达到上限时淘汰最旧的 slab, 需持有 lock
+     *
+     * @param reserve 新 slab 需要为待写入数据保留的字节数
+     * @param evicted 被淘汰的缓存项
+     * @return 淘汰的 slab, 已固定, 被淘汰的缓存项处理完后由调用方解除; 没有淘汰或没有可用的 slab 时返回 null
+     */
+    private Slab<K> roll(int reserve, List<Entry<K>> evicted) {
+        Slab<K> slab = allocate();
+        if (slab == null) {
+            return null;
+        }
+        Slab<K> oldest = slabs.size() >= maxSlabs ? slabs.pollFirst() : null;
+        current = slab;
+        slabs.addLast(current);
+        if (oldest == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        int limit = Math.min(slabSize / 2, slabSize - reserve);
+        for (Entry<K> entry : oldest.entries) {
+            if (index.get(entry.key) != entry) {
+                continue;
+            }
+            // 读过的数据复制到新 slab, 最多占用新 slab 的一半
+            if (entry.hit && !isExpired(entry, now) && current.position + entry.length <= limit) {
+                Entry<K> moved = current.write(entry.key, entry.view(), entry.writeTime);
+                moved.accessTime = entry.accessTime;
+                moved.expireAt = entry.expireAt;
+                moved.codec = entry.codec;
+                moved.rawLength = entry.rawLength;
+                index.replace(entry.key, entry, moved);
+            } else if (index.remove(entry.key, entry)) {
+                evicted.add(entry);
+            }
+        }
+        // 写入磁盘二级缓存前不能复用
+        oldest.readers.incrementAndGet();
+        free.addLast(oldest);
+        return oldest;
+    }
+
+    /**
+     * 取一个 slab: 优先复用没有在复制中的空闲 slab, 否则在上限内新建; 都不行时返回 null, 需持有 lock
+     */
+    private Slab<K> allocate() {
+        for (Iterator<Slab<K>> it = free.iterator(); it.hasNext(); ) {
+            Slab<K> slab = it.next();
+            if (slab.recycle()) {
+                it.remove();
+                recovered();
+                return slab;
+            }
+        }
+        if (allocated < maxAllocated) {
+            try {
+                Slab<K> slab = new Slab<>(slabSize);
+                allocated++;
+                recovered();
+                return slab;
+            } catch (OutOfMemoryError e) {
+                if (!exhausted) {
+                    log.error("[OffHeapCache] direct memory exhausted, cache name:" + baseCache.getName(), e);
+                }
+                exhausted = true;
+                return null;
+            }
+        }
+        if (!exhausted) {
+            exhausted = true;
+            log.warn("[OffHeapCache] all spare slabs are being read, new values not cached, cache name:{}, allocated:{}",
+                    baseCache.getName(), allocated);
+        }
+        return null;
+    }
+
+    private void recovered() {
+        if (exhausted) {
+            exhausted = false;
+            log.info("[OffHeapCache] slab allocation recovered, cache name:{}", baseCache.getName());
+        }
+    }
+
+    /**
+     * 已分配的 slab 数, 包括空闲的
+     */
+    int allocatedSlabs() {
+        lock.lock();
+        try {
+            return allocated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isExpired(Entry<K> entry, long now) {
+        if (entry.expireAt > 0 && entry.expireAt <= now) {
+            return true;
+        }
+        if (durationMillis <= 0) {
+            return false;
+        }
+        long since = baseCache.isExpireAfterAccess() ? entry.accessTime : entry.writeTime;
+        return now - since >= durationMillis;
+    }
+
+    private Entry<K> getEntry(K key) {
+        Entry<K> entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            if (index.remove(key, entry)) {
+                onRemoval(key, "EXPIRED");
+            }
+            return null;
+        }
+        entry.accessTime = now;
+        entry.hit = true;
+        if (refreshMillis > 0 && now - entry.writeTime >= refreshMillis) {
+            refresh(key);
+        }
+        return entry;
+    }
+
+    @Override
+    public ByteBuffer get(K key) {
+        Entry<K> entry = getEntry(key);
+        ByteBuffer v = entry != null ? value(entry) : null;
+        if (v != null) {
+            baseCache.getMetrics().recordHit();
+            return v;
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> CompletableFuture.completedFuture(load(k))).join();
+    }
+
+    @Override
+    public ByteBuffer getCacheOnly(K key) {
+        Entry<K> entry = getEntry(key);
+        return entry != null ? value(entry) : null;
+    }
+
+    @Override
+    public Map<K, ByteBuffer> getAll(Collection<K> keys) {
+        Map<K, ByteBuffer> result = new LinkedHashMap<>(keys.size());
+        List<K> misses = new ArrayList<>();
+        for (K key : keys) {
+            ByteBuffer v = getCacheOnly(key);
+            if (v != null) {
+                result.put(key, v);
+            } else {
+                misses.add(key);
+            }
+        }
+        baseCache.getMetrics().recordHits(result.size());
+        baseCache.getMetrics().recordMisses(misses.size());
+        if (!misses.isEmpty()) {
+            try {
+                baseCache.loadAllThrough(misses).forEach((k, v) -> {
+                    if (v != null) {
+                        result.put(k, store(k, v));
+                    }
+                });
+            } catch (Exception e) {
+                BaseCache.logLoadError(log, "[OffHeapCache] loadAll error, keys:" + misses, e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> getAsync(K key) {
+        Entry<K> entry = getEntry(key);
+        ByteBuffer cached = entry != null ? value(entry) : null;
+        if (cached != null) {
+            baseCache.getMetrics().recordHit();
+            return CompletableFuture.completedFuture(cached);
+        }
+        baseCache.getMetrics().recordMiss();
+        return singleFlight.execute(key, k -> baseCache.loadAsyncThrough(k)
+                .thenApply(v -> v != null ? store(k, v) : null));
+    }
+
+    @Override
+    public boolean put(K key, ByteBuffer val) {
+        try {
+            boolean cached = insert(key, val, 0) != null;
+            baseCache.evictNegative(key);
+            return cached;
+        } catch (Exception e) {
+            log.error("[OffHeapCache] put error, key:" + key, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean put(K key, ByteBuffer val, long expireAt) {
+        if (baseCache.isExpireAfterAccess() || expireAt <= 0) {
+            return put(key, val);
+        }
+        if (expireAt <= System.currentTimeMillis()) {
+            return false;
+        }
+        try {
+            boolean cached = insert(key, val, expireAt) != null;
+            baseCache.evictNegative(key);
+            return cached;
+        } catch (Exception e) {
+            log.error("[OffHeapCache] put error, key:" + key, e);
+        }
+        return false;
+    }
+
+    @Override
+    public long expiresAt(K key) {
+        Entry<K> entry = index.get(key);
+        if (entry == null || baseCache.isExpireAfterAccess()) {
+            return 0;
+        }
+        return BaseCache.earliest(entry.expireAt, durationMillis > 0 ? entry.writeTime + durationMillis : 0);
+    }
+
+    @Override
+    public ByteBuffer reload(K key) {
+        remove(key);
+        return singleFlight.execute(key, k -> CompletableFuture.completedFuture(load(k))).join();
+    }
+
+    @Override
+    public void refresh(K key) {
+        singleFlight.execute(key, k -> CompletableFuture.supplyAsync(() -> refreshEntry(k), baseCache.getLoadExecutor()));
+    }
+
+    /**
+     * 后台刷新, 刷新失败时保留旧值, 数据源中已经删除时删除缓存项
+     */
+    private ByteBuffer refreshEntry(K key) {
+        try {
+            ByteBuffer v = baseCache.refreshThrough(key);
+            if (v != null) {
+                return store(key, v);
+            }
+            discard(key, "EXPLICIT");
+        } catch (Exception e) {
+            BaseCache.logLoadError(log, "[OffHeapCache] refresh error, key:" + key, e);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean replace(K key, ByteBuffer val) {
+        remove(key);
+        return put(key, val);
+    }
+
+    @Override
+    public void remove(K key) {
+        if (index.remove(key) != null) {
+            onRemoval(key, "EXPLICIT");
+        }
+        baseCache.evictNegative(key);
+    }
+
+    @Override
+    public boolean exist(K key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public Collection<K> keys() {
+        return index.keySet();
+    }
+
+    @Override
+    public Collection<ByteBuffer> values() {
+        long now = System.currentTimeMillis();
+        List<ByteBuffer> values = new ArrayList<>(index.size());
+        index.values().forEach(entry -> {
+            ByteBuffer v = isExpired(entry, now) ? null : value(entry);
+            if (v != null) {
+                values.add(v);
+            }
+        });
+        return !values.isEmpty() ? values : null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super ByteBuffer> action) {
+        long now = System.currentTimeMillis();
+        index.forEach((key, entry) -> {
+            ByteBuffer v = isExpired(entry, now) ? null : value(entry);
+            if (v != null) {
+                action.accept(key, v);
+            }
+        });
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, ByteBuffer>> spliterator(BiPredicate<? super K, ? super ByteBuffer> filter) {
+        long now = System.currentTimeMillis();
+        return new CacheSpliterator<>(index.entrySet().spliterator(), entry -> isExpired(entry, now) ? null : value(entry), filter);
+    }
+
+    @Override
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        index.forEach((key, entry) -> {
+            if (isExpired(entry, now) && index.remove(key, entry)) {
+                onRemoval(key, "EXPIRED");
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        List<K> keys;
+        lock.lock();
+        try {
+            keys = new ArrayList<>(index.keySet());
+            index.clear();
+            free.addAll(slabs);
+            slabs.clear();
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+        keys.forEach(k -> onRemoval(k, "EXPLICIT"));
+        baseCache.clearNegatives();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 丢弃索引和 slab, 不触发移除通知, 堆外内存随引擎一起由 GC 回收
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            index.clear();
+            slabs.clear();
+            free.clear();
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Slab<K> {
+        private final ByteBuffer buffer;
+        private final List<Entry<K>> entries = new ArrayList<>();
+        private int position;
+        /**
+         * 复制中的读取数
+         */
+        private final AtomicInteger readers = new AtomicInteger();
+        /**
+         * 版本号, 复用时加一, 只在持有 lock 时修改
+         */
+        private volatile int generation;
+
+        private Slab(int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        /**
+         * 固定 slab, 缓存项写入后 slab 已被复用时返回 false
+         */
+        private boolean pin(int generation) {
+            readers.incrementAndGet();
+            if (this.generation == generation) {
+                return true;
+            }
+            readers.decrementAndGet();
+            return false;
+        }
+
+        private void unpin() {
+            readers.decrementAndGet();
+        }
+
+        /**
+         * 复用前先更新版本号, 之后开始的读取都会失败; 仍有复制中的读取时返回 false, 下次再试
+         */
+        private boolean recycle() {
+            generation++;
+            if (readers.get() != 0) {
+                return false;
+            }
+            position = 0;
+            entries.clear();
+            return true;
+        }
+
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        private Entry<K> write(K key, ByteBuffer src, long writeTime) {
+            int length = src.remaining();
+            ByteBuffer dst = buffer.duplicate();
+            dst.position(position);
+            dst.put(src);
+            Entry<K> entry = new Entry<>(key, this, generation, position, length, writeTime);
+            position += length;
+            entries.add(entry);
+            return entry;
+        }
+    }
+
+    private static final class Entry<K> {
+        private final K key;
+        private final Slab<K> slab;
+        private final int generation;
+        private final int offset;
+        private final int length;
+        private final long writeTime;
+        private volatile long accessTime;
+        private volatile boolean hit;
+        /**
+         * {@link BaseCache#expireAt} 计算的过期时间, 0 表示只按 duration 过期
+         */
+        private long expireAt;
+        /**
+         * 压缩编码, 为空表示按原样存放
+         */
+        private CacheCodec codec;
+        /**
+         * 原始数据长度
+         */
+        private int rawLength;
+
+        private Entry(K key, Slab<K> slab, int generation, int offset, int length, long writeTime) {
+            this.key = key;
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+            this.writeTime = writeTime;
+            this.accessTime = writeTime;
+        }
+
+        private ByteBuffer view() {
+            ByteBuffer view = slab.buffer.asReadOnlyBuffer();
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package cn.bbw.webdemo.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 同一个 key 同一时刻只允许一个加载在途, 并发请求共享同一个 {@link CompletableFuture}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/4 3:10 下午
+ * @since 1.0
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 记录合并掉的加载次数
+     */
+    private final CacheMetrics metrics;
+
+    SingleFlight(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 执行加载, key 已有加载在途时直接返回在途的 future
+     *
+     * @param key    键
+     * @param loader 加载函数, 只会被一个调用方执行
+     * @return 加载结果
+     */
+    CompletableFuture<V> execute(K key, Function<? super K, CompletableFuture<V>> loader) {
+        return execute(key, loader, true);
+    }
+
+    /**
+     * 执行加载
+     *
+     * @param key             键
+     * @param loader          加载函数, 只会被一个调用方执行
+     * @param recordCoalesced 等待在途加载时是否记录合并, 调用方已经记录过时传 false
+     * @return 加载结果
+     */
+    CompletableFuture<V> execute(K key, Function<? super K, CompletableFuture<V>> loader, boolean recordCoalesced) {
+        CompletableFuture<V> future = inFlight.get(key);
+        if (future != null) {
+            if (recordCoalesced) {
+                metrics.recordLoadCoalesced();
+            }
+            return future;
+        }
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        future = inFlight.putIfAbsent(key, promise);
+        if (future != null) {
+            if (recordCoalesced) {
+                metrics.recordLoadCoalesced();
+            }
+            return future;
+        }
+        try {
+            loader.apply(key).whenComplete((v, e) -> {
+                inFlight.remove(key, promise);
+                if (e != null) {
+                    promise.completeExceptionally(e);
+                } else {
+                    promise.complete(v);
+                }
+            });
+        } catch (Throwable e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise;
+    }
+
+    /**
+     * key 是否有加载在途
+     */
+    boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * 在途加载数
+     *
+     * @return 在途数量
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
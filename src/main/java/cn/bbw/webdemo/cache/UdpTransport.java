@@ -0,0 +1,132 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * UDP 单播传输, 每个节点在指定地址上监听一个端口, 消息逐个发送给配置的其他节点.
+ * 单机可以用不同端口启动多个节点互相配置为 peer, 如 127.0.0.1:7701 与 127.0.0.1:7702.
+ * 只接收来源地址和端口是已配置 peer 的报文, 其他来源直接丢弃; 来源地址可以伪造, 跨主机部署时还需配置总线的签名密钥.
+ * UDP 不保证送达, 丢失的失效由缓存自身的过期时间兜底
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/11 8:30 下午
+ * @since 1.0
+ */
+@Slf4j
+public class UdpTransport implements InvalidationTransport {
+
+    /**
+     * 接收缓冲区大小, 批量失效时连续到达多个满长度的报文
+     */
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private final InetSocketAddress bindAddress;
+
+    private final List<InetSocketAddress> peers;
+
+    private final Set<InetSocketAddress> accepted;
+
+    private volatile DatagramSocket socket;
+
+    /**
+     * @param bindAddress 本节点监听地址, 如 127.0.0.1 或内网网卡地址
+     * @param port        本节点监听端口
+     * @param peers       其他节点地址
+     */
+    public UdpTransport(String bindAddress, int port, List<InetSocketAddress> peers) {
+        this.bindAddress = new InetSocketAddress(bindAddress, port);
+        if (this.bindAddress.isUnresolved()) {
+            throw new IllegalArgumentException("unresolved bind address:" + bindAddress);
+        }
+        this.peers = new ArrayList<>(peers);
+        this.accepted = new HashSet<>(peers);
+    }
+
+    /**
+     * 解析 peer 列表
+     *
+     * @param peers 逗号分隔的 host:port, 如 127.0.0.1:7702,10.0.0.2:7701
+     */
+    public static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int index = peer.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("invalid peer, expect host:port, peer:" + peer);
+            }
+            InetSocketAddress address = new InetSocketAddress(peer.substring(0, index), Integer.parseInt(peer.substring(index + 1)));
+            if (address.isUnresolved()) {
+                throw new IllegalArgumentException("unresolved peer:" + peer);
+            }
+            result.add(address);
+        }
+        return result;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException {
+        socket = new DatagramSocket(bindAddress);
+        socket.setReceiveBufferSize(RECEIVE_BUFFER_BYTES);
+        Thread thread = new Thread(() -> receive(socket, receiver), "cache-bus-udp-" + bindAddress.getPort());
+        thread.setDaemon(true);
+        thread.start();
+        log.info("[UdpTransport] started, bind:{}, peers:{}", bindAddress, peers);
+    }
+
+    private void receive(DatagramSocket socket, Consumer<byte[]> receiver) {
+        byte[] buffer = new byte[InvalidationBus.MAX_MESSAGE_BYTES];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (!accepted.contains(packet.getSocketAddress())) {
+                    log.warn("[UdpTransport] message from unknown source dropped, source:{}", packet.getSocketAddress());
+                    continue;
+                }
+                receiver.accept(Arrays.copyOfRange(buffer, packet.getOffset(), packet.getOffset() + packet.getLength()));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.error("[UdpTransport] receive error, bind:" + bindAddress, e);
+                }
+            } catch (Exception e) {
+                log.error("[UdpTransport] handle message error, bind:" + bindAddress, e);
+            }
+        }
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        DatagramSocket s = socket;
+        if (s == null) {
+            throw new IllegalStateException("transport not started");
+        }
+        for (InetSocketAddress peer : peers) {
+            s.send(new DatagramPacket(message, message.length, peer));
+        }
+    }
+
+    @Override
+    public void close() {
+        DatagramSocket s = socket;
+        if (s != null) {
+            s.close();
+        }
+    }
+}
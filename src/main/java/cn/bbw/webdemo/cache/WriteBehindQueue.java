@@ -0,0 +1,122 @@
+package cn.bbw.webdemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步写队列, 每个 {@link WriteMode#BEHIND} 的缓存一个.
+ * <pre>
+ * 1.按 key 合并, 写入前同一个 key 只保留最后一次的值
+ * 2.定时刷新, 积压达到批量大小时提前刷新, 每批调用一次 {@link CacheWriter#writeAll(Map)}
+ * 3.写入失败的数据放回队列下次重试, 期间有更新的 key 以新值为准
+ * 4.未写入前从数据源加载会先读队列中的值, 避免内存淘汰后读到数据源中的旧数据
+ * </pre>
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:30 下午
+ * @since 1.0
+ */
+@Slf4j
+final class WriteBehindQueue<K, T> {
+
+    private final BaseCache<K, T> baseCache;
+
+    private final ConcurrentHashMap<K, T> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 正在写入数据源的一批, 写完前加载仍然读这里的值
+     */
+    private volatile Map<K, T> writing = Collections.emptyMap();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ScheduledFuture<?> task;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /**
+     * 停止定时刷新后, 之后的写入每次都提前刷新
+     */
+    private volatile boolean closed;
+
+    WriteBehindQueue(BaseCache<K, T> baseCache, ScheduledExecutorService scheduler) {
+        this.baseCache = baseCache;
+        this.scheduler = scheduler;
+        long delay = baseCache.getWriteBehindMillis();
+        this.task = scheduler.scheduleWithFixedDelay(this::flush, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void add(K key, T value) {
+        if (pending.put(key, value) != null) {
+            baseCache.getMetrics().recordWriteCoalesced();
+        }
+        if ((closed || pending.size() >= baseCache.getWriteBehindBatchSize()) && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 未写入数据源的值
+     */
+    T get(K key) {
+        T value = pending.get(key);
+        return value != null ? value : writing.get(key);
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    /**
+     * 把积压的数据分批写入数据源
+     */
+    synchronized void flush() {
+        flushRequested.set(false);
+        int batchSize = baseCache.getWriteBehindBatchSize();
+        Map<K, T> batch = new LinkedHashMap<>();
+        for (Map.Entry<K, T> entry : pending.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(Map<K, T> batch) {
+        // 先让读取可见再从队列中删除, 中间不会有加载读到数据源中的旧值; 期间更新过的 key 留在队列中下次写入
+        writing = batch;
+        batch.forEach(pending::remove);
+        try {
+            baseCache.getWriter().writeAll(batch);
+            baseCache.getMetrics().recordWrites(batch.size());
+        } catch (Exception e) {
+            baseCache.getMetrics().recordWriteFailures(batch.size());
+            batch.forEach(pending::putIfAbsent);
+            log.error("[WriteBehindQueue] write error, cache name:" + baseCache.getName() + ", size:" + batch.size(), e);
+        } finally {
+            writing = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 写入剩余数据后停止定时刷新
+     */
+    void close() {
+        closed = true;
+        task.cancel(false);
+        flush();
+    }
+}
@@ -0,0 +1,24 @@
+package cn.bbw.webdemo.cache;
+
+/**
+ * 缓存写入数据源的方式, 见 {@link BaseCache#setWriteMode(WriteMode, CacheWriter)}
+ *
+ * @author buliangliang
+ * @version V1.0.0
+ * @date 2021/9/12 8:10 下午
+ * @since 1.0
+ */
+public enum WriteMode {
+    /**
+     * 不写数据源, 由业务自行持久化
+     */
+    NONE,
+    /**
+     * 同步写: put/replace 先写数据源, 成功后再更新缓存
+     */
+    THROUGH,
+    /**
+     * 异步写: put/replace 只更新缓存, 同一个 key 的多次更新合并为最后一次, 定时或积压达到批量大小时批量写入数据源
+     */
+    BEHIND
+}
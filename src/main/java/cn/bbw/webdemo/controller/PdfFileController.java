@@ -10,7 +10,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * @author buliangliang
@@ -28,7 +28,8 @@ public class PdfFileController {
         res.reset();
         res.setContentType("application/pdf");
 
-        InputStream inputStream = FileCache.getInstance().get("");
+        FileCache fileCache = FileCache.getInstance();
+        ByteBuffer buffer = fileCache.get(fileCache.fileName());
         return new ResponseEntity<>("11111", HttpStatus.OK);
     }
 }
@@ -1,4 +1,4 @@
-package cn.youai.commons.lock;
+package cn.bbw.webdemo.lock;
 
 /**
  * 实体标识接口
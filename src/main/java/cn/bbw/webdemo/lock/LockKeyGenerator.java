@@ -1,4 +1,4 @@
-package cn.youai.commons.lock;
+package cn.bbw.webdemo.lock;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
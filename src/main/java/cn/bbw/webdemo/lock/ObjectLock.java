@@ -1,4 +1,4 @@
-package cn.youai.commons.lock;
+package cn.bbw.webdemo.lock;
 
 import java.util.concurrent.locks.ReentrantLock;
 
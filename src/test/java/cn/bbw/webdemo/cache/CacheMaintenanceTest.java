@@ -0,0 +1,126 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试中直接调用 {@link CacheMaintenance#run()} 执行一轮, 定时间隔设为一小时不会自动执行
+ */
+class CacheMaintenanceTest {
+
+    private static final long NEVER = 3_600_000;
+
+    private final CacheFactory factory = CacheFactory.getInstance();
+
+    /**
+     * 应用启动时可能已经启动了后台维护, 先停掉, 避免与测试中的维护同时执行
+     */
+    @BeforeEach
+    void setUp() {
+        factory.stopMaintenance();
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.stopMaintenance();
+    }
+
+    @Test
+    void tickStopsAtBudgetAndResumesFromCursor() throws InterruptedException {
+        List<CountingCache<String>> caches = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            CountingCache<String> cache = CountingCache.of("CacheMaintenanceTest.budget." + i);
+            cache.setExpireAfterAccess(false);
+            cache.setDuration(1);
+            for (int j = 0; j < 2000; j++) {
+                cache.get("k" + j);
+            }
+            caches.add(cache);
+        }
+        Thread.sleep(1100);
+        // 每个缓存的 cleanUp 要清除 2000 个过期项, 1ms 的预算一轮维护不完
+        CacheMaintenance maintenance = new CacheMaintenance(factory, NEVER, 1, 1, 1);
+        maintenance.run();
+        assertTrue(maintained(caches) < caches.size(), "maintained:" + maintained(caches));
+
+        for (int i = 0; i < 10_000 && maintained(caches) < caches.size(); i++) {
+            maintenance.run();
+        }
+        assertEquals(caches.size(), maintained(caches));
+        for (CountingCache<String> cache : caches) {
+            assertEquals(0, cache.size(), cache.getName());
+        }
+    }
+
+    @Test
+    void intervalAdaptsToModifications() throws InterruptedException {
+        CountingCache<String> cache = CountingCache.of("CacheMaintenanceTest.interval");
+        cache.get("a");
+        CacheMaintenance maintenance = new CacheMaintenance(factory, NEVER, 1000, 10, 80);
+        String name = cache.getName();
+        maintenance.run();
+        assertEquals(10, maintenance.intervalMillis(name));
+        // 没有写入时间隔加倍, 不超过最大值
+        for (long expected : new long[]{20, 40, 80, 80}) {
+            Thread.sleep(maintenance.intervalMillis(name) + 5);
+            maintenance.run();
+            assertEquals(expected, maintenance.intervalMillis(name));
+        }
+        // 有写入、加载时间隔减半
+        cache.get("b");
+        Thread.sleep(85);
+        maintenance.run();
+        assertEquals(40, maintenance.intervalMillis(name));
+        // 间隔未到时跳过
+        cache.get("c");
+        maintenance.run();
+        assertEquals(40, maintenance.intervalMillis(name));
+    }
+
+    @Test
+    void deferredRemovalsAreDrained() {
+        factory.startMaintenance(new CacheMaintenance(factory, NEVER, 1000, 1, 1));
+        CountingCache<String> cache = CountingCache.of("CacheMaintenanceTest.drain");
+        cache.setMaxSize(10);
+        for (int i = 0; i < 100; i++) {
+            cache.get("k" + i);
+        }
+        // 维护运行时淘汰通知积压到维护时处理
+        assertEquals(0, cache.getMetrics().removalCount("SIZE"));
+
+        new CacheMaintenance(factory, NEVER, 1000, 1, 1).run();
+        assertEquals(100 - cache.size(), cache.getMetrics().removalCount("SIZE"));
+    }
+
+    @Test
+    void closeRunsFinalPass() {
+        factory.startMaintenance(new CacheMaintenance(factory, NEVER, 1000, 1, 1));
+        CountingCache<String> cache = CountingCache.of("CacheMaintenanceTest.close");
+        cache.setMaxSize(10);
+        for (int i = 0; i < 100; i++) {
+            cache.get("k" + i);
+        }
+        assertEquals(0, cache.getMetrics().removalCount("SIZE"));
+
+        factory.stopMaintenance();
+        assertEquals(100 - cache.size(), cache.getMetrics().removalCount("SIZE"));
+        assertTrue(cache.getMetrics().maintenanceCount() > 0);
+    }
+
+    private static int maintained(List<CountingCache<String>> caches) {
+        int count = 0;
+        for (CountingCache<String> cache : caches) {
+            if (cache.getMetrics().maintenanceCount() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
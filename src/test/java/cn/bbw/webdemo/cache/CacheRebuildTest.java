@@ -0,0 +1,59 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheRebuildTest {
+
+    @Test
+    void rebuildKeepsRemainingExpiry() throws Exception {
+        CountingCache<String> cache = CountingCache.of("CacheRebuildTest.expiry");
+        cache.setExpireAfterAccess(false);
+        cache.get("a");
+        Thread.sleep(50);
+        ICache<String, String> guava = CacheFactory.getInstance().getCache(cache);
+        long expireAt = guava.expiresAt("a");
+        assertTrue(expireAt > System.currentTimeMillis());
+
+        configure(cache.getName(), CacheEngine.CAFFEINE);
+        ICache<String, String> caffeine = CacheFactory.getInstance().getCache(cache);
+        assertNotSame(guava, caffeine);
+        assertTrue(caffeine.exist("a"));
+        assertEquals(expireAt, caffeine.expiresAt("a"), 20);
+
+        configure(cache.getName(), CacheEngine.GUAVA);
+        assertEquals(expireAt, CacheFactory.getInstance().getCache(cache).expiresAt("a"), 20);
+        assertEquals(1, cache.loads.get());
+    }
+
+    @Test
+    void expiredEntriesAreNotMigrated() throws Exception {
+        CountingCache<String> cache = CountingCache.of("CacheRebuildTest.expired");
+        cache.setExpireAfterAccess(false);
+        cache.setDuration(1);
+        cache.get("a");
+        Thread.sleep(1100);
+
+        configure(cache.getName(), CacheEngine.CAFFEINE);
+        assertFalse(CacheFactory.getInstance().getCache(cache).exist("a"));
+    }
+
+    @Test
+    void putWithPastDeadlineIsRejected() {
+        CountingCache<String> cache = CountingCache.of("CacheRebuildTest.past");
+        cache.setExpireAfterAccess(false);
+        ICache<String, String> engine = CacheFactory.getInstance().getCache(cache);
+        assertFalse(engine.put("a", "v", System.currentTimeMillis() - 1));
+        assertFalse(engine.exist("a"));
+    }
+
+    private static void configure(String name, CacheEngine engine) {
+        CacheSpec spec = new CacheSpec();
+        spec.setEngine(engine);
+        CacheFactory.getInstance().configure(name, spec);
+    }
+}
@@ -0,0 +1,66 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheRegistrationTest {
+
+    @Test
+    void registeredOnFirstUse() {
+        PreloadCache cache = new PreloadCache("CacheRegistrationTest.lazy", 0);
+        // 构造时不登记
+        assertNull(CacheFactory.getInstance().getBaseCache(cache.getName()));
+        assertEquals("v-a", cache.get("a"));
+        assertSame(cache, CacheFactory.getInstance().getBaseCache(cache.getName()));
+    }
+
+    @Test
+    void lateCacheIsWarmedUp() throws InterruptedException {
+        CacheFactory.getInstance().warmUp(1, 10, 5, TimeUnit.SECONDS);
+        PreloadCache cache = new PreloadCache("CacheRegistrationTest.late", 25);
+        assertEquals("v-x", cache.get("x"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getCacheOnly("k24") == null || cache.getCacheOnly("k0") == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "late cache not warmed up in 5s");
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals("v-k" + i, cache.getCacheOnly("k" + i));
+        }
+        assertEquals(26, cache.loads.get());
+    }
+
+    @Test
+    void fileCacheMissingFileIsNotCached() {
+        FileCache fileCache = FileCache.getInstance();
+        assertTrue(fileCache.preloadKeys().isEmpty());
+        assertNull(fileCache.without("CacheRegistrationTest-missing.pdf"));
+    }
+
+    private static final class PreloadCache extends CountingCache<String> {
+
+        private final List<String> preloadKeys = new ArrayList<>();
+
+        private PreloadCache(String name, int preload) {
+            super(name, CountingCache::value);
+            for (int i = 0; i < preload; i++) {
+                preloadKeys.add("k" + i);
+            }
+        }
+
+        @Override
+        public Collection<String> preloadKeys() {
+            return preloadKeys;
+        }
+    }
+}
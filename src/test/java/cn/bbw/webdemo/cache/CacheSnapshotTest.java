@@ -0,0 +1,105 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void exportAndLoadRoundTrip() throws IOException {
+        CountingCache<String> source = CountingCache.of("CacheSnapshotTest.source");
+        for (int i = 0; i < 1000; i++) {
+            source.get("k" + i);
+        }
+        Path file = dir.resolve("round-trip" + CacheSnapshot.SUFFIX);
+        assertEquals(1000, CacheSnapshot.export(source, file));
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+        CountingCache<String> target = CountingCache.of("CacheSnapshotTest.target");
+        assertEquals(1000, CacheSnapshot.load(target, file, 4));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v-k" + i, target.getCacheOnly("k" + i));
+        }
+        // 导入不调用数据源
+        assertEquals(0, target.loads.get());
+    }
+
+    @Test
+    void loadKeepsRemainingTtl() throws IOException, InterruptedException {
+        CountingCache<String> source = expireAfterWrite("CacheSnapshotTest.ttlSource");
+        source.get("old");
+        Thread.sleep(50);
+        source.get("new");
+        long oldExpireAt = source.getCache().expiresAt("old");
+        long newExpireAt = source.getCache().expiresAt("new");
+        assertTrue(oldExpireAt > 0 && oldExpireAt < newExpireAt);
+
+        Path file = dir.resolve("ttl" + CacheSnapshot.SUFFIX);
+        CacheSnapshot.export(source, file);
+        CountingCache<String> target = expireAfterWrite("CacheSnapshotTest.ttlTarget");
+        assertEquals(2, CacheSnapshot.load(target, file, 1));
+        // 导入后按导出时引擎中的过期时间过期, 不重新计时
+        assertEquals(oldExpireAt, target.getCache().expiresAt("old"));
+        assertEquals(newExpireAt, target.getCache().expiresAt("new"));
+    }
+
+    @Test
+    void truncatedSnapshotKeepsLoadedPart() throws IOException {
+        CountingCache<String> source = CountingCache.of("CacheSnapshotTest.truncatedSource");
+        for (int i = 0; i < 1000; i++) {
+            source.get("k" + i);
+        }
+        Path file = dir.resolve("truncated" + CacheSnapshot.SUFFIX);
+        CacheSnapshot.export(source, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        CountingCache<String> target = CountingCache.of("CacheSnapshotTest.truncatedTarget");
+        int loaded = CacheSnapshot.load(target, file, 2);
+        assertTrue(loaded > 0 && loaded < 1000, "loaded:" + loaded);
+        assertEquals(loaded, countLoaded(target));
+    }
+
+    @Test
+    void missingOrForeignFile() throws IOException {
+        CountingCache<String> target = CountingCache.of("CacheSnapshotTest.missing");
+        assertEquals(0, CacheSnapshot.load(target, dir.resolve("missing" + CacheSnapshot.SUFFIX), 1));
+
+        Path foreign = dir.resolve("foreign" + CacheSnapshot.SUFFIX);
+        Files.write(foreign, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> CacheSnapshot.load(target, foreign, 1));
+    }
+
+    private static CountingCache<String> expireAfterWrite(String name) {
+        CountingCache<String> cache = CountingCache.of(name);
+        cache.setExpireAfterAccess(false);
+        return cache;
+    }
+
+    private static int countLoaded(CountingCache<String> cache) {
+        int count = 0;
+        for (int i = 0; i < 1000; i++) {
+            String v = cache.getCacheOnly("k" + i);
+            if (v != null) {
+                assertEquals("v-k" + i, v);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,100 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheSpliteratorTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void parallelStreamSplitsAndSeesEveryEntry() {
+        Map<Integer, String> source = new ConcurrentHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            source.put(i, "v" + i);
+        }
+        CacheSpliterator<Integer, String, String> spliterator = new CacheSpliterator<>(source.entrySet().spliterator(), s -> s, null);
+        Spliterator<Map.Entry<Integer, String>> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        List<Integer> keys = new ArrayList<>();
+        prefix.forEachRemaining(entry -> keys.add(entry.getKey()));
+        spliterator.forEachRemaining(entry -> keys.add(entry.getKey()));
+        assertEquals(10_000, keys.size());
+        assertEquals(source.keySet(), new HashSet<>(keys));
+
+        Set<Integer> parallel = StreamSupport.stream(new CacheSpliterator<>(source.entrySet().spliterator(), s -> s, null), true)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        assertEquals(source.keySet(), parallel);
+    }
+
+    @Test
+    void nullAndExpiredAreSkippedBeforeFilter() {
+        Map<String, String> source = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            source.put("k" + i, i % 10 == 0 ? "expired" : "v" + i);
+        }
+        source.put("null", null);
+        AtomicInteger tested = new AtomicInteger();
+        // 映射为 null 的不调用 filter, 被过滤的不输出
+        CacheSpliterator<String, String, String> spliterator = new CacheSpliterator<>(source.entrySet().spliterator(),
+                s -> "expired".equals(s) ? null : s, (key, value) -> {
+                    tested.incrementAndGet();
+                    return key.endsWith("1");
+                });
+        List<String> keys = new ArrayList<>();
+        while (spliterator.tryAdvance(entry -> keys.add(entry.getKey()))) {
+            // 每次 tryAdvance 跳过不满足的缓存项, 输出下一个
+        }
+        assertEquals(90, tested.get());
+        assertEquals(10, keys.size());
+        assertTrue(keys.stream().allMatch(key -> key.endsWith("1")));
+        assertEquals(0, spliterator.characteristics() & Spliterator.SIZED);
+    }
+
+    @Test
+    void streamAndScanFilterInEngine() {
+        for (CacheEngine engine : ENGINES) {
+            CountingCache<String> cache = CountingCache.of("CacheSpliteratorTest.engine." + engine);
+            cache.setEngine(engine);
+            for (int i = 0; i < 1000; i++) {
+                cache.get("k" + i);
+            }
+            assertEquals(100, cache.stream((key, value) -> key.endsWith("0"), true).count(), engine.name());
+            assertEquals(1000, cache.stream(true).count(), engine.name());
+
+            List<String> scanned = new ArrayList<>();
+            cache.scan((key, value) -> value.endsWith("99"), (key, value) -> scanned.add(key));
+            assertEquals(10, scanned.size(), engine.name());
+        }
+    }
+
+    @Test
+    void expiredOffHeapEntriesAreSkipped() throws InterruptedException {
+        CountingCache<ByteBuffer> cache = CountingCache.offHeap("CacheSpliteratorTest.offHeap", 4L * 1024 * 1024);
+        cache.setDuration(1);
+        cache.setExpireAfterAccess(false);
+        cache.get("a");
+        assertEquals(1, cache.stream(false).count());
+        Thread.sleep(1100);
+        // 过期的缓存项还在索引中, 遍历时跳过
+        assertEquals(0, cache.stream(false).count());
+        assertEquals(0, cache.stream(true).count());
+    }
+}
@@ -0,0 +1,127 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Caffeine 引擎与 Guava 引擎行为一致, 每个用例对两个引擎执行同样的断言
+ */
+class CaffeineCacheTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void loadsOnceThenHits() {
+        for (CacheEngine engine : ENGINES) {
+            EngineCache cache = new EngineCache("CaffeineCacheTest.load." + engine, engine, 100, 60, true);
+            assertEquals("v-a", cache.get("a"));
+            assertEquals("v-a", cache.get("a"));
+            assertEquals(1, cache.loads.get(), engine.name());
+            assertEquals("v-a", cache.getCacheOnly("a"));
+            assertEquals(1, cache.size(), engine.name());
+        }
+    }
+
+    @Test
+    void putReplaceAndRemove() {
+        for (CacheEngine engine : ENGINES) {
+            EngineCache cache = new EngineCache("CaffeineCacheTest.write." + engine, engine, 100, 60, true);
+            assertTrue(cache.put("a", "put"));
+            assertEquals("put", cache.get("a"));
+            assertTrue(cache.replace("a", "replaced"));
+            assertEquals("replaced", cache.get("a"));
+            assertEquals(0, cache.loads.get(), engine.name());
+
+            cache.remove("a");
+            assertFalse(cache.keys().contains("a"), engine.name());
+            // 删除后再读从数据源加载
+            assertEquals("v-a", cache.get("a"));
+            assertEquals(1, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void evictsBeyondMaxSize() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            EngineCache cache = new EngineCache("CaffeineCacheTest.size." + engine, engine, 10, 60, true);
+            for (int i = 0; i < 100; i++) {
+                cache.get("k" + i);
+            }
+            awaitSize(cache, 10);
+            assertTrue(cache.size() <= 10, engine + " size:" + cache.size());
+            assertEquals(100, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void evictsBeyondMaxWeight() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            // 每个权重 10, 最多保留 10 个
+            EngineCache cache = new EngineCache("CaffeineCacheTest.weight." + engine, engine, 0, 60, true);
+            cache.setMaxWeight(100);
+            for (int i = 0; i < 50; i++) {
+                cache.get("k" + i);
+            }
+            awaitSize(cache, 10);
+            assertTrue(cache.size() <= 10, engine + " size:" + cache.size());
+
+            // 超过总权重的值照常返回, 但不会留在缓存中
+            cache.heavy = true;
+            assertEquals("v-big", cache.get("big"));
+            cache.heavy = false;
+            long deadline = System.currentTimeMillis() + 2000;
+            while (cache.keys().contains("big") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                cache.evictExpiredElements();
+            }
+            assertFalse(cache.keys().contains("big"), engine.name());
+        }
+    }
+
+    @Test
+    void expiresAfterWrite() throws InterruptedException {
+        EngineCache guava = new EngineCache("CaffeineCacheTest.expire." + CacheEngine.GUAVA, CacheEngine.GUAVA, 100, 1, false);
+        EngineCache caffeine = new EngineCache("CaffeineCacheTest.expire." + CacheEngine.CAFFEINE, CacheEngine.CAFFEINE, 100, 1, false);
+        guava.get("a");
+        caffeine.get("a");
+        Thread.sleep(1100);
+        for (EngineCache cache : new EngineCache[]{guava, caffeine}) {
+            assertFalse(cache.keys().contains("a"), cache.getName());
+            assertEquals("v-a", cache.get("a"));
+            assertEquals(2, cache.loads.get(), cache.getName());
+        }
+    }
+
+    /**
+     * Caffeine 的淘汰可能在维护线程中执行
+     */
+    private static void awaitSize(EngineCache cache, long size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        cache.evictExpiredElements();
+        while (cache.size() > size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            cache.evictExpiredElements();
+        }
+    }
+
+    private static final class EngineCache extends CountingCache<String> {
+
+        private volatile boolean heavy;
+
+        private EngineCache(String name, CacheEngine engine, int maxSize, int duration, boolean expireAfterAccess) {
+            super(name, CountingCache::value);
+            setEngine(engine);
+            setMaxSize(maxSize);
+            setDuration(duration);
+            setExpireAfterAccess(expireAfterAccess);
+        }
+
+        @Override
+        public int weigh(String key, String value) {
+            return heavy ? 1000 : 10;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cn.bbw.webdemo.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 测试用缓存, 数据源按 key 生成值并记录调用次数
+ */
+class CountingCache<T> extends BaseCache<String, T> {
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, T> source;
+
+    CountingCache(String name, Function<String, T> source) {
+        super(name, null, 60);
+        this.source = source;
+    }
+
+    /**
+     * 数据源返回 {@link #value(String)}
+     */
+    static CountingCache<String> of(String name) {
+        return new CountingCache<>(name, CountingCache::value);
+    }
+
+    /**
+     * OFF_HEAP 引擎, 数据源返回 key 的字节
+     */
+    static CountingCache<ByteBuffer> offHeap(String name, long maxWeight) {
+        CountingCache<ByteBuffer> cache = new CountingCache<>(name, key -> ByteBuffer.wrap(key.getBytes()));
+        cache.setEngine(CacheEngine.OFF_HEAP);
+        cache.setMaxWeight(maxWeight);
+        return cache;
+    }
+
+    static String value(String key) {
+        return "v-" + key;
+    }
+
+    @Override
+    public T without(String key) {
+        loads.incrementAndGet();
+        return source.apply(key);
+    }
+}
@@ -0,0 +1,57 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DiskStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenRebuildsIndexFromSegments() throws IOException {
+        DiskStore<String, String> store = open();
+        store.put("a", "v1", 0);
+        store.put("b", "v1", 0);
+        store.put("c", "v1", 0);
+        store.put("c", "v2", 0);
+        store.remove("b");
+        store.put("ttl", "v1", System.currentTimeMillis() + 60_000);
+        store.close();
+
+        DiskStore<String, String> reopened = open();
+        assertEquals("v1", reopened.get("a"));
+        // 墓碑记录保证删除的数据不会恢复, 同一个 key 以最后一条为准
+        assertNull(reopened.get("b"));
+        assertEquals("v2", reopened.get("c"));
+        assertEquals(3, reopened.size());
+
+        reopened.put("d", "v1", 0);
+        reopened.close();
+        DiskStore<String, String> again = open();
+        assertEquals("v1", again.get("d"));
+        assertEquals("v2", again.get("c"));
+    }
+
+    @Test
+    void expiredRecordIsDroppedOnRead() throws IOException, InterruptedException {
+        DiskStore<String, String> store = open();
+        store.put("k", "v", System.currentTimeMillis() + 50);
+        assertEquals("v", store.get("k"));
+        Thread.sleep(100);
+        assertNull(store.get("k"));
+        assertFalse(store.contains("k"));
+        store.close();
+    }
+
+    private DiskStore<String, String> open() throws IOException {
+        return new DiskStore<>(dir, JdkSerializer.getInstance(), JdkSerializer.getInstance());
+    }
+}
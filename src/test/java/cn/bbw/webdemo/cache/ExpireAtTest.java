@@ -0,0 +1,79 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BaseCache#expireAt} 按缓存项过期: Guava 引擎由 MemCache 记录截止时间在读取和 cleanUp 时淘汰, Caffeine 引擎由 Expiry 淘汰
+ */
+class ExpireAtTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void entryIsEvictedAtDeadlineWithoutRead() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            DeadlineCache cache = new DeadlineCache("ExpireAtTest.cleanUp." + engine, engine);
+            cache.deadline = System.currentTimeMillis() + 200;
+            cache.get("short");
+            cache.get("long");
+            assertEquals(cache.deadline, cache.getCache().expiresAt("short"), 20, engine.name());
+            // 不晚于 duration
+            assertTrue(cache.getCache().expiresAt("long") <= System.currentTimeMillis() + 60_000, engine.name());
+
+            Thread.sleep(300);
+            long deadline = System.currentTimeMillis() + 2000;
+            cache.evictExpiredElements();
+            while (cache.keys().contains("short") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                cache.evictExpiredElements();
+            }
+            // 到期后不经读取就被淘汰, 没有读取时重新加载
+            assertFalse(cache.keys().contains("short"), engine.name());
+            assertTrue(cache.keys().contains("long"), engine.name());
+            assertEquals(2, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void readAfterDeadlineLoadsAgain() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            DeadlineCache cache = new DeadlineCache("ExpireAtTest.read." + engine, engine);
+            cache.deadline = System.currentTimeMillis() + 300;
+            assertEquals("v-short", cache.get("short"));
+            assertEquals("v-short", cache.get("short"));
+            assertEquals(1, cache.loads.get(), engine.name());
+
+            Thread.sleep(400);
+            // 重新加载后按新的截止时间
+            cache.deadline = System.currentTimeMillis() + 60_000;
+            assertEquals("v-short", cache.get("short"));
+            assertEquals(2, cache.loads.get(), engine.name());
+            assertEquals(cache.deadline, cache.getCache().expiresAt("short"), 20, engine.name());
+        }
+    }
+
+    /**
+     * 以 short 开头的 key 在 deadline 过期, 其余只按 duration 过期
+     */
+    private static final class DeadlineCache extends CountingCache<String> {
+
+        private volatile long deadline;
+
+        private DeadlineCache(String name, CacheEngine engine) {
+            super(name, CountingCache::value);
+            setEngine(engine);
+            setExpireAfterAccess(false);
+            // 先创建引擎, 截止时间不受初始化耗时影响
+            getCache();
+        }
+
+        @Override
+        public long expireAt(String key, String value) {
+            return key.startsWith("short") ? deadline : 0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GetAllTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void hitsSkipLoaderAndMissesLoadInOneBatch() {
+        for (CacheEngine engine : ENGINES) {
+            BatchCache cache = new BatchCache("GetAllTest.batch." + engine, engine);
+            cache.get("a");
+            cache.get("b");
+            assertEquals(2, cache.loads.get(), engine.name());
+
+            Map<String, String> result = cache.getAll(Arrays.asList("a", "b", "c", "d"));
+            assertEquals(4, result.size(), engine.name());
+            assertEquals("v-c", result.get("c"));
+            // 命中的不加载, 未命中的一次批量加载, 不逐个调用 without
+            assertEquals(1, cache.batches.size(), engine.name());
+            assertEquals(set("c", "d"), new HashSet<>(cache.batches.get(0)), engine.name());
+            assertEquals(2, cache.loads.get(), engine.name());
+
+            // 全部命中时不调用 withoutAll
+            assertEquals(4, cache.getAll(Arrays.asList("a", "b", "c", "d")).size());
+            assertEquals(1, cache.batches.size(), engine.name());
+        }
+    }
+
+    @Test
+    void missingKeysAreAbsent() {
+        for (CacheEngine engine : ENGINES) {
+            BatchCache cache = new BatchCache("GetAllTest.missing." + engine, engine);
+            Map<String, String> result = cache.getAll(Arrays.asList("a", "missing-1", "b", "missing-2"));
+            assertEquals(set("a", "b"), result.keySet(), engine.name());
+            assertFalse(result.containsValue(null), engine.name());
+            assertFalse(cache.keys().contains("missing-1"), engine.name());
+
+            // 查不到的 key 记入负缓存, 再次批量获取不调用数据源
+            result = cache.getAll(Arrays.asList("a", "missing-1"));
+            assertEquals(1, result.size(), engine.name());
+            assertEquals(1, cache.batches.size(), engine.name());
+            assertTrue(cache.isNegative("missing-2"), engine.name());
+        }
+    }
+
+    /**
+     * 批量查询, 以 missing 开头的 key 查不到
+     */
+    private static final class BatchCache extends CountingCache<String> {
+
+        private final List<Collection<String>> batches = new CopyOnWriteArrayList<>();
+
+        private BatchCache(String name, CacheEngine engine) {
+            super(name, CountingCache::value);
+            setEngine(engine);
+        }
+
+        @Override
+        public Map<String, String> withoutAll(Collection<String> keys) {
+            batches.add(keys);
+            Map<String, String> result = new LinkedHashMap<>();
+            for (String key : keys) {
+                if (!key.startsWith("missing")) {
+                    result.put(key, value(key));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static Set<String> set(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+}
@@ -0,0 +1,94 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GetAsyncTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void missDoesNotBlockCaller() throws Exception {
+        for (CacheEngine engine : ENGINES) {
+            GatedCache cache = new GatedCache("GetAsyncTest.miss." + engine, engine);
+            CompletableFuture<String> future = cache.getAsync("a");
+            // 数据源还没有返回, 调用线程已经拿到 future
+            assertFalse(future.isDone(), engine.name());
+            cache.release.countDown();
+            assertEquals("v-a", future.get(2, TimeUnit.SECONDS));
+            assertEquals("v-a", cache.getAsync("a").getNow(null), engine.name());
+            assertEquals(1, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        for (CacheEngine engine : ENGINES) {
+            GatedCache cache = new GatedCache("GetAsyncTest.shared." + engine, engine);
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(cache.getAsync("a"));
+            }
+            cache.release.countDown();
+            for (CompletableFuture<String> future : futures) {
+                assertEquals("v-a", future.get(2, TimeUnit.SECONDS));
+            }
+            assertEquals(1, cache.loads.get(), engine.name());
+            assertEquals(9, cache.getMetrics().loadCoalescedCount(), engine.name());
+        }
+    }
+
+    @Test
+    void exceptionalCompletionPropagates() {
+        for (CacheEngine engine : ENGINES) {
+            GatedCache cache = new GatedCache("GetAsyncTest.failure." + engine, engine);
+            cache.fail = true;
+            cache.release.countDown();
+            CompletableFuture<String> future = cache.getAsync("a");
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException, engine + " cause:" + e.getCause());
+            // 异常不放入缓存
+            assertFalse(cache.keys().contains("a"), engine.name());
+            assertEquals(1, cache.getMetrics().loadFailureCount(), engine.name());
+        }
+    }
+
+    /**
+     * 数据源在 release 放开前阻塞
+     */
+    private static final class GatedCache extends CountingCache<String> {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile boolean fail;
+
+        private GatedCache(String name, CacheEngine engine) {
+            super(name, CountingCache::value);
+            setEngine(engine);
+        }
+
+        @Override
+        public String without(String key) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                throw new IllegalStateException("source down");
+            }
+            return super.without(key);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationBusTest {
+
+    private static final String SECRET = "bus-test-secret";
+
+    private static final CountingCache<String> CACHE = CountingCache.of("InvalidationBusTest");
+
+    private static final BaseCache<Object, String> OBJECT_CACHE = new BaseCache<Object, String>("InvalidationBusTest.object", null, 60) {
+        @Override
+        public String without(Object key) {
+            return String.valueOf(key);
+        }
+    };
+
+    private int localPort;
+
+    private int remotePort;
+
+    private InvalidationBus local;
+
+    private InvalidationBus remote;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        localPort = freePort();
+        remotePort = freePort();
+        CACHE.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (local != null) {
+            local.close();
+        }
+        if (remote != null) {
+            remote.close();
+        }
+    }
+
+    @Test
+    void signedMessageFromPeerRemovesKeys() throws Exception {
+        start(SECRET, SECRET, remotePort);
+        CACHE.get("a");
+        CACHE.get("b");
+        remote.publish(CACHE, "a");
+        remote.flush();
+
+        await(() -> local.stats().get("received") == 1L);
+        assertFalse(CACHE.exist("a"));
+        assertTrue(CACHE.exist("b"));
+    }
+
+    @Test
+    void messageWithWrongSecretIsRejected() throws Exception {
+        start(SECRET, "other-secret", remotePort);
+        CACHE.get("a");
+        remote.publish(CACHE, "a");
+        remote.publishClear(CACHE);
+        remote.flush();
+
+        await(() -> local.stats().get("rejected") == 1L);
+        assertTrue(CACHE.exist("a"));
+    }
+
+    @Test
+    void messageFromUnknownSourceIsDropped() throws Exception {
+        // local 只接受来自另一个端口的报文
+        start(SECRET, SECRET, freePort());
+        CACHE.get("a");
+        remote.publishClear(CACHE);
+        remote.flush();
+
+        Thread.sleep(200);
+        assertTrue(CACHE.exist("a"));
+        assertEquals(0L, local.stats().get("rejected"));
+    }
+
+    @Test
+    void keyCodecRoundTrip() throws IOException {
+        for (Object key : Arrays.asList("key", 42L, 7, Arrays.asList("a", 1L, Collections.singletonList(2)))) {
+            byte[] data = InvalidationKeyCodec.encode(OBJECT_CACHE, key);
+            assertEquals(key, InvalidationKeyCodec.decode(OBJECT_CACHE, data));
+        }
+    }
+
+    @Test
+    void keyCodecRejectsJdkSerialization() throws IOException {
+        assertNull(InvalidationKeyCodec.encode(OBJECT_CACHE, new StringBuilder("key")));
+        byte[] serialized = JdkSerializer.getInstance().serialize("key");
+        byte[] data = new byte[serialized.length + 1];
+        data[0] = 5;
+        System.arraycopy(serialized, 0, data, 1, serialized.length);
+        assertThrows(IOException.class, () -> InvalidationKeyCodec.decode(CACHE, data));
+        assertThrows(IOException.class, () -> InvalidationKeyCodec.decode(CACHE, new byte[]{9}));
+    }
+
+    @Test
+    void keyCodecRejectsOversizedLength() {
+        byte[] data = {4, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertThrows(IOException.class, () -> InvalidationKeyCodec.decode(CACHE, data));
+    }
+
+    @Test
+    void customSerializerIsUsedForOtherKeyTypes() throws IOException {
+        BaseCache<Object, String> cache = new BaseCache<Object, String>("InvalidationBusTest.custom", null, 60) {
+            @Override
+            public String without(Object key) {
+                return String.valueOf(key);
+            }
+        };
+        cache.setKeySerializer(new CacheSerializer<Object>() {
+            @Override
+            public byte[] serialize(Object o) {
+                return o.toString().getBytes();
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return new String(bytes);
+            }
+        });
+        byte[] data = InvalidationKeyCodec.encode(cache, new StringBuilder("k"));
+        assertArrayEquals(new byte[]{5, 'k'}, data);
+        assertEquals("k", InvalidationKeyCodec.decode(cache, data));
+    }
+
+    private void start(String localSecret, String remoteSecret, int acceptedPort) throws IOException {
+        local = new InvalidationBus(new UdpTransport("127.0.0.1", localPort,
+                UdpTransport.parsePeers("127.0.0.1:" + acceptedPort)), 10, 512, localSecret);
+        remote = new InvalidationBus(new UdpTransport("127.0.0.1", remotePort,
+                UdpTransport.parsePeers("127.0.0.1:" + localPort)), 10, 512, remoteSecret);
+        local.start();
+        remote.start();
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in 2s");
+            Thread.sleep(10);
+        }
+    }
+}
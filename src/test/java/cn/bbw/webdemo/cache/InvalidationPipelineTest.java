@@ -0,0 +1,91 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationPipelineTest {
+
+    @Test
+    void flushWaitsForSubmittedAndCascadedInvalidations() throws InterruptedException {
+        InvalidationPipeline pipeline = new InvalidationPipeline(2);
+        RecordingCache grandChild = new RecordingCache("InvalidationPipelineTest.grandChild", null, null);
+        RecordingCache child = new RecordingCache("InvalidationPipelineTest.child", pipeline, grandChild);
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(child, "k" + i);
+        }
+        assertTrue(pipeline.flush(5, TimeUnit.SECONDS));
+        assertEquals(0, pipeline.pending());
+        assertEquals(100, child.removed.size());
+        // 子缓存删除时级联提交的失效也已执行
+        assertEquals(100, grandChild.removed.size());
+    }
+
+    @Test
+    void duplicatesInOneBatchRunOnce() throws InterruptedException {
+        InvalidationPipeline pipeline = new InvalidationPipeline(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingCache blocker = new RecordingCache("InvalidationPipelineTest.blocker", null, null) {
+            @Override
+            void removeLocal(String key) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.removeLocal(key);
+            }
+        };
+        RecordingCache target = new RecordingCache("InvalidationPipelineTest.dedup", null, null);
+        pipeline.submit(blocker, "k");
+        assertTrue(blocked.await(2, TimeUnit.SECONDS));
+        // 线程阻塞期间积压的失效在下一批中合并
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(target, "a");
+            pipeline.submit(target, "b");
+        }
+        // 阻塞中的一个还没有执行完
+        assertEquals(21, pipeline.pending());
+        assertFalse(pipeline.flush(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+
+        assertTrue(pipeline.flush(5, TimeUnit.SECONDS));
+        assertEquals(2, target.removed.size());
+        assertTrue(target.removed.contains("a") && target.removed.contains("b"));
+    }
+
+    private static class RecordingCache extends BaseCache<String, String> {
+
+        private final List<String> removed = new CopyOnWriteArrayList<>();
+        private final InvalidationPipeline pipeline;
+        private final RecordingCache child;
+
+        private RecordingCache(String name, InvalidationPipeline pipeline, RecordingCache child) {
+            super(name, null, 60);
+            this.pipeline = pipeline;
+            this.child = child;
+        }
+
+        @Override
+        public String without(String key) {
+            return key;
+        }
+
+        @Override
+        void removeLocal(String key) {
+            removed.add(key);
+            if (child != null) {
+                pipeline.submit(child, key);
+            }
+        }
+    }
+}
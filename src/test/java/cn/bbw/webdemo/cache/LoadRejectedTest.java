@@ -0,0 +1,146 @@
+package cn.bbw.webdemo.cache;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadRejectedTest {
+
+    @Test
+    void timeoutDoesNotBackOff() {
+        TestCache cache = new TestCache("LoadRejectedTest.load");
+        CountDownLatch release = cache.block();
+        assertThrows(LoadRejectedException.class, () -> cache.loadThrough("k"));
+        release.countDown();
+        assertFalse(cache.isNegative("k"));
+        assertEquals("v-k", cache.loadThrough("k"));
+    }
+
+    @Test
+    void batchTimeoutDoesNotBackOff() {
+        TestCache cache = new TestCache("LoadRejectedTest.loadAll");
+        CountDownLatch release = cache.block();
+        assertThrows(LoadRejectedException.class, () -> cache.loadAllThrough(Collections.singletonList("k")));
+        release.countDown();
+        assertFalse(cache.isNegative("k"));
+        assertEquals(Collections.singletonMap("k", "v-k"), cache.loadAllThrough(Collections.singletonList("k")));
+    }
+
+    @Test
+    void asyncRejectionDoesNotBackOff() {
+        TestCache cache = new TestCache("LoadRejectedTest.async");
+        cache.rejectAsync = true;
+        CompletionException e = assertThrows(CompletionException.class, () -> cache.loadAsyncThrough("k").join());
+        assertTrue(e.getCause() instanceof LoadRejectedException);
+        assertFalse(cache.isNegative("k"));
+        assertEquals(0, cache.getMetrics().loadFailureCount());
+
+        cache.rejectAsync = false;
+        assertEquals("v-k", cache.loadAsyncThrough("k").join());
+    }
+
+    @Test
+    void sourceFailureStillBacksOff() {
+        TestCache cache = new TestCache("LoadRejectedTest.failure");
+        cache.fail = true;
+        assertThrows(IllegalStateException.class, () -> cache.loadThrough("k"));
+        cache.fail = false;
+        // 退避期内不调用数据源
+        assertNull(cache.loadThrough("k"));
+    }
+
+    @Test
+    void wrappedRejectionIsNotLoggedAsError() {
+        assertRejectionLoggedAtDebug(CacheEngine.GUAVA, MemCache.class);
+        assertRejectionLoggedAtDebug(CacheEngine.CAFFEINE, CaffeineCache.class);
+    }
+
+    private static void assertRejectionLoggedAtDebug(CacheEngine engine, Class<?> engineClass) {
+        Logger logger = (Logger) LoggerFactory.getLogger(engineClass);
+        Level level = logger.getLevel();
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        logger.setLevel(Level.DEBUG);
+        try {
+            TestCache cache = new TestCache("LoadRejectedTest.log." + engine);
+            cache.setEngine(engine);
+            CountDownLatch release = cache.block();
+            // 引擎中拿到的是包在 CompletionException 中的拒绝
+            assertNull(cache.get("k"));
+            release.countDown();
+            assertTrue(appender.list.stream().noneMatch(event -> event.getLevel() == Level.ERROR), engine.name());
+            assertTrue(appender.list.stream().anyMatch(event -> event.getLevel() == Level.DEBUG
+                    && event.getFormattedMessage().contains("rejected:cache load timeout")), engine.name());
+        } finally {
+            logger.detachAppender(appender);
+            logger.setLevel(level);
+        }
+    }
+
+    private static final class TestCache extends CountingCache<String> {
+
+        private volatile CountDownLatch release;
+        private volatile boolean rejectAsync;
+        private volatile boolean fail;
+
+        private TestCache(String name) {
+            super(name, CountingCache::value);
+            setLoaderThreads(1);
+            setLoadTimeoutMillis(50);
+            setFailureBackoffMillis(60_000);
+        }
+
+        /**
+         * 下一次加载阻塞到返回的 latch 放开, 调用线程等待超时
+         */
+        private CountDownLatch block() {
+            CountDownLatch latch = new CountDownLatch(1);
+            release = latch;
+            return latch;
+        }
+
+        @Override
+        public String without(String key) {
+            CountDownLatch latch = release;
+            if (latch != null) {
+                release = null;
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (fail) {
+                throw new IllegalStateException("source down");
+            }
+            return super.without(key);
+        }
+
+        @Override
+        public CompletableFuture<String> withoutAsync(String key, Executor executor) {
+            if (!rejectAsync) {
+                return super.withoutAsync(key, executor);
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(new CompletionException(new LoadRejectedException("rejected")));
+            return future;
+        }
+    }
+}
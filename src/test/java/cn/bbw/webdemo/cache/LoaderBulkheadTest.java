@@ -0,0 +1,79 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoaderBulkheadTest {
+
+    @Test
+    void rejectsWhenThreadsAndQueueAreFull() throws InterruptedException {
+        CacheMetrics metrics = new CacheMetrics();
+        LoaderBulkhead bulkhead = new LoaderBulkhead("LoaderBulkheadTest.reject", 1, 1, 0, metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // 一个执行中, 一个排队
+            for (int i = 0; i < 2; i++) {
+                callers.execute(() -> bulkhead.call(() -> {
+                    release.await();
+                    return "v";
+                }));
+            }
+            long deadline = System.currentTimeMillis() + 2000;
+            while (bulkhead.active() + bulkhead.queued() < 2) {
+                assertTrue(System.currentTimeMillis() < deadline, "loads not started in 2s");
+                Thread.sleep(10);
+            }
+            assertThrows(LoadRejectedException.class, () -> bulkhead.call(() -> "v"));
+            assertEquals(1, metrics.loadRejectedCount());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+            assertTrue(callers.awaitTermination(2, TimeUnit.SECONDS));
+            bulkhead.shutdown();
+        }
+        assertEquals(0, bulkhead.queued());
+    }
+
+    @Test
+    void callerStopsWaitingAfterTimeout() {
+        CacheMetrics metrics = new CacheMetrics();
+        LoaderBulkhead bulkhead = new LoaderBulkhead("LoaderBulkheadTest.timeout", 1, 1, 50, metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            long start = System.nanoTime();
+            assertThrows(LoadRejectedException.class, () -> bulkhead.call(() -> {
+                release.await();
+                return "v";
+            }));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            assertEquals(1, metrics.loadTimeoutCount());
+        } finally {
+            release.countDown();
+            bulkhead.shutdown();
+        }
+    }
+
+    @Test
+    void loaderExceptionIsRethrown() {
+        LoaderBulkhead bulkhead = new LoaderBulkhead("LoaderBulkheadTest.error", 1, 1, 0, new CacheMetrics());
+        IllegalStateException error = new IllegalStateException("boom");
+        try {
+            assertSame(error, assertThrows(IllegalStateException.class, () -> bulkhead.call(() -> {
+                throw error;
+            })));
+            assertEquals("v", bulkhead.call(() -> "v"));
+        } finally {
+            bulkhead.shutdown();
+        }
+    }
+}
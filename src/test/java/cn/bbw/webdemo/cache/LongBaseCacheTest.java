@@ -0,0 +1,58 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongBaseCacheTest {
+
+    @Test
+    void fastPathRecordsHotKeys() throws InterruptedException {
+        IdCache cache = new IdCache("LongBaseCacheTest.hotKeys");
+        cache.setHotKeyTopN(2);
+        readFor(cache, HotKeyDetector.REFRESH_MILLIS + 200);
+        assertTrue(cache.getHotKeys().contains(1L), "hotKeys:" + cache.getHotKeys());
+    }
+
+    @Test
+    void fastPathUsesNearCache() throws InterruptedException {
+        IdCache cache = new IdCache("LongBaseCacheTest.near");
+        cache.setHotKeyTopN(2);
+        cache.setNearCache(true);
+        readFor(cache, HotKeyDetector.REFRESH_MILLIS + 200);
+        assertTrue(cache.getMetrics().nearHitCount() > 0, "metrics:" + cache.getMetrics());
+        assertEquals(1, cache.loads.get());
+
+        // 写入后近缓存失效, 不能读到旧值
+        cache.put(1L, "new");
+        assertEquals("new", cache.get(1L));
+    }
+
+    private static void readFor(IdCache cache, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("v-1", cache.get(1L));
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static final class IdCache extends LongBaseCache<String> {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private IdCache(String name) {
+            super(name, null, 60);
+        }
+
+        @Override
+        public String without(long id) {
+            loads.incrementAndGet();
+            return "v-" + id;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongKeyCacheTest {
+
+    /**
+     * 初始表长
+     */
+    private static final int TABLE_SIZE = 16;
+
+    @Test
+    void deleteBackShiftsAcrossTableEnd() {
+        LongKeyCache<String> cache = engine(new IdCache("LongKeyCacheTest.wrap", 1024));
+        // 同一分段内落在表尾的 key, 探测链从最后一个槽位绕回表头
+        List<Long> tail = keys(0, TABLE_SIZE - 1, 3, 0);
+        long head = keys(0, 0, 1, 1_000_000).get(0);
+        List<Long> all = new ArrayList<>(tail);
+        all.add(head);
+        all.forEach(key -> assertTrue(cache.put(key, value(key))));
+
+        cache.remove(tail.get(0));
+        assertNull(cache.getCacheOnly(tail.get(0).longValue()));
+        for (long key : all.subList(1, all.size())) {
+            assertEquals(value(key), cache.getCacheOnly(key));
+        }
+
+        cache.remove(head);
+        cache.remove(tail.get(1));
+        assertEquals(value(tail.get(2)), cache.getCacheOnly(tail.get(2).longValue()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void resizeKeepsAllEntries() {
+        LongKeyCache<String> cache = engine(new IdCache("LongKeyCacheTest.resize", 100_000));
+        for (long key = 0; key < 10_000; key++) {
+            cache.put(key, value(key));
+        }
+        assertEquals(10_000, cache.size());
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(value(key), cache.getCacheOnly(key));
+        }
+        for (long key = 0; key < 10_000; key += 2) {
+            cache.remove(key);
+        }
+        assertEquals(5_000, cache.size());
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key % 2 == 0 ? null : value(key), cache.getCacheOnly(key));
+        }
+    }
+
+    @Test
+    void clockEvictsUnreferencedEntry() {
+        // 每段最多 4 个
+        LongKeyCache<String> cache = engine(new IdCache("LongKeyCacheTest.clock", 16 * 4));
+        List<Long> keys = keys(3, -1, 5, 0);
+        for (long key : keys.subList(0, 4)) {
+            cache.put(key, value(key));
+        }
+        // 读过的在第一轮扫描中只清除标记, 未读过的被淘汰
+        for (long key : keys.subList(0, 3)) {
+            assertEquals(value(key), cache.get(key));
+        }
+        cache.put(keys.get(4), value(keys.get(4)));
+
+        assertNull(cache.getCacheOnly(keys.get(3).longValue()));
+        for (long key : keys.subList(0, 3)) {
+            assertEquals(value(key), cache.getCacheOnly(key));
+        }
+        assertEquals(value(keys.get(4)), cache.getCacheOnly(keys.get(4).longValue()));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void weightedEvictionKeepsSegmentWithinLimit() {
+        // 每段最多权重 10, 每个权重 3
+        WeightedIdCache idCache = new WeightedIdCache("LongKeyCacheTest.weight", 16 * 10);
+        LongKeyCache<String> cache = engine(idCache);
+        List<Long> keys = keys(5, -1, 5, 0);
+        keys.forEach(key -> assertTrue(cache.put(key, value(key))));
+        assertEquals(3, cache.size());
+        assertEquals(3, keys.stream().filter(key -> cache.getCacheOnly(key.longValue()) != null).count());
+    }
+
+    @Test
+    void entryHeavierThanSegmentIsNotCached() {
+        WeightedIdCache idCache = new WeightedIdCache("LongKeyCacheTest.heavy", 16 * 10);
+        LongKeyCache<String> cache = engine(idCache);
+        List<Long> keys = keys(6, -1, 4, 0);
+        for (long key : keys.subList(0, 3)) {
+            cache.put(key, value(key));
+        }
+        // 新 key: 不缓存, 也不淘汰同段的其他数据
+        long heavy = keys.get(3);
+        idCache.heavy.add(heavy);
+        assertFalse(cache.put(heavy, value(heavy)));
+        assertEquals(value(heavy), cache.get(heavy));
+        assertNull(cache.getCacheOnly(heavy));
+        assertEquals(3, cache.size());
+
+        // 已有的 key 更新为超重的值: 删除旧值, 不缓存新值
+        long replaced = keys.get(0);
+        idCache.heavy.add(replaced);
+        assertFalse(cache.put(replaced, "v-new"));
+        assertNull(cache.getCacheOnly(replaced));
+        assertEquals(2, cache.size());
+        for (long key : keys.subList(1, 3)) {
+            assertEquals(value(key), cache.getCacheOnly(key));
+        }
+    }
+
+    @Test
+    void concurrentReadsSeeOnlyWrittenValues() throws InterruptedException {
+        IdCache idCache = new IdCache("LongKeyCacheTest.concurrent", 512);
+        LongKeyCache<String> cache = engine(idCache);
+        int threads = 8;
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int n = 0; n < 200_000; n++) {
+                        long key = random.nextInt(2048);
+                        int op = random.nextInt(10);
+                        if (op == 0) {
+                            cache.remove(key);
+                        } else if (op < 3) {
+                            cache.put(key, value(key));
+                        } else {
+                            String v = op < 6 ? cache.getCacheOnly(key) : cache.get(key);
+                            if (v != null && !v.equals(value(key))) {
+                                errors.add("key:" + key + ", value:" + v);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e.toString());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(errors.isEmpty(), () -> "errors:" + errors.size() + ", first:" + errors.peek());
+
+        // 每段按 512 / 16 个淘汰
+        assertTrue(cache.size() <= 512, "size:" + cache.size());
+        for (long key : cache.keys()) {
+            assertEquals(value(key), cache.getCacheOnly(key));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LongKeyCache<String> engine(LongBaseCache<String> cache) {
+        return (LongKeyCache<String>) (ICache<Long, String>) CacheFactory.getInstance().getCache(cache);
+    }
+
+    private static String value(long key) {
+        return "v-" + key;
+    }
+
+    /**
+     * 按 {@link LongKeyCache} 的 hash 找出落在同一分段的 key
+     *
+     * @param segment 分段下标
+     * @param slot    初始表中的槽位, -1 表示不限
+     * @param count   个数
+     * @param from    从哪个 key 开始找
+     */
+    private static List<Long> keys(int segment, int slot, int count, long from) {
+        List<Long> keys = new ArrayList<>(count);
+        for (long key = from; keys.size() < count; key++) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            int hash = (int) (mixed ^ (mixed >>> 32));
+            if ((int) (mixed >>> 60) == segment && (slot < 0 || (hash & (TABLE_SIZE - 1)) == slot)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static final class WeightedIdCache extends LongBaseCache<String> {
+
+        /**
+         * 权重 11 的 key, 超过单个分段的容量, 其余权重为 3
+         */
+        private final Set<Long> heavy = ConcurrentHashMap.newKeySet();
+
+        private WeightedIdCache(String name, long maxWeight) {
+            super(name, null, 60);
+            setMaxWeight(maxWeight);
+        }
+
+        @Override
+        public String without(long id) {
+            return value(id);
+        }
+
+        @Override
+        public int weigh(Long key, String value) {
+            return heavy.contains(key) ? 11 : 3;
+        }
+    }
+
+    private static final class IdCache extends LongBaseCache<String> {
+
+        private IdCache(String name, int maxSize) {
+            super(name, null, maxSize, 60);
+        }
+
+        @Override
+        public String without(long id) {
+            return value(id);
+        }
+    }
+}
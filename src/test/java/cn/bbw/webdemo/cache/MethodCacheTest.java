@@ -0,0 +1,124 @@
+package cn.bbw.webdemo.cache;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MethodCacheTest {
+
+    @Test
+    void loaderThreadsAndFailureBackoffAreRejected() {
+        MethodCache cache = new MethodCache("MethodCacheTest.settings", "", 100, 60);
+        assertThrows(IllegalArgumentException.class, () -> cache.setLoaderThreads(2));
+        assertThrows(IllegalArgumentException.class, () -> cache.setFailureBackoffMillis(1000));
+        assertDoesNotThrow(() -> cache.setLoaderThreads(0));
+        assertDoesNotThrow(() -> cache.setFailureBackoffMillis(0));
+
+        CacheSpec spec = new CacheSpec();
+        spec.setLoaderThreads(2);
+        assertThrows(IllegalArgumentException.class, () -> spec.applyTo(cache));
+    }
+
+    @Test
+    void methodErrorIsThrownToCaller() {
+        MethodCache cache = new MethodCache("MethodCacheTest.error", "", 100, 60);
+        IllegalStateException error = new IllegalStateException("boom");
+        Throwable thrown = assertThrows(IllegalStateException.class, () -> cache.get("k", new Invocation(() -> {
+            throw error;
+        })));
+        assertSame(error, thrown);
+    }
+
+    @Test
+    void callerJoiningFailedLoadGetsMethodError() throws Exception {
+        MethodCache cache = new MethodCache("MethodCacheTest.joined", "", 100, 60);
+        IllegalStateException error = new IllegalStateException("boom");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invoked = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> get(cache, "k", new Invocation(() -> {
+                invoked.incrementAndGet();
+                started.countDown();
+                release.await();
+                throw error;
+            })));
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+            Future<Object> joiner = executor.submit(() -> get(cache, "k", new Invocation(() -> {
+                invoked.incrementAndGet();
+                return "v";
+            })));
+            // 等待第二个调用进入在途的加载
+            Thread.sleep(200);
+            release.countDown();
+
+            assertSame(error, assertThrows(ExecutionException.class, () -> leader.get(2, TimeUnit.SECONDS)).getCause());
+            assertSame(error, assertThrows(ExecutionException.class, () -> joiner.get(2, TimeUnit.SECONDS)).getCause());
+            assertEquals(1, invoked.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("v", get(cache, "k", new Invocation(() -> "v")));
+    }
+
+    private static Object get(MethodCache cache, Object key, MethodInvocation invocation) throws Exception {
+        try {
+            return cache.get(key, invocation);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Invocation implements MethodInvocation {
+
+        private final Callable<Object> body;
+
+        private Invocation(Callable<Object> body) {
+            this.body = body;
+        }
+
+        @Override
+        public Object proceed() throws Throwable {
+            return body.call();
+        }
+
+        @Override
+        public Method getMethod() {
+            return null;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return new Object[0];
+        }
+
+        @Override
+        public Object getThis() {
+            return null;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NegativeCacheTest {
+
+    private static final CacheEngine[] ENGINES = {CacheEngine.GUAVA, CacheEngine.CAFFEINE};
+
+    @Test
+    void deadlineAndTtl() throws InterruptedException {
+        NegativeCache<String> negatives = new NegativeCache<>(100, 1000);
+        negatives.put("a", 50);
+        negatives.put("b", 0);
+        assertTrue(negatives.contains("a"));
+        assertFalse(negatives.contains("b"));
+        Thread.sleep(80);
+        assertFalse(negatives.contains("a"));
+        assertEquals(0, negatives.size());
+    }
+
+    @Test
+    void notFoundIsServedWithoutLoading() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            SourceCache cache = new SourceCache("NegativeCacheTest.notFound." + engine, engine);
+            cache.setNegativeSeconds(1);
+            assertNull(cache.get("a"));
+            // 有效期内数据源有了数据也返回 null, 不调用 without
+            cache.source.put("a", "v");
+            assertNull(cache.get("a"));
+            assertEquals(1, cache.loads.get(), engine.name());
+            assertTrue(cache.getMetrics().negativeHitCount() > 0, engine.name());
+
+            Thread.sleep(1100);
+            assertEquals("v", cache.get("a"));
+            assertEquals(2, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void failureIsNotCachedByDefault() {
+        for (CacheEngine engine : ENGINES) {
+            SourceCache cache = new SourceCache("NegativeCacheTest.failure." + engine, engine);
+            cache.source.put("a", "v");
+            cache.fail = true;
+            assertNull(cache.get("a"));
+            cache.fail = false;
+            assertEquals("v", cache.get("a"));
+            assertEquals(2, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void failureBacksOffForFailureBackoffMillis() throws InterruptedException {
+        for (CacheEngine engine : ENGINES) {
+            SourceCache cache = new SourceCache("NegativeCacheTest.backoff." + engine, engine);
+            cache.setFailureBackoffMillis(100);
+            cache.source.put("a", "v");
+            cache.fail = true;
+            assertNull(cache.get("a"));
+            cache.fail = false;
+            assertNull(cache.get("a"));
+            assertEquals(1, cache.loads.get(), engine.name());
+
+            Thread.sleep(150);
+            assertEquals("v", cache.get("a"));
+            assertEquals(2, cache.loads.get(), engine.name());
+        }
+    }
+
+    @Test
+    void putAndRemoveClearMarker() {
+        for (CacheEngine engine : ENGINES) {
+            SourceCache cache = new SourceCache("NegativeCacheTest.clear." + engine, engine);
+            assertNull(cache.get("a"));
+            assertNull(cache.get("b"));
+            assertTrue(cache.isNegative("a") && cache.isNegative("b"), engine.name());
+
+            cache.put("a", "put");
+            assertFalse(cache.isNegative("a"), engine.name());
+            assertEquals("put", cache.get("a"));
+
+            cache.source.put("b", "v");
+            cache.remove("b");
+            assertFalse(cache.isNegative("b"), engine.name());
+            assertEquals("v", cache.get("b"));
+            assertEquals(3, cache.loads.get(), engine.name());
+        }
+    }
+
+    private static final class SourceCache extends BaseCache<String, String> {
+
+        private final Map<String, String> source = new ConcurrentHashMap<>();
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private volatile boolean fail;
+
+        private SourceCache(String name, CacheEngine engine) {
+            super(name, null, 60);
+            setEngine(engine);
+        }
+
+        @Override
+        public String without(String key) {
+            loads.incrementAndGet();
+            if (fail) {
+                throw new IllegalStateException("source down");
+            }
+            return source.get(key);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapCacheTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void oversizedValueRemovesOldValue() {
+        OffHeapCache<String> cache = new OffHeapCache<>(CountingCache.offHeap("OffHeapCacheTest.oversized", 4 * MB));
+        assertTrue(cache.put("a", ByteBuffer.wrap(new byte[16])));
+        assertFalse(cache.put("a", ByteBuffer.wrap(new byte[2 * MB])));
+        assertNull(cache.getCacheOnly("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void retiredSlabsAreRecycledWithoutGc() {
+        // 4MB 切分为 4 个 1MB 的 slab, 最多再多分配 2 个
+        OffHeapCache<String> cache = new OffHeapCache<>(CountingCache.offHeap("OffHeapCacheTest.recycled", 4 * MB));
+        List<ByteBuffer> held = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            assertTrue(cache.put("k" + i, ByteBuffer.wrap(fill(MB / 2, (byte) i))));
+            // 读取返回副本, 持有不影响 slab 复用
+            held.add(cache.getCacheOnly("k" + i));
+        }
+        assertTrue(cache.allocatedSlabs() <= 6, "allocated:" + cache.allocatedSlabs());
+        // slab 复用后调用方持有的数据不变
+        for (int i = 0; i < held.size(); i++) {
+            ByteBuffer value = held.get(i);
+            assertEquals(MB / 2, value.remaining());
+            assertEquals((byte) i, value.get(0));
+            assertEquals((byte) i, value.get(MB / 2 - 1));
+        }
+        assertEquals((byte) 39, cache.getCacheOnly("k39").get(0));
+    }
+
+    @Test
+    void maxValueBytesSizesSlabs() {
+        CountingCache<ByteBuffer> base = CountingCache.offHeap("OffHeapCacheTest.large", 8 * MB);
+        base.setMaxValueBytes(3 * MB);
+        OffHeapCache<String> cache = new OffHeapCache<>(base);
+        assertTrue(cache.put("large", ByteBuffer.wrap(fill(3 * MB, (byte) 7))));
+        assertEquals(3 * MB, cache.getCacheOnly("large").remaining());
+        assertFalse(cache.put("larger", ByteBuffer.wrap(new byte[3 * MB + 1])));
+    }
+
+    @Test
+    void concurrentReadsNeverSeeRecycledData() throws InterruptedException {
+        // 2MB 只有 2 个 slab, 写入不断淘汰和复用 slab
+        OffHeapCache<String> cache = new OffHeapCache<>(CountingCache.offHeap("OffHeapCacheTest.concurrent", 2 * MB));
+        AtomicBoolean torn = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            boolean writer = t < 2;
+            threads.add(new Thread(() -> {
+                Random random = new Random();
+                for (int i = 0; i < 5000 && !torn.get(); i++) {
+                    int n = random.nextInt(100);
+                    if (writer) {
+                        cache.put("k" + n, ByteBuffer.wrap(fill(64 * 1024, (byte) n)));
+                        continue;
+                    }
+                    ByteBuffer value = cache.getCacheOnly("k" + n);
+                    if (value == null) {
+                        continue;
+                    }
+                    for (int j = 0; j < value.remaining(); j += 1024) {
+                        if (value.get(j) != (byte) n) {
+                            torn.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+        assertFalse(torn.get());
+        assertTrue(cache.allocatedSlabs() <= 4, "allocated:" + cache.allocatedSlabs());
+    }
+
+    @Test
+    void rolloverKeepsReadEntriesAndEvictsOthers() {
+        // 4MB 切分为 4 个 1MB 的 slab, 写满后淘汰最旧的 slab
+        OffHeapCache<String> cache = new OffHeapCache<>(CountingCache.offHeap("OffHeapCacheTest.rollover", 4 * MB));
+        assertTrue(cache.put("read", ByteBuffer.wrap(fill(64 * 1024, (byte) 1))));
+        assertTrue(cache.put("unread", ByteBuffer.wrap(fill(64 * 1024, (byte) 2))));
+        assertNotNull(cache.getCacheOnly("read"));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(cache.put("k" + i, ByteBuffer.wrap(fill(MB / 4, (byte) i))));
+        }
+        // 读过的数据在淘汰时复制到新 slab
+        ByteBuffer read = cache.getCacheOnly("read");
+        assertNotNull(read);
+        assertEquals(64 * 1024, read.remaining());
+        assertEquals(1, read.get(100));
+        assertNull(cache.getCacheOnly("unread"));
+        assertNull(cache.getCacheOnly("k0"));
+        assertEquals(19, cache.getCacheOnly("k19").get(0));
+        assertTrue(cache.size() < 22, "size:" + cache.size());
+    }
+
+    @Test
+    void compressedValuesRoundTrip() {
+        CountingCache<ByteBuffer> base = CountingCache.offHeap("OffHeapCacheTest.compress", 4 * MB);
+        base.setCodec(DeflateCodec.getInstance());
+        base.setCompressThreshold(1024);
+        OffHeapCache<String> cache = new OffHeapCache<>(base);
+        byte[] text = fill(64 * 1024, (byte) 'a');
+        byte[] random = new byte[64 * 1024];
+        new Random(1).nextBytes(random);
+        byte[] small = fill(100, (byte) 'b');
+        assertTrue(cache.put("text", ByteBuffer.wrap(text)));
+        assertTrue(cache.put("random", ByteBuffer.wrap(random)));
+        assertTrue(cache.put("small", ByteBuffer.wrap(small)));
+
+        assertEquals(ByteBuffer.wrap(text), cache.getCacheOnly("text"));
+        assertEquals(ByteBuffer.wrap(random), cache.getCacheOnly("random"));
+        assertEquals(ByteBuffer.wrap(small), cache.getCacheOnly("small"));
+        // 低于阈值的不压缩, 压缩节省不到 1/8 的按原样存放
+        assertEquals(2, base.getMetrics().compressCount());
+        assertEquals(1, base.getMetrics().decompressCount());
+
+        EncodedValue encoded = cache.getEncoded("text");
+        assertTrue(encoded.isCompressed());
+        assertTrue(encoded.getData().remaining() < text.length / 8);
+        assertEquals(text.length, encoded.getLength());
+        assertFalse(cache.getEncoded("random").isCompressed());
+    }
+
+    private static byte[] fill(int length, byte value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapDiskStoreTest {
+
+    private static final int KB = 1024;
+
+    @TempDir
+    static Path dir;
+
+    private static String persistDir;
+
+    @BeforeAll
+    static void setUp() {
+        persistDir = CacheFactory.getInstance().getPersistDir();
+        CacheFactory.getInstance().setPersistDir(dir.toString());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        CacheFactory.getInstance().setPersistDir(persistDir);
+    }
+
+    @Test
+    void evictedValuesSpillToDiskAndRemovalDeletesThem() {
+        CountingCache<ByteBuffer> cache = persistent("OffHeapDiskStoreTest.spill");
+        cache.setValueSerializer(ByteBufferSerializer.getInstance());
+        // 2MB 切分为 2 个 1MB 的 slab, 写到第三个 slab 时淘汰第一个
+        for (int i = 0; i < 5; i++) {
+            assertTrue(cache.put("k" + i, ByteBuffer.wrap(new byte[400 * KB])));
+        }
+        DiskStore<String, ByteBuffer> store = cache.getDiskStore();
+        assertNotNull(store);
+        assertTrue(store.contains("k0"));
+
+        int loads = cache.loads.get();
+        assertEquals(400 * KB, cache.get("k0").remaining());
+        assertEquals(loads, cache.loads.get());
+
+        cache.remove("k0");
+        assertFalse(store.contains("k0"));
+    }
+
+    @Test
+    void jdkSerializerDoesNotOpenStore() {
+        CountingCache<ByteBuffer> cache = persistent("OffHeapDiskStoreTest.jdk");
+        assertTrue(cache.put("k", ByteBuffer.wrap(new byte[16])));
+        assertNull(cache.getDiskStore());
+    }
+
+    private static CountingCache<ByteBuffer> persistent(String name) {
+        CountingCache<ByteBuffer> cache = CountingCache.offHeap(name, 2L * 1024 * KB);
+        cache.setPersistent(true);
+        return cache;
+    }
+}
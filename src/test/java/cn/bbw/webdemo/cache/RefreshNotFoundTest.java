@@ -0,0 +1,162 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefreshNotFoundTest {
+
+    @Test
+    void guavaRefreshRemovesDeletedEntry() throws InterruptedException {
+        assertRefreshRemoves(new SourceCache("RefreshNotFoundTest.guava", CacheEngine.GUAVA), "a");
+    }
+
+    @Test
+    void caffeineRefreshRemovesDeletedEntry() throws InterruptedException {
+        assertRefreshRemoves(new SourceCache("RefreshNotFoundTest.caffeine", CacheEngine.CAFFEINE), "a");
+    }
+
+    @Test
+    void offHeapRefreshRemovesDeletedEntry() throws InterruptedException {
+        BufferCache cache = new BufferCache("RefreshNotFoundTest.offHeap");
+        assertRefreshRemoves(cache, "a");
+        assertEquals(1, cache.loads.get());
+    }
+
+    @Test
+    void longKeyRefreshRemovesDeletedEntry() throws InterruptedException {
+        assertRefreshRemoves(new IdCache("RefreshNotFoundTest.longKey"), 1L);
+    }
+
+    @Test
+    void failedRefreshKeepsOldValue() throws InterruptedException {
+        SourceCache cache = new SourceCache("RefreshNotFoundTest.failed", CacheEngine.GUAVA);
+        cache.source.put("a", "v");
+        assertEquals("v", cache.get("a"));
+        cache.failing = true;
+        CacheFactory.getInstance().getCache(cache).refresh("a");
+        Thread.sleep(200);
+        assertEquals("v", cache.getCacheOnly("a"));
+    }
+
+    private static <K> void assertRefreshRemoves(Source<K> cache, K key) throws InterruptedException {
+        BaseCache<K, ?> base = cache.base();
+        assertNotNull(base.get(key));
+        cache.delete(key);
+        CacheFactory.getInstance().getCache(base).refresh(key);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (base.getCacheOnly(key) != null) {
+            assertTrue(System.currentTimeMillis() < deadline, "entry not removed in 2s");
+            Thread.sleep(10);
+        }
+        // 刷新结果不能重新放回缓存
+        Thread.sleep(100);
+        assertNull(base.getCacheOnly(key));
+        assertTrue(base.isNegative(key));
+        assertNull(base.get(key));
+    }
+
+    private interface Source<K> {
+
+        BaseCache<K, ?> base();
+
+        void delete(K key);
+    }
+
+    private static final class SourceCache extends BaseCache<String, String> implements Source<String> {
+
+        private final Map<String, String> source = new ConcurrentHashMap<>();
+
+        private volatile boolean failing;
+
+        private SourceCache(String name, CacheEngine engine) {
+            super(name, null, 60);
+            setEngine(engine);
+            source.put("a", "v");
+        }
+
+        @Override
+        public String without(String key) {
+            if (failing) {
+                throw new IllegalStateException("source down");
+            }
+            return source.get(key);
+        }
+
+        @Override
+        public BaseCache<String, ?> base() {
+            return this;
+        }
+
+        @Override
+        public void delete(String key) {
+            source.remove(key);
+        }
+    }
+
+    private static final class BufferCache extends BaseCache<String, ByteBuffer> implements Source<String> {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private volatile boolean deleted;
+
+        private BufferCache(String name) {
+            super(name, null, 60);
+            setEngine(CacheEngine.OFF_HEAP);
+            setMaxWeight(4L * 1024 * 1024);
+        }
+
+        @Override
+        public ByteBuffer without(String key) {
+            if (deleted) {
+                return null;
+            }
+            loads.incrementAndGet();
+            return ByteBuffer.wrap(key.getBytes());
+        }
+
+        @Override
+        public BaseCache<String, ?> base() {
+            return this;
+        }
+
+        @Override
+        public void delete(String key) {
+            deleted = true;
+        }
+    }
+
+    private static final class IdCache extends LongBaseCache<String> implements Source<Long> {
+
+        private final Map<Long, String> source = new ConcurrentHashMap<>();
+
+        private IdCache(String name) {
+            super(name, null, 60);
+            source.put(1L, "v");
+        }
+
+        @Override
+        public String without(long id) {
+            return source.get(id);
+        }
+
+        @Override
+        public BaseCache<Long, ?> base() {
+            return this;
+        }
+
+        @Override
+        public void delete(Long key) {
+            source.remove(key);
+        }
+    }
+}
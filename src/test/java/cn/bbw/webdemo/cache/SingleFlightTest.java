@@ -0,0 +1,76 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallsShareOneLoad() {
+        CacheMetrics metrics = new CacheMetrics();
+        SingleFlight<String, String> flight = new SingleFlight<>(metrics);
+        CompletableFuture<String> source = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(flight.execute("k", k -> {
+                calls.incrementAndGet();
+                return source;
+            }));
+        }
+        assertTrue(flight.isInFlight("k"));
+        source.complete("v");
+
+        futures.forEach(future -> assertEquals("v", future.join()));
+        assertEquals(1, calls.get());
+        assertEquals(4, metrics.loadCoalescedCount());
+        assertFalse(flight.isInFlight("k"));
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void completedLoadIsNotShared() {
+        SingleFlight<String, String> flight = new SingleFlight<>(new CacheMetrics());
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            flight.execute("k", k -> CompletableFuture.completedFuture("v" + calls.incrementAndGet())).join();
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void failureIsSharedAndCleared() throws Exception {
+        CacheMetrics metrics = new CacheMetrics();
+        SingleFlight<String, String> flight = new SingleFlight<>(metrics);
+        IllegalStateException error = new IllegalStateException("boom");
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("k", k -> source);
+        CompletableFuture<String> second = flight.execute("k", k -> CompletableFuture.completedFuture("other"), false);
+        source.completeExceptionally(error);
+
+        assertSame(error, assertThrows(CompletionException.class, first::join).getCause());
+        assertSame(error, assertThrows(CompletionException.class, second::join).getCause());
+        assertEquals(0, metrics.loadCoalescedCount());
+        assertFalse(flight.isInFlight("k"));
+
+        // 加载函数直接抛出异常
+        CompletableFuture<String> thrown = flight.execute("k", k -> {
+            throw error;
+        });
+        assertTrue(thrown.isCompletedExceptionally());
+        assertEquals("v", flight.execute("k", k -> CompletableFuture.completedFuture("v")).get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,163 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+
+    /**
+     * 不执行积压满一批时触发的立即刷新, 只由测试调用 flush, 结果确定
+     */
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1) {
+        @Override
+        public void execute(Runnable command) {
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void coalescesByKeyAndWritesInBatches() {
+        SourceCache cache = new SourceCache("WriteBehindQueueTest.batch");
+        WriteBehindQueue<String, String> queue = new WriteBehindQueue<>(cache, scheduler);
+        for (int i = 0; i < 5; i++) {
+            queue.add("k" + i, "v" + i);
+        }
+        queue.add("k0", "v0-new");
+        assertEquals(1, cache.getMetrics().writeCoalescedCount());
+        assertEquals("v0-new", queue.get("k0"));
+
+        queue.flush();
+        assertEquals(0, queue.size());
+        assertNull(queue.get("k0"));
+        assertEquals("v0-new", cache.source.get("k0"));
+        assertEquals(5, cache.source.size());
+        // 批量大小为 2
+        assertEquals(3, cache.batches.get());
+    }
+
+    @Test
+    void failedBatchIsRequeuedAndNewerValueWins() {
+        SourceCache cache = new SourceCache("WriteBehindQueueTest.failure");
+        WriteBehindQueue<String, String> queue = new WriteBehindQueue<>(cache, scheduler);
+        queue.add("a", "v1");
+        queue.add("b", "v1");
+        // 写入失败期间 a 被再次更新
+        cache.failure = () -> queue.add("a", "v2");
+
+        queue.flush();
+        assertTrue(cache.source.isEmpty());
+        assertEquals(2, queue.size());
+        assertEquals("v2", queue.get("a"));
+        assertEquals("v1", queue.get("b"));
+        assertEquals(2, cache.getMetrics().writeFailureCount());
+
+        queue.flush();
+        assertEquals(0, queue.size());
+        assertEquals("v2", cache.source.get("a"));
+        assertEquals("v1", cache.source.get("b"));
+        assertEquals(2, cache.getMetrics().writeCount());
+    }
+
+    @Test
+    void closeWritesRemainingValues() {
+        SourceCache cache = new SourceCache("WriteBehindQueueTest.close");
+        cache.put("a", "v1");
+        assertEquals(1, cache.pendingWrites());
+        // 停机时由 CacheFactory#shutdown 调用
+        cache.closeWrites();
+        assertEquals(0, cache.pendingWrites());
+        assertEquals("v1", cache.source.get("a"));
+    }
+
+    @Test
+    void reloadDuringWriteReadsPendingValues() throws InterruptedException {
+        SourceCache cache = new SourceCache("WriteBehindQueueTest.reload");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        cache.gate = () -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        for (String key : Arrays.asList("a", "b", "c")) {
+            cache.source.put(key, "old-" + key);
+            cache.put(key, "new-" + key);
+        }
+        Thread flusher = new Thread(cache::flushWrites);
+        flusher.start();
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+        // 写入中的一批和还在队列中的 key 都不读数据源中的旧值
+        for (String key : Arrays.asList("a", "b", "c")) {
+            assertEquals("new-" + key, cache.loadThrough(key));
+            assertEquals("new-" + key, cache.refreshThrough(key));
+        }
+        release.countDown();
+        flusher.join(5000);
+        cache.flushWrites();
+        assertEquals(0, cache.pendingWrites());
+        for (String key : Arrays.asList("a", "b", "c")) {
+            assertEquals("new-" + key, cache.source.get(key));
+        }
+    }
+
+    private static final class SourceCache extends BaseCache<String, String> implements CacheWriter<String, String> {
+
+        private final Map<String, String> source = new ConcurrentHashMap<>();
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile Runnable failure;
+        private volatile Runnable gate;
+
+        private SourceCache(String name) {
+            super(name, null, 60);
+            setWriteBehindMillis(60_000);
+            setWriteBehindBatchSize(2);
+            setWriteMode(WriteMode.BEHIND, this);
+        }
+
+        @Override
+        public String without(String key) {
+            return source.get(key);
+        }
+
+        @Override
+        public void write(String key, String value) {
+            source.put(key, value);
+        }
+
+        @Override
+        public void writeAll(Map<String, String> values) {
+            Runnable pass = gate;
+            if (pass != null) {
+                pass.run();
+            }
+            Runnable fail = failure;
+            if (fail != null) {
+                failure = null;
+                fail.run();
+                throw new IllegalStateException("source down");
+            }
+            batches.incrementAndGet();
+            source.putAll(values);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.bbw.webdemo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteModeTest {
+
+    @Test
+    void writeModeRequiresWriter() {
+        SourceCache cache = new SourceCache("WriteModeTest.writer");
+        assertThrows(IllegalArgumentException.class, () -> cache.setWriteMode(WriteMode.THROUGH));
+        assertThrows(IllegalArgumentException.class, () -> cache.setWriteMode(WriteMode.BEHIND));
+        assertDoesNotThrow(() -> cache.setWriteMode(WriteMode.NONE));
+        assertThrows(NullPointerException.class, () -> cache.setWriteMode(WriteMode.THROUGH, null));
+
+        cache.setWriteMode(WriteMode.THROUGH, cache.source::put);
+        cache.put("a", "through");
+        assertEquals("through", cache.source.get("a"));
+        // 配置只切换写入方式, 沿用已设置的 writer
+        cache.setWriteMode(WriteMode.NONE);
+        cache.put("a", "none");
+        assertEquals("through", cache.source.get("a"));
+        cache.setWriteMode(WriteMode.THROUGH);
+        cache.put("a", "again");
+        assertEquals("again", cache.source.get("a"));
+    }
+
+    @Test
+    void throughFailureKeepsCachedValue() {
+        SourceCache cache = new SourceCache("WriteModeTest.failure");
+        cache.setWriteMode(WriteMode.THROUGH, (key, value) -> {
+            throw new IllegalStateException("source down");
+        });
+        cache.source.put("a", "old");
+        assertEquals("old", cache.get("a"));
+        assertFalse(cache.put("a", "new"));
+        assertEquals("old", cache.get("a"));
+        assertEquals(1, cache.getMetrics().writeFailureCount());
+    }
+
+    @Test
+    void guavaRefreshUsesPendingWrite() throws InterruptedException {
+        assertRefreshUsesPendingWrite(CacheEngine.GUAVA);
+    }
+
+    @Test
+    void caffeineRefreshUsesPendingWrite() throws InterruptedException {
+        assertRefreshUsesPendingWrite(CacheEngine.CAFFEINE);
+    }
+
+    private static void assertRefreshUsesPendingWrite(CacheEngine engine) throws InterruptedException {
+        SourceCache cache = new SourceCache("WriteModeTest.refresh." + engine);
+        cache.setEngine(engine);
+        cache.setWriteMode(WriteMode.BEHIND, cache.source::put);
+        // 测试期间不刷新异步写队列
+        cache.setWriteBehindMillis(60_000);
+        cache.source.put("a", "old");
+        assertEquals("old", cache.get("a"));
+        cache.put("a", "new");
+
+        int loads = cache.loads.get();
+        CacheFactory.getInstance().getCache(cache).refresh("a");
+        Thread.sleep(200);
+        assertEquals("new", cache.get("a"));
+        assertEquals(loads, cache.loads.get());
+    }
+
+    private static final class SourceCache extends BaseCache<String, String> {
+
+        private final Map<String, String> source = new ConcurrentHashMap<>();
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private SourceCache(String name) {
+            super(name, null, 60);
+        }
+
+        @Override
+        public String without(String key) {
+            loads.incrementAndGet();
+            return source.get(key);
+        }
+    }
+}